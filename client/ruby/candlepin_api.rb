@@ -724,6 +724,12 @@ class Candlepin
     return get(path)
   end
 
+  def get_certificate_delta(serials = [])
+    path = "/consumers/#{@uuid}/certificates/delta"
+    path += "?serials=" + serials.join(",") if serials.length > 0
+    return get(path)
+  end
+
   def export_certificates(dest_dir, serials = [])
     path = "/consumers/#{@uuid}/certificates"
     path += "?serials=" + serials.join(",") if serials.length > 0
@@ -17,6 +17,10 @@ package org.candlepin.audit;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jackson.JsonParseException;
@@ -33,7 +37,7 @@ import com.google.inject.Inject;
 /**
  * ActivationListener
  */
-public class ActivationListener implements EventListener {
+public class ActivationListener implements FilteredEventListener {
     private static Logger log = Logger.getLogger(ActivationListener.class);
     private SubscriptionServiceAdapter subscriptionService;
     private ObjectMapper mapper;
@@ -48,6 +52,12 @@ public class ActivationListener implements EventListener {
         mapper.setAnnotationIntrospector(pair);
     }
 
+    @Override
+    public Map<Event.Target, Set<Event.Type>> getInterestingEvents() {
+        return Collections.<Event.Target, Set<Event.Type>>singletonMap(
+            Event.Target.POOL, EnumSet.of(Event.Type.CREATED));
+    }
+
     @Override
     public void onEvent(Event e) {
         if (e.getType().equals(Event.Type.CREATED) &&
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.List;
+
+/**
+ * BatchEventListener - An EventListener that can also take events in batches.
+ * When its batch size is greater than one, EventSource hands it up to that many
+ * events at a time through onEvents, waiting at most the batch wait for a batch
+ * to fill up, and acknowledges the messages only once onEvents has returned. If
+ * onEvents fails, the batch's events are passed to onEvent one at a time instead,
+ * and only the ones that fail again are skipped.
+ */
+public interface BatchEventListener extends EventListener {
+
+    /**
+     * @return most events passed to one onEvents call.
+     */
+    int getBatchSize();
+
+    /**
+     * @return milliseconds to wait for more events before handing over a batch.
+     */
+    long getBatchWait();
+
+    void onEvents(List<Event> events);
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import org.apache.log4j.Logger;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BatchListenerWrapper - Drains a listener's queue on its own thread and
+ * session. Events are handed to the listener in batches, and the batch is
+ * acknowledged in one commit after the listener is done with it, or rolled
+ * back for redelivery if the listener fails.
+ */
+public class BatchListenerWrapper implements Runnable {
+
+    private static Logger log = Logger.getLogger(BatchListenerWrapper.class);
+
+    // How long to block waiting for the first event of a batch before checking
+    // whether we have been stopped:
+    private static final long POLL_MILLIS = 1000;
+
+    private BatchEventListener listener;
+    private ObjectMapper mapper;
+    private ClientSession session;
+    private ClientConsumer consumer;
+    private ListenerStats stats;
+    private volatile boolean running = true;
+
+    public BatchListenerWrapper(BatchEventListener listener, ObjectMapper mapper,
+        ClientSession session, ClientConsumer consumer, ListenerStats stats) {
+        this.listener = listener;
+        this.mapper = mapper;
+        this.session = session;
+        this.consumer = consumer;
+        this.stats = stats;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                drainBatch();
+            }
+            catch (HornetQException e) {
+                if (running) {
+                    log.error("Unable to receive events for " + listener, e);
+                    pause();
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Receives one batch of messages and passes their events to the listener.
+     *
+     * @return number of messages received.
+     * @throws HornetQException if receiving or acknowledging fails.
+     */
+    int drainBatch() throws HornetQException {
+        ClientMessage msg = consumer.receive(POLL_MILLIS);
+        if (msg == null) {
+            return 0;
+        }
+
+        List<ClientMessage> messages = new ArrayList<ClientMessage>();
+        List<String> bodies = new ArrayList<String>();
+        List<Event> events = new ArrayList<Event>();
+        long deadline = System.currentTimeMillis() + listener.getBatchWait();
+        while (msg != null) {
+            messages.add(msg);
+            String body = msg.getBodyBuffer().readString();
+            bodies.add(body);
+            Event event = readEvent(body);
+            if (event != null) {
+                events.add(event);
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (messages.size() >= listener.getBatchSize() || remaining <= 0) {
+                break;
+            }
+            msg = consumer.receive(remaining);
+        }
+
+        try {
+            if (!events.isEmpty()) {
+                listener.onEvents(events);
+            }
+        }
+        catch (RuntimeException e) {
+            log.warn("Unable to process a batch of " + events.size() +
+                " events, processing them one at a time", e);
+            events = processOneByOne(bodies);
+        }
+
+        for (ClientMessage m : messages) {
+            m.acknowledge();
+        }
+        session.commit();
+        for (Event event : events) {
+            stats.eventProcessed(event);
+        }
+        return messages.size();
+    }
+
+    /*
+     * Falls back to handing the listener one event at a time, so only the events
+     * it cannot process are lost. Events are read again from the message bodies,
+     * the ones from the failed batch may have been changed by the listener.
+     *
+     * Returns the events the listener processed.
+     */
+    private List<Event> processOneByOne(List<String> bodies) {
+        List<Event> processed = new ArrayList<Event>();
+        for (String body : bodies) {
+            Event event = readEvent(body);
+            if (event == null) {
+                continue;
+            }
+            try {
+                listener.onEvent(event);
+                processed.add(event);
+            }
+            catch (RuntimeException e) {
+                log.error("Unable to process event, skipping it: " + body, e);
+            }
+        }
+        return processed;
+    }
+
+    private Event readEvent(String body) {
+        if (log.isDebugEnabled()) {
+            log.debug("Got event: " + body);
+        }
+        try {
+            return mapper.readValue(body, Event.class);
+        }
+        catch (Exception e) {
+            // acknowledged along with the rest of the batch, there is no point
+            // in having it redelivered:
+            log.fatal("Unable to deserialize event object from msg: " + body, e);
+            return null;
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(listener.getBatchWait());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
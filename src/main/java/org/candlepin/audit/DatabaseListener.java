@@ -17,30 +17,35 @@ package org.candlepin.audit;
 import org.apache.log4j.Logger;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SystemPrincipal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.EventCurator;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 
 import com.google.inject.Inject;
 
+import java.util.List;
+
 /**
  * DatabaseListener
  */
-public class DatabaseListener implements EventListener {
+public class DatabaseListener implements BatchEventListener {
 
     private EventCurator eventCurator;
+    private int batchSize;
+    private long batchWait;
     private static Logger log = Logger.getLogger(DatabaseListener.class);
 
     @Inject
-    public DatabaseListener(EventCurator eventCurator) {
+    public DatabaseListener(EventCurator eventCurator, Config config) {
         this.eventCurator = eventCurator;
+        this.batchSize = config.getInt(ConfigProperties.AUDIT_DATABASE_BATCH_SIZE);
+        this.batchWait = config.getInt(ConfigProperties.AUDIT_DATABASE_BATCH_WAIT);
     }
 
     @Override
     public void onEvent(Event event) {
-        // We're outside of a web request here, need to create this event and satisfy the
-        // access control interceptor.
-        Principal systemPrincipal = new SystemPrincipal();
-        ResteasyProviderFactory.pushContext(Principal.class, systemPrincipal);
+        pushSystemPrincipal();
         if (log.isDebugEnabled()) {
             log.debug("Received event: " + event);
         }
@@ -49,4 +54,30 @@ public class DatabaseListener implements EventListener {
             eventCurator.create(event);
         }
     }
+
+    @Override
+    public void onEvents(List<Event> events) {
+        pushSystemPrincipal();
+        if (log.isDebugEnabled()) {
+            log.debug("Received " + events.size() + " events");
+        }
+        eventCurator.createAll(events);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public long getBatchWait() {
+        return batchWait;
+    }
+
+    private void pushSystemPrincipal() {
+        // We're outside of a web request here, need to create this event and satisfy the
+        // access control interceptor.
+        Principal systemPrincipal = new SystemPrincipal();
+        ResteasyProviderFactory.pushContext(Principal.class, systemPrincipal);
+    }
 }
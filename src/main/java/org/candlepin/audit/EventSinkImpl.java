@@ -15,6 +15,7 @@
 package org.candlepin.audit;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.google.inject.Singleton;
 
 import org.apache.log4j.Logger;
@@ -27,7 +28,10 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.Rules;
 import org.candlepin.model.Subscription;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.Session;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
@@ -36,30 +40,62 @@ import org.hornetq.api.core.client.ClientSessionFactory;
 import org.hornetq.api.core.client.HornetQClient;
 import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 /**
  * EventSink - Reliably dispatches events to all configured listeners.
+ *
+ * Events sent while a transaction is active are held back until it completes:
+ * they go out as one batch once it commits and are dropped if it rolls back.
+ * Batches are sent through a bounded pool of transacted HornetQ sessions.
  */
 @Singleton
 public class EventSinkImpl implements EventSink {
 
     private static Logger log = Logger.getLogger(EventSinkImpl.class);
+    private static final long CHECKOUT_WAIT_MILLIS = 100;
     private EventFactory eventFactory;
     private ClientSessionFactory factory;
-    private ClientSession clientSession;
-    private ClientProducer clientProducer;
     private int largeMsgSize;
     private ObjectMapper mapper;
+    private Provider<EntityManager> entityManager;
+
+    private EventSinkStats stats;
+
+    private final ThreadLocal<Outbox> outboxes = new ThreadLocal<Outbox>();
+
+    // Senders not in use right now, and the number of senders open in total,
+    // which never goes over maxSenders:
+    private final BlockingQueue<Sender> idleSenders = new LinkedBlockingQueue<Sender>();
+    private final AtomicInteger openSenders = new AtomicInteger();
+    private int maxSenders;
 
     @Inject
-    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper, Config config) {
+    public EventSinkImpl(EventFactory eventFactory, ObjectMapper mapper, Config config,
+        Provider<EntityManager> entityManager, EventSinkStats stats) {
         this.eventFactory = eventFactory;
         this.mapper = mapper;
+        this.entityManager = entityManager;
+        this.stats = stats;
         try {
             largeMsgSize = config.getInt(ConfigProperties.HORNETQ_LARGE_MSG_SIZE);
+            maxSenders = Math.max(1,
+                config.getInt(ConfigProperties.HORNETQ_SENDER_POOL_SIZE));
 
             factory =  createClientSessionFactory();
-            clientSession = factory.createSession();
-            clientProducer = clientSession.createProducer(EventSource.QUEUE_ADDRESS);
+            // open one session right away so a broken broker fails startup:
+            openSenders.incrementAndGet();
+            idleSenders.add(new Sender());
         }
         catch (HornetQException e) {
             throw new RuntimeException(e);
@@ -81,14 +117,170 @@ public class EventSinkImpl implements EventSink {
         if (log.isDebugEnabled()) {
             log.debug("Sending event - " + event);
         }
+        Outbox outbox = currentOutbox();
+        if (outbox == null) {
+            flush(Collections.singletonList(event));
+        }
+        else {
+            outbox.add(event);
+        }
+    }
+
+    /*
+     * Returns the outbox of the transaction running on this thread, registering
+     * a new one with the transaction on first use, or null if there is no
+     * active transaction.
+     */
+    private Outbox currentOutbox() {
+        Outbox outbox = outboxes.get();
+        if (outbox != null) {
+            return outbox;
+        }
+        EntityManager em = entityManager.get();
+        if (em == null || !em.getTransaction().isActive()) {
+            return null;
+        }
+        outbox = new Outbox();
+        ((Session) em.getDelegate()).getTransaction().registerSynchronization(outbox);
+        outboxes.set(outbox);
+        return outbox;
+    }
+
+    private void flush(List<Event> events) {
+        long start = System.currentTimeMillis();
+        Sender sender = null;
         try {
-            ClientMessage message = clientSession.createMessage(true);
-            String eventString = mapper.writeValueAsString(event);
-            message.getBodyBuffer().writeString(eventString);
-            clientProducer.send(message);
+            sender = checkOut();
+            sender.send(events);
+            idleSenders.add(sender);
+        }
+        catch (InterruptedException e) {
+            log.error("Interrupted while waiting to send events: " + events, e);
+            Thread.currentThread().interrupt();
         }
         catch (Exception e) {
-            log.error("Error while trying to send event: " + event, e);
+            log.error("Error while trying to send events: " + events, e);
+            // the session may be unusable now, the next flush opens a fresh one:
+            if (sender != null) {
+                sender.close();
+            }
+        }
+        stats.flushed(System.currentTimeMillis() - start);
+    }
+
+    /*
+     * Takes an idle sender, opens a new one if fewer than maxSenders are open,
+     * or else waits for one to be handed back.
+     */
+    private Sender checkOut() throws HornetQException, InterruptedException {
+        while (true) {
+            Sender sender = idleSenders.poll();
+            if (sender != null) {
+                return sender;
+            }
+            if (openSenders.incrementAndGet() <= maxSenders) {
+                try {
+                    return new Sender();
+                }
+                catch (HornetQException e) {
+                    openSenders.decrementAndGet();
+                    throw e;
+                }
+            }
+            openSenders.decrementAndGet();
+            // check back regularly in case a failed sender freed up a slot:
+            sender = idleSenders.poll(CHECKOUT_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (sender != null) {
+                return sender;
+            }
+        }
+    }
+
+    /**
+     * Events buffered for the transaction running on the current thread.
+     */
+    private class Outbox implements Synchronization {
+        private List<Event> events = new LinkedList<Event>();
+
+        public void add(Event event) {
+            events.add(event);
+            stats.eventsBuffered(1);
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            outboxes.remove();
+            stats.eventsReleased(events.size());
+            if (status == Status.STATUS_COMMITTED) {
+                flush(events);
+            }
+            else if (log.isDebugEnabled()) {
+                log.debug("Transaction rolled back, dropping " + events.size() +
+                    " events");
+            }
+        }
+    }
+
+    /**
+     * A pooled transacted HornetQ session, committed once per batch. Only one
+     * thread at a time uses it.
+     */
+    private class Sender {
+        private ClientSession session;
+        private ClientProducer producer;
+
+        public Sender() throws HornetQException {
+            session = factory.createSession(false, true);
+            producer = session.createProducer(EventSource.QUEUE_ADDRESS);
+            stats.sessionOpened();
+        }
+
+        public void send(List<Event> events) throws HornetQException {
+            for (Event event : events) {
+                try {
+                    ClientMessage message = session.createMessage(true);
+                    putProperty(message, EventSource.TARGET_PROPERTY,
+                        event.getTarget());
+                    putProperty(message, EventSource.TYPE_PROPERTY, event.getType());
+                    if (event.getOwnerId() != null) {
+                        // keeps each owner's events in order across parallel
+                        // listener consumers:
+                        message.putStringProperty(Message.HDR_GROUP_ID,
+                            new SimpleString(event.getOwnerId()));
+                    }
+                    String eventString = mapper.writeValueAsString(event);
+                    message.getBodyBuffer().writeString(eventString);
+                    producer.send(message);
+                }
+                catch (HornetQException e) {
+                    throw e;
+                }
+                catch (Exception e) {
+                    log.error("Error while trying to send event: " + event, e);
+                }
+            }
+            session.commit();
+        }
+
+        private void putProperty(ClientMessage message, String name, Enum<?> value) {
+            if (value != null) {
+                message.putStringProperty(name, value.name());
+            }
+        }
+
+        public void close() {
+            openSenders.decrementAndGet();
+            stats.sessionClosed();
+            try {
+                session.close();
+            }
+            catch (HornetQException e) {
+                log.warn("Unable to close event session", e);
+            }
         }
     }
 
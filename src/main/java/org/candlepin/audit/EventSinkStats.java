@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import com.google.inject.Singleton;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * EventSinkStats - Outbox depth and flush latency of the event sink, kept apart
+ * from EventSinkImpl so they can be read without a HornetQ session.
+ */
+@Singleton
+@XmlRootElement(name = "eventsink")
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class EventSinkStats {
+
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    void eventsBuffered(int count) {
+        pendingEvents.addAndGet(count);
+    }
+
+    void eventsReleased(int count) {
+        pendingEvents.addAndGet(-count);
+    }
+
+    void flushed(long millis) {
+        lastFlushMillis = millis;
+        flushMillis.addAndGet(millis);
+        flushCount.incrementAndGet();
+    }
+
+    void sessionOpened() {
+        openSessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        openSessions.decrementAndGet();
+    }
+
+    /**
+     * @return number of events waiting for their transaction to complete.
+     */
+    public int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * @return number of HornetQ sessions the sink currently holds open.
+     */
+    public int getOpenSessions() {
+        return openSessions.get();
+    }
+
+    /**
+     * @return number of batches sent to HornetQ so far.
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return average time in milliseconds taken to send one batch.
+     */
+    public long getAverageFlushMillis() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : flushMillis.get() / count;
+    }
+
+    /**
+     * @return time in milliseconds taken to send the most recent batch.
+     */
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+}
@@ -15,8 +15,11 @@
 package org.candlepin.audit;
 
 import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.TransportConfiguration;
 import org.hornetq.api.core.client.ClientConsumer;
 import org.hornetq.api.core.client.ClientSession;
@@ -26,21 +29,37 @@ import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
 
 import com.google.inject.Inject;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * EventSource
  */
 public class EventSource {
     private static  Logger log = Logger.getLogger(HornetqContextListener.class);
     static final String QUEUE_ADDRESS = "event";
+    // message properties listener queues are filtered on:
+    static final String TARGET_PROPERTY = "target";
+    static final String TYPE_PROPERTY = "type";
+    private ClientSessionFactory factory;
     private ClientSession session;
     private ObjectMapper mapper;
+    private Config config;
+    private ListenerMetrics metrics;
+    private List<BatchListenerWrapper> batchWrappers =
+        new LinkedList<BatchListenerWrapper>();
+    private List<ClientSession> listenerSessions = new LinkedList<ClientSession>();
 
     @Inject
-    public EventSource(ObjectMapper mapper) {
+    public EventSource(ObjectMapper mapper, Config config, ListenerMetrics metrics) {
         this.mapper = mapper;
+        this.config = config;
+        this.metrics = metrics;
 
         try {
-            ClientSessionFactory factory =  createSessionFactory();
+            factory =  createSessionFactory();
             session = factory.createSession(true, true);
             session.start();
         }
@@ -60,9 +79,19 @@ public class EventSource {
     }
 
     void shutDown() {
+        for (BatchListenerWrapper wrapper : batchWrappers) {
+            wrapper.stop();
+        }
+        for (ClientSession listenerSession : listenerSessions) {
+            closeSession(listenerSession);
+        }
+        closeSession(session);
+    }
+
+    private void closeSession(ClientSession toClose) {
         try {
-            session.stop();
-            session.close();
+            toClose.stop();
+            toClose.close();
         }
         catch (HornetQException e) {
             log.warn("Exception while trying to shutdown hornetq", e);
@@ -72,24 +101,144 @@ public class EventSource {
     void registerListener(EventListener listener) {
         String queueName = QUEUE_ADDRESS + "." + listener.getClass().getCanonicalName();
         log.debug("registering listener for " + queueName);
+        String filter = filterFor(listener);
+        if (filter != null && filter.length() == 0) {
+            log.warn("Not registering listener with no interesting events: " +
+                listener);
+            return;
+        }
         try {
-            try {
-                session.createQueue(QUEUE_ADDRESS, queueName);
-                log.debug("created new event queue " + queueName);
-            }
-            catch (HornetQException e) {
-                // if the queue exists already we already created it in a previous run,
-                // so that's fine.
-                if (e.getCode() != HornetQException.QUEUE_EXISTS) {
-                    throw e;
+            createQueue(queueName, filter);
+
+            int consumers = concurrencyFor(listener);
+            ListenerStats stats =
+                metrics.forListener(listener.getClass().getCanonicalName());
+            stats.setConsumers(consumers);
+
+            if (listener instanceof BatchEventListener &&
+                ((BatchEventListener) listener).getBatchSize() > 1) {
+                for (int i = 0; i < consumers; i++) {
+                    registerBatchConsumer((BatchEventListener) listener, queueName,
+                        stats, i);
                 }
+                return;
             }
 
-            ClientConsumer consumer = session.createConsumer(queueName);
-            consumer.setMessageHandler(new ListenerWrapper(listener, mapper));
+            if (consumers == 1) {
+                ClientConsumer consumer = session.createConsumer(queueName);
+                consumer.setMessageHandler(new ListenerWrapper(listener, mapper, stats));
+                return;
+            }
+
+            // Each consumer gets a session of its own, and with it its own delivery
+            // thread. Events are grouped by owner, so HornetQ keeps handing all of an
+            // owner's events to the same consumer, in order.
+            for (int i = 0; i < consumers; i++) {
+                ClientSession consumerSession = factory.createSession(true, true);
+                ClientConsumer consumer = consumerSession.createConsumer(queueName);
+                consumer.setMessageHandler(new ListenerWrapper(listener, mapper, stats));
+                consumerSession.start();
+                listenerSessions.add(consumerSession);
+            }
         }
         catch (HornetQException e) {
             log.fatal("Unable to register listener :" + listener, e);
         }
     }
+
+    /*
+     * Creates the listener's queue. A queue left by a previous run is kept if
+     * it has the same filter, and recreated otherwise, so changes to the events
+     * a listener is interested in take effect. Events still waiting on a
+     * recreated queue are dropped.
+     */
+    private void createQueue(String queueName, String filter) throws HornetQException {
+        ClientSession.QueueQuery existing =
+            session.queueQuery(new SimpleString(queueName));
+        if (existing != null && existing.isExists()) {
+            SimpleString existingFilter = existing.getFilterString();
+            String current = existingFilter == null || existingFilter.length() == 0 ?
+                null : existingFilter.toString();
+            if (filter == null ? current == null : filter.equals(current)) {
+                return;
+            }
+            log.warn("Filter changed for event queue " + queueName + ", recreating it" +
+                " and dropping " + existing.getMessageCount() + " pending events");
+            session.deleteQueue(queueName);
+        }
+        try {
+            if (filter == null) {
+                session.createQueue(QUEUE_ADDRESS, queueName);
+            }
+            else {
+                session.createQueue(QUEUE_ADDRESS, queueName, filter, false);
+            }
+            log.debug("created new event queue " + queueName);
+        }
+        catch (HornetQException e) {
+            // if the queue exists already we already created it in a previous run,
+            // so that's fine.
+            if (e.getCode() != HornetQException.QUEUE_EXISTS) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param listener listener to build the queue filter for.
+     * @return HornetQ filter matching the events a FilteredEventListener is
+     * interested in, or null for any other listener.
+     */
+    static String filterFor(EventListener listener) {
+        if (!(listener instanceof FilteredEventListener)) {
+            return null;
+        }
+        Map<Event.Target, Set<Event.Type>> interests =
+            ((FilteredEventListener) listener).getInterestingEvents();
+
+        StringBuilder filter = new StringBuilder();
+        for (Map.Entry<Event.Target, Set<Event.Type>> entry : interests.entrySet()) {
+            for (Event.Type type : entry.getValue()) {
+                if (filter.length() > 0) {
+                    filter.append(" OR ");
+                }
+                filter.append(String.format("(%s = '%s' AND %s = '%s')",
+                    TARGET_PROPERTY, entry.getKey().name(),
+                    TYPE_PROPERTY, type.name()));
+            }
+        }
+        return filter.toString();
+    }
+
+    /*
+     * Number of consumers to deliver events to the listener in parallel, which
+     * can be set for a particular listener by appending its class name to the
+     * concurrency setting.
+     */
+    private int concurrencyFor(EventListener listener) {
+        int concurrency = config.getInt(ConfigProperties.AUDIT_LISTENER_CONCURRENCY);
+        concurrency = config.getInt(ConfigProperties.AUDIT_LISTENER_CONCURRENCY + "." +
+            listener.getClass().getCanonicalName(), concurrency);
+        return Math.max(1, concurrency);
+    }
+
+    /*
+     * Batch consumers get a session of their own with transacted acks, drained
+     * by a dedicated thread so a whole batch can be acknowledged or rolled back
+     * at once.
+     */
+    private void registerBatchConsumer(BatchEventListener listener, String queueName,
+        ListenerStats stats, int index) throws HornetQException {
+        ClientSession batchSession = factory.createSession(true, false);
+        ClientConsumer consumer = batchSession.createConsumer(queueName);
+        batchSession.start();
+        listenerSessions.add(batchSession);
+
+        BatchListenerWrapper wrapper = new BatchListenerWrapper(listener, mapper,
+            batchSession, consumer, stats);
+        batchWrappers.add(wrapper);
+        Thread thread = new Thread(wrapper, "event-batch-" + queueName + "-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FilteredEventListener - An EventListener only interested in some kinds of
+ * events. Its queue is filtered on the target and type of each message, so any
+ * other event is never delivered to it or deserialized.
+ */
+public interface FilteredEventListener extends EventListener {
+
+    /**
+     * @return the event types this listener wants to receive, by target.
+     */
+    Map<Event.Target, Set<Event.Type>> getInterestingEvents();
+}
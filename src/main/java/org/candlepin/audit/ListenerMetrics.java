@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import com.google.inject.Singleton;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ListenerMetrics - Lag statistics of every registered event listener, kept
+ * apart from EventSource so they can be read without a HornetQ session.
+ */
+@Singleton
+public class ListenerMetrics {
+
+    private final Map<String, ListenerStats> stats =
+        Collections.synchronizedMap(new TreeMap<String, ListenerStats>());
+
+    /**
+     * @param listener name of the listener.
+     * @return statistics of the given listener, created on first use.
+     */
+    public ListenerStats forListener(String listener) {
+        synchronized (stats) {
+            ListenerStats listenerStats = stats.get(listener);
+            if (listenerStats == null) {
+                listenerStats = new ListenerStats();
+                stats.put(listener, listenerStats);
+            }
+            return listenerStats;
+        }
+    }
+
+    /**
+     * @return statistics of all listeners, by listener name.
+     */
+    public Map<String, ListenerStats> getAll() {
+        synchronized (stats) {
+            return new TreeMap<String, ListenerStats>(stats);
+        }
+    }
+}
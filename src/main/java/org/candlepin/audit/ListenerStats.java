@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * ListenerStats - How far behind an event listener is. Lag is the time between
+ * an event being raised and the listener being done with it.
+ */
+@XmlRootElement(name = "listener")
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class ListenerStats {
+
+    private final AtomicLong processed = new AtomicLong();
+    private volatile int consumers;
+    private volatile long lagMillis;
+    private volatile long maxLagMillis;
+    private volatile Date lastProcessed;
+
+    void setConsumers(int consumers) {
+        this.consumers = consumers;
+    }
+
+    void eventProcessed(Event event) {
+        Date now = new Date();
+        processed.incrementAndGet();
+        lastProcessed = now;
+        if (event != null && event.getTimestamp() != null) {
+            lagMillis = now.getTime() - event.getTimestamp().getTime();
+            if (lagMillis > maxLagMillis) {
+                maxLagMillis = lagMillis;
+            }
+        }
+    }
+
+    /**
+     * @return number of consumers delivering events to the listener in parallel.
+     */
+    public int getConsumers() {
+        return consumers;
+    }
+
+    /**
+     * @return number of events the listener has processed since startup.
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return lag in milliseconds of the most recently processed event.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return highest lag in milliseconds seen since startup.
+     */
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**
+     * @return when the listener last finished processing an event.
+     */
+    public Date getLastProcessed() {
+        return lastProcessed;
+    }
+}
@@ -28,9 +28,17 @@ public class ListenerWrapper implements MessageHandler {
     private EventListener listener;
     private static Logger log = Logger.getLogger(ListenerWrapper.class);
     private ObjectMapper mapper;
+    private ListenerStats stats;
+
     public ListenerWrapper(EventListener listener, ObjectMapper mapper) {
+        this(listener, mapper, new ListenerStats());
+    }
+
+    public ListenerWrapper(EventListener listener, ObjectMapper mapper,
+        ListenerStats stats) {
         this.listener = listener;
         this.mapper = mapper;
+        this.stats = stats;
     }
 
     @Override
@@ -43,6 +51,7 @@ public class ListenerWrapper implements MessageHandler {
         try {
             event = mapper.readValue(body, Event.class);
             listener.onEvent(event);
+            stats.eventProcessed(event);
         }
         catch (Exception e1) {
             log.fatal("Unable to deserialize event object from msg: " + body, e1);
@@ -23,6 +23,7 @@ import org.candlepin.pinsetter.tasks.CancelJobJob;
 import org.candlepin.pinsetter.tasks.CertificateRevocationListTask;
 import org.candlepin.pinsetter.tasks.ImportRecordJob;
 import org.candlepin.pinsetter.tasks.JobCleaner;
+import org.candlepin.pinsetter.tasks.RegenDirtyEntitlementCertsTask;
 import org.candlepin.pinsetter.tasks.StatisticHistoryTask;
 
 /**
@@ -45,9 +46,17 @@ public class ConfigProperties {
     public static final String HORNETQ_BASE_DIR = "candlepin.audit.hornetq.base_dir";
     public static final String HORNETQ_LARGE_MSG_SIZE =
                                       "candlepin.audit.hornetq.large_msg_size";
+    public static final String HORNETQ_SENDER_POOL_SIZE =
+        "candlepin.audit.hornetq.sender_pool_size";
     public static final String AUDIT_LISTENERS = "candlepin.audit.listeners";
     public static final String AUDIT_LOG_FILE = "candlepin.audit.log_file";
     public static final String AUDIT_LOG_VERBOSE = "candlepin.audit.log_verbose";
+    public static final String AUDIT_DATABASE_BATCH_SIZE =
+        "candlepin.audit.database.batch_size";
+    public static final String AUDIT_DATABASE_BATCH_WAIT =
+        "candlepin.audit.database.batch_wait";
+    public static final String AUDIT_LISTENER_CONCURRENCY =
+        "candlepin.audit.listener_concurrency";
 
     public static final String PRETTY_PRINT = "candlepin.pretty_print";
     public static final String REVOKE_ENTITLEMENT_IN_FIFO_ORDER =
@@ -73,7 +82,8 @@ public class ConfigProperties {
         CertificateRevocationListTask.class.getName(),
         JobCleaner.class.getName(), ImportRecordJob.class.getName(),
         StatisticHistoryTask.class.getName(),
-        CancelJobJob.class.getName()};
+        CancelJobJob.class.getName(),
+        RegenDirtyEntitlementCertsTask.class.getName()};
 
     public static final String SYNC_WORK_DIR = "candlepin.sync.work_dir";
     public static final String CONSUMER_FACTS_MATCHER =
@@ -98,6 +108,28 @@ public class ConfigProperties {
         "candlepin.passphrase.path";
 
     public static final String PRODUCT_CACHE_MAX = "candlepin.cache.product_cache_max";
+    public static final String COMPLIANCE_CACHE_MAX =
+        "candlepin.cache.compliance_cache_max";
+    public static final String COMPLIANCE_CACHE_BUCKET =
+        "candlepin.cache.compliance_bucket_seconds";
+    public static final String CONTENT_PAYLOAD_CACHE_MAX_BYTES =
+        "candlepin.cache.content_payload_max_bytes";
+
+    public static final String RULES_REFRESH_INTERVAL = "candlepin.rules.refresh_interval";
+
+    public static final String REGEN_CHUNK_SIZE = "candlepin.regen.chunk_size";
+    public static final String REGEN_THREADS = "candlepin.regen.threads";
+    public static final String REGEN_DIRTY_MAX = "candlepin.regen.dirty.max_per_run";
+    public static final String REGEN_DIRTY_RATE = "candlepin.regen.dirty.per_second";
+    public static final String REGEN_DIRTY_ACTIVE_HOURS =
+        "candlepin.regen.dirty.active_hours";
+
+    public static final String KEYPAIR_POOL_SIZE = "candlepin.keypair_pool.size";
+    public static final String KEYPAIR_POOL_THREADS = "candlepin.keypair_pool.threads";
+
+    public static final String AUTOBIND_SOLVER = "candlepin.autobind.solver";
+    public static final String AUTOBIND_MAX_NODES = "candlepin.autobind.max_nodes";
+    public static final String AUTOBIND_MAX_MILLIS = "candlepin.autobind.max_millis";
 
     public static final String INTEGER_FACTS =
         "candlepin.integer_facts";
@@ -158,6 +190,12 @@ public class ConfigProperties {
 
                 this.put(HORNETQ_BASE_DIR, "/var/lib/candlepin/hornetq");
                 this.put(HORNETQ_LARGE_MSG_SIZE, new Integer(10 * 1024).toString());
+
+                /**
+                 * Most HornetQ sessions open at once for sending events. Threads
+                 * flushing events wait for a free one beyond that.
+                 */
+                this.put(HORNETQ_SENDER_POOL_SIZE, "8");
                 this.put(AUDIT_LISTENERS,
                     "org.candlepin.audit.DatabaseListener," +
                         "org.candlepin.audit.LoggingListener," +
@@ -165,9 +203,38 @@ public class ConfigProperties {
                 this.put(AUDIT_LOG_FILE, "/var/log/candlepin/audit.log");
                 this.put(AUDIT_LOG_VERBOSE, "false");
 
+                /**
+                 * Events the database listener inserts per transaction, and the
+                 * milliseconds it waits for a batch to fill up. A batch size of 1
+                 * inserts every event as it arrives.
+                 */
+                this.put(AUDIT_DATABASE_BATCH_SIZE, "1");
+                this.put(AUDIT_DATABASE_BATCH_WAIT, "1000");
+
+                /**
+                 * Consumers delivering events to each audit listener in parallel.
+                 * Events of one owner are always delivered in order. Can be set
+                 * for a single listener by appending a dot and the listener's
+                 * class name to the key.
+                 */
+                this.put(AUDIT_LISTENER_CONCURRENCY, "1");
+
                 this.put(PRETTY_PRINT, "false");
                 this.put(REVOKE_ENTITLEMENT_IN_FIFO_ORDER, "true");
                 this.put(CRL_FILE_PATH, "/var/lib/candlepin/candlepin-crl.crl");
+                /**
+                 * Minimum seconds between checks for newly revoked or expired
+                 * serials when serving the cached CRL.
+                 */
+                this.put(CRL_CHECK_INTERVAL, "60");
+                /**
+                 * Delta CRL served from /crl/delta. With use_delta set, /crl is
+                 * only consolidated by the CRL job, and new revocations are
+                 * published through the delta CRL in between.
+                 */
+                this.put(CRL_DELTA_FILE_PATH,
+                    "/var/lib/candlepin/candlepin-delta-crl.crl");
+                this.put(CRL_USE_DELTA, "false");
 
                 this.put(SYNC_WORK_DIR, "/var/cache/candlepin/sync");
                 this.put(CONSUMER_FACTS_MATCHER, ".*");
@@ -222,6 +289,64 @@ public class ConfigProperties {
                  */
                 this.put(PRODUCT_CACHE_MAX, "100");
 
+                /**
+                 * Consumer compliance statuses kept in memory, and the length of
+                 * the time buckets a cached status is reused within. 0 for either
+                 * disables the cache.
+                 */
+                this.put(COMPLIANCE_CACHE_MAX, "10000");
+                this.put(COMPLIANCE_CACHE_BUCKET, "600");
+
+                /**
+                 * Total bytes of v3 certificate content payloads kept in memory to
+                 * be reused for other consumers with the same content. 0 disables
+                 * the cache.
+                 */
+                this.put(CONTENT_PAYLOAD_CACHE_MAX_BYTES, "16777216");
+
+                /**
+                 * Seconds between background checks for rules changed by another
+                 * candlepin node. Local uploads and imports refresh the rules
+                 * immediately, so this is only needed in multi-node deployments.
+                 * 0 disables the poller.
+                 */
+                this.put(RULES_REFRESH_INTERVAL, "0");
+
+                /**
+                 * Pool selection search used by autobind. "bounded" stops after
+                 * max_nodes search steps or max_millis milliseconds (0 for no limit)
+                 * and keeps the best selection found so far, "exhaustive" tries
+                 * every combination of pools.
+                 */
+                this.put(AUTOBIND_SOLVER, "bounded");
+                this.put(AUTOBIND_MAX_NODES, "100000");
+                this.put(AUTOBIND_MAX_MILLIS, "2000");
+
+                /**
+                 * Entitlements regenerated per transaction by the certificate
+                 * regeneration jobs, and the number of worker threads signing them.
+                 */
+                this.put(REGEN_CHUNK_SIZE, "100");
+                this.put(REGEN_THREADS, "4");
+
+                /**
+                 * Dirty entitlements regenerated in the background per run of the
+                 * dirty certificate task, at most per_second of them each second
+                 * (0 for no limit). Consumers which checked in within the last
+                 * active_hours hours are regenerated first.
+                 */
+                this.put(REGEN_DIRTY_MAX, "1000");
+                this.put(REGEN_DIRTY_RATE, "20");
+                this.put(REGEN_DIRTY_ACTIVE_HOURS, "24");
+
+                /**
+                 * Consumer key pairs generated ahead of time, and the number of
+                 * low priority threads keeping the pool topped up. A size of 0
+                 * generates every key pair during registration.
+                 */
+                this.put(KEYPAIR_POOL_SIZE, "50");
+                this.put(KEYPAIR_POOL_THREADS, "1");
+
                 /**
                  * As we do math on some facts and attributes, we need to constrain
                  * some values
@@ -236,6 +361,9 @@ public class ConfigProperties {
             }
         };
     public static final String CRL_FILE_PATH = "candlepin.crl.file";
+    public static final String CRL_CHECK_INTERVAL = "candlepin.crl.check_interval";
+    public static final String CRL_DELTA_FILE_PATH = "candlepin.crl.delta_file";
+    public static final String CRL_USE_DELTA = "candlepin.crl.use_delta";
     public static final String IDENTITY_CERT_YEAR_ADDENDUM =
                                "candlepin.identityCert.yr.addendum";
     /**
@@ -301,6 +301,9 @@ public class CandlepinPoolManager implements PoolManager {
 
     @Override
     public Pool createPool(Pool p) {
+        // New pools have nothing consumed, whatever the caller sent:
+        p.setConsumed(0L);
+        p.setExported(0L);
         Pool created = poolCurator.create(p);
         if (log.isDebugEnabled()) {
             log.debug("   new pool: " + p);
@@ -405,38 +408,33 @@ public class CandlepinPoolManager implements PoolManager {
             }
         }
 
-        for (Pool pool : allOwnerPools) {
-            boolean providesProduct = false;
-            for (String productId : productIds) {
-                if (pool.provides(productId)) {
-                    providesProduct = true;
-                    break;
+        List<Pool> providingPools = poolCurator.filterProviding(owner, allOwnerPools,
+            productIds);
+
+        Map<Pool, ValidationResult> validations = enforcer.preEntitlement(consumer,
+            providingPools, CallerType.BEST_POOLS);
+        for (Pool pool : providingPools) {
+            ValidationResult result = validations.get(pool);
+
+            if (result.hasErrors() || result.hasWarnings()) {
+                // Just keep the last one around, if we need it
+                failedResult = result;
+                if (log.isDebugEnabled()) {
+                    log.debug("Pool filtered from candidates due to rules " +
+                        "failure: " +
+                        pool.getId());
                 }
             }
-            if (providesProduct) {
-                ValidationResult result = enforcer.preEntitlement(consumer,
-                    pool, 1, CallerType.BEST_POOLS);
-
-                if (result.hasErrors() || result.hasWarnings()) {
-                    // Just keep the last one around, if we need it
-                    failedResult = result;
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool filtered from candidates due to rules " +
-                            "failure: " +
-                            pool.getId());
-                    }
+            else {
+                // Check to make sure that the consumer supports the required cert
+                // versions for all attributes.
+                if (!ProductVersionValidator.verifyClientSupport(consumer,
+                    pool.getProductAttributes())) {
+                    log.debug("Pool filtered from candidates because it is " +
+                              "unsupported by the consumer. Upgrade client to use.");
                 }
                 else {
-                    // Check to make sure that the consumer supports the required cert
-                    // versions for all attributes.
-                    if (!ProductVersionValidator.verifyClientSupport(consumer,
-                        pool.getProductAttributes())) {
-                        log.debug("Pool filtered from candidates because it is " +
-                                  "unsupported by the consumer. Upgrade client to use.");
-                    }
-                    else {
-                        filteredPools.add(pool);
-                    }
+                    filteredPools.add(pool);
                 }
             }
         }
@@ -524,7 +522,7 @@ public class CandlepinPoolManager implements PoolManager {
 
         entitlement = handler.handleEntitlement(consumer, pool, entitlement, quantity);
 
-        // The quantity is calculated at fetch time. We update it here
+        // The stored totals are kept by the entitlement curator. We update it here
         // To reflect what we just added to the db.
         pool.setConsumed(pool.getConsumed() + quantity);
         if (consumer.getType().isManifest()) {
@@ -534,6 +532,7 @@ public class CandlepinPoolManager implements PoolManager {
         handler.handlePostEntitlement(consumer, poolHelper, entitlement);
 
         // Check consumer's new compliance status and save:
+        complianceRules.invalidateStatus(consumer);
         ComplianceStatus compliance = complianceRules.getStatus(consumer, new Date());
         consumer.setEntitlementStatus(compliance.getStatus());
 
@@ -802,7 +801,7 @@ public class CandlepinPoolManager implements PoolManager {
         entitlementCurator.delete(entitlement);
         Event event = eventFactory.entitlementDeleted(entitlement);
 
-        // The quantity is calculated at fetch time. We update it here
+        // The stored totals are kept by the entitlement curator. We update it here
         // To reflect what we just removed from the db.
         pool.setConsumed(pool.getConsumed() - entitlement.getQuantity());
         if (consumer.getType().isManifest()) {
@@ -821,6 +820,7 @@ public class CandlepinPoolManager implements PoolManager {
         }
 
         // Check consumer's new compliance status and save:
+        complianceRules.invalidateStatus(consumer);
         ComplianceStatus compliance = complianceRules.getStatus(consumer, new Date());
         consumer.setEntitlementStatus(compliance.getStatus());
         consumerCurator.update(consumer);
@@ -997,6 +997,7 @@ public class CandlepinPoolManager implements PoolManager {
         public Entitlement handleEntitlement(Consumer consumer, Pool pool,
             Entitlement entitlement, int quantity) {
             entitlement.setQuantity(entitlement.getQuantity() + quantity);
+            entitlementCurator.adjustQuantity(entitlement, quantity);
             return entitlement;
         }
         @Override
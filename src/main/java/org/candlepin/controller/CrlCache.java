@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.exceptions.IseException;
+import org.candlepin.model.CertificateSerial;
+import org.candlepin.model.CertificateSerialCurator;
+import org.candlepin.util.CrlFileUtil;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * CrlCache
+ *
+ * Keeps the signed, PEM encoded CRL in memory so it can be served without
+ * re-signing it on every request. The CRL is only regenerated when revoked
+ * serials are waiting to be collected or revoked serials have expired, and the
+ * database is checked for those at most once per
+ * {@link ConfigProperties#CRL_CHECK_INTERVAL}. Regardless of changes, a CRL is
+ * also regenerated once its nextUpdate is less than one check interval away, so
+ * an outdated CRL is never served.
+ *
+ * A delta CRL listing the serials revoked since the complete CRL was issued is
+ * cached the same way. With {@link ConfigProperties#CRL_USE_DELTA} set, the
+ * complete CRL is left alone between runs of the CRL job and new revocations
+ * are only published through the delta.
+ */
+@Singleton
+public class CrlCache {
+    private static Logger log = Logger.getLogger(CrlCache.class);
+
+    private Config config;
+    private CrlGenerator crlGenerator;
+    private CrlFileUtil crlFileUtil;
+    private CertificateSerialCurator certificateSerialCurator;
+
+    private Entry current;
+    private long checkedAt;
+    private Entry delta;
+    private long deltaCheckedAt;
+
+    @Inject
+    public CrlCache(Config config, CrlGenerator crlGenerator, CrlFileUtil crlFileUtil,
+        CertificateSerialCurator certificateSerialCurator) {
+        this.config = config;
+        this.crlGenerator = crlGenerator;
+        this.crlFileUtil = crlFileUtil;
+        this.certificateSerialCurator = certificateSerialCurator;
+    }
+
+    /**
+     * @return the current complete CRL, regenerated first if it is missing or
+     * the database has changes for it.
+     * @throws CRLException if there is a problem generating the CRL
+     * @throws CertificateException if there is a problem parsing the CRL file
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized Entry get()
+        throws CRLException, CertificateException, IOException {
+
+        long now = System.currentTimeMillis();
+
+        if (current == null) {
+            current = load(getCrlFile());
+        }
+        else if (now - checkedAt < getCheckInterval() && !isExpiring(current, now)) {
+            return current;
+        }
+
+        checkedAt = now;
+        if (current == null || isExpiring(current, now) ||
+            (!config.getBoolean(ConfigProperties.CRL_USE_DELTA) &&
+            certificateSerialCurator.hasCrlChanges())) {
+            return refresh();
+        }
+        return current;
+    }
+
+    /**
+     * @return the delta CRL against the current complete CRL, regenerated first
+     * if it is missing, was issued against an older complete CRL, or more
+     * serials have been revoked since.
+     * @throws CRLException if there is a problem generating the CRL
+     * @throws CertificateException if there is a problem parsing the CRL file
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized Entry getDelta()
+        throws CRLException, CertificateException, IOException {
+
+        Entry base = get();
+        long now = System.currentTimeMillis();
+
+        if (delta == null) {
+            delta = load(getDeltaFile());
+        }
+        else if (now - deltaCheckedAt < getCheckInterval() && !isExpiring(delta, now)) {
+            return delta;
+        }
+
+        deltaCheckedAt = now;
+        if (delta == null || isExpiring(delta, now) || !isCurrentDelta(base, delta)) {
+            X509CRL crl = crlGenerator.createDeltaCRL(base.getCrl(),
+                delta == null ? null : delta.getCrl());
+            delta = new Entry(crlFileUtil.writeCRLFile(getDeltaFile(), crl), crl);
+        }
+        return delta;
+    }
+
+    /**
+     * Sync the complete CRL with the database, write it out and cache it. This
+     * consolidates every serial revoked since into the complete CRL, so the next
+     * delta CRL starts out empty.
+     *
+     * @return the regenerated CRL.
+     * @throws CRLException if there is a problem generating the CRL
+     * @throws CertificateException if there is a problem parsing the CRL file
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized Entry refresh()
+        throws CRLException, CertificateException, IOException {
+
+        X509CRL crl = crlFileUtil.readCRLFile(getCrlFile());
+        // number the new CRL after any delta already issued against the old one
+        X509CRL deltaCrl = delta != null ? delta.getCrl() :
+            crlFileUtil.readCRLFile(getDeltaFile());
+        crl = crlGenerator.syncCRLWithDB(crl, deltaCrl);
+        return store(crl);
+    }
+
+    /**
+     * Remove serials inadvertently added to the complete CRL, then write it out
+     * and cache it.
+     *
+     * @param serials certificate serials to be removed.
+     * @return the updated CRL.
+     * @throws CRLException if there is a problem generating the CRL
+     * @throws CertificateException if there is a problem parsing the CRL file
+     * @throws IOException if there is a problem reading or writing the CRL file
+     */
+    public synchronized Entry removeEntries(List<CertificateSerial> serials)
+        throws CRLException, CertificateException, IOException {
+
+        X509CRL crl = crlFileUtil.readCRLFile(getCrlFile());
+        X509CRL deltaCrl = delta != null ? delta.getCrl() :
+            crlFileUtil.readCRLFile(getDeltaFile());
+        crl = crlGenerator.removeEntries(crl, serials, deltaCrl);
+        return store(crl);
+    }
+
+    private Entry store(X509CRL crl)
+        throws CRLException, CertificateException, IOException {
+
+        byte[] encoded = crlFileUtil.writeCRLFile(getCrlFile(), crl);
+        current = new Entry(encoded, crl);
+        checkedAt = System.currentTimeMillis();
+        // the delta has to be reissued against the new CRL
+        deltaCheckedAt = 0;
+        return current;
+    }
+
+    /*
+     * True if the CRL's nextUpdate has passed, or will before the next check.
+     */
+    private boolean isExpiring(Entry entry, long now) {
+        Date nextUpdate = entry.getCrl().getNextUpdate();
+        return nextUpdate != null && nextUpdate.getTime() - now <= getCheckInterval();
+    }
+
+    private boolean isCurrentDelta(Entry base, Entry deltaEntry) {
+        BigInteger baseNumber = crlGenerator.getCRLNumber(base.getCrl());
+        if (!baseNumber.equals(crlGenerator.getBaseCRLNumber(deltaEntry.getCrl()))) {
+            return false;
+        }
+
+        int entries = deltaEntry.getCrl().getRevokedCertificates() == null ? 0 :
+            deltaEntry.getCrl().getRevokedCertificates().size();
+        return entries == certificateSerialCurator.countTobeCollectedSerials();
+    }
+
+    private Entry load(File crlFile)
+        throws CRLException, CertificateException, IOException {
+
+        X509CRL crl = crlFileUtil.readCRLFile(crlFile);
+        if (crl == null) {
+            return null;
+        }
+
+        log.debug("Caching CRL from " + crlFile);
+        return new Entry(FileUtils.readFileToByteArray(crlFile), crl);
+    }
+
+    private long getCheckInterval() {
+        return config.getInt(ConfigProperties.CRL_CHECK_INTERVAL) * 1000L;
+    }
+
+    private File getCrlFile() {
+        return getFile(ConfigProperties.CRL_FILE_PATH);
+    }
+
+    private File getDeltaFile() {
+        return getFile(ConfigProperties.CRL_DELTA_FILE_PATH);
+    }
+
+    private File getFile(String key) {
+        String filePath = config.getString(key);
+
+        if (filePath == null) {
+            throw new IseException("CRL file path not defined in config file");
+        }
+
+        return new File(filePath);
+    }
+
+    /**
+     * A signed CRL along with the validators used for conditional requests.
+     */
+    public static class Entry {
+        private byte[] encoded;
+        private X509CRL crl;
+        private String etag;
+
+        public Entry(byte[] encoded, X509CRL crl) {
+            this.encoded = encoded;
+            this.crl = crl;
+            this.etag = DigestUtils.shaHex(encoded);
+        }
+
+        /**
+         * @return the PEM encoded CRL. The array is shared and must not be
+         * modified.
+         */
+        public byte[] getEncoded() {
+            return encoded;
+        }
+
+        public X509CRL getCrl() {
+            return crl;
+        }
+
+        public Date getLastModified() {
+            return crl.getThisUpdate();
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+}
@@ -21,8 +21,10 @@ import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -32,6 +34,7 @@ import org.candlepin.pki.PKIUtility;
 import org.candlepin.pki.X509CRLEntryWrapper;
 import org.candlepin.util.OIDUtil;
 import org.candlepin.util.Util;
+import org.hibernate.ScrollableResults;
 
 import com.google.inject.Inject;
 import com.google.inject.persist.Transactional;
@@ -70,100 +73,100 @@ public class CrlGenerator {
      */
     @Transactional
     public X509CRL syncCRLWithDB(X509CRL x509crl) {
-        List<X509CRLEntryWrapper> crlEntries = null;
-        BigInteger no = getCRLNumber(x509crl);
+        return syncCRLWithDB(x509crl, null);
+    }
+
+    /**
+     * Synchronizes the given crl with the values from the database, numbering
+     * the updated crl after both the given crl and the latest delta crl issued
+     * against it.
+     *
+     * The database is the source of truth for the entries: expired serials are
+     * deleted and newly revoked ones marked collected in bulk, then every
+     * collected serial is streamed into the new crl. Only the number of the
+     * given crl is used.
+     *
+     * @param x509crl the crl to sync (can be null).
+     * @param deltaCrl the latest delta crl (can be null).
+     * @return the updated crl
+     */
+    @Transactional
+    public X509CRL syncCRLWithDB(X509CRL x509crl, X509CRL deltaCrl) {
+        BigInteger no = getCRLNumber(x509crl).max(getCRLNumber(deltaCrl));
         if (log.isDebugEnabled()) {
             log.debug("Old CRLNumber is : " + no);
         }
 
-        if (x509crl != null) {
-            crlEntries = this.toSimpleCRLEntries(removeExpiredSerials(x509crl
-                .getRevokedCertificates()));
-        }
-        else {
-            crlEntries = newList();
+        int expired = this.certificateSerialCurator.deleteExpiredSerials();
+        int collected = this.certificateSerialCurator.collectRevokedSerials();
+        if (log.isDebugEnabled()) {
+            log.debug("Removed #" + expired + " expired and added #" + collected +
+                " new entries to the CRL");
         }
 
-        crlEntries.addAll(getNewSerialsToAppendAndSetThemConsumed());
-        this.certificateSerialCurator.deleteExpiredSerials();
-
-        return pkiUtility.createX509CRL(crlEntries, no
-            .add(BigInteger.ONE));
+        ScrollableResults serials =
+            this.certificateSerialCurator.scrollRevokedSerials(true);
+        try {
+            return pkiUtility.createX509CRL(new SerialEntryIterator(serials),
+                no.add(BigInteger.ONE));
+        }
+        finally {
+            serials.close();
+        }
     }
 
     /**
-     * Gets the new serials to append and set them consumed.
+     * Creates a delta crl listing the serials revoked since the given base crl
+     * was issued. The serials are left uncollected, so they are added to the
+     * base crl when it is next synced.
      *
-     * @return the new serials to append and set them consumed
+     * @param baseCrl the complete crl the delta applies to (can be null).
+     * @param previousDelta the last delta crl issued (can be null).
+     * @return the delta crl
      */
-    protected List<X509CRLEntryWrapper> getNewSerialsToAppendAndSetThemConsumed() {
-        List<X509CRLEntryWrapper> entries = Util.newList();
-        List<CertificateSerial> serials =
-            this.certificateSerialCurator.retrieveTobeCollectedSerials();
-        for (CertificateSerial cs : serials) {
-            entries.add(new X509CRLEntryWrapper(cs.getSerial(),
-                   new Date()));
-            cs.setCollected(true);
-        }
-        if (log.isTraceEnabled()) {
-            log.trace("Added #" + serials.size() + " new entries to the CRL");
-        }
-        if (log.isTraceEnabled()) {
-            StringBuilder builder = new StringBuilder("[ ");
-            for (CertificateSerial cs : serials) {
-                builder.append(cs.getSerial()).append(", ");
-            }
-            builder.append(" ]");
-            log.trace("Newly added serials = " + builder.toString());
-        }
-        this.certificateSerialCurator.saveOrUpdateAll(serials);
+    @Transactional
+    public X509CRL createDeltaCRL(X509CRL baseCrl, X509CRL previousDelta) {
+        BigInteger base = getCRLNumber(baseCrl);
+        BigInteger no = base.max(getCRLNumber(previousDelta)).add(BigInteger.ONE);
         if (log.isDebugEnabled()) {
-            log.debug("Total number of serials retrieved from db: #" +
-                entries.size());
+            log.debug("Creating delta CRL #" + no + " against base #" + base);
         }
 
-        return entries;
+        ScrollableResults serials =
+            this.certificateSerialCurator.scrollRevokedSerials(false);
+        try {
+            return pkiUtility.createX509DeltaCRL(new SerialEntryIterator(serials),
+                no, base);
+        }
+        finally {
+            serials.close();
+        }
     }
 
     /**
-     * Removes the expired serials.
-     *
-     * @param revokedEntries the revoked entries
-     * @return the set
+     * Remove serials inadvertently added to the CRL.
+     * @param x509crl to be repaired.
+     * @param serials certificate serials to be removed.
+     * @return updated CRL with the given entries removed.
      */
-    protected Set<? extends X509CRLEntry> removeExpiredSerials(
-        Set<? extends X509CRLEntry> revokedEntries) {
-        if (revokedEntries == null || revokedEntries.size() == 0) {
-            return Util.newSet();
-        }
-        Map<BigInteger, X509CRLEntry> map = newMap();
-        for (X509CRLEntry entry : revokedEntries) {
-            map.put(entry.getSerialNumber(), entry);
-        }
-        for (CertificateSerial cs : this.certificateSerialCurator
-            .getExpiredSerials()) {
-            X509CRLEntry entry = map.get(cs.getSerial());
-            if (entry != null) {
-                revokedEntries.remove(entry);
-                if (log.isTraceEnabled()) {
-                    log.trace("Serial #" + cs.getId() +
-                        " has expired. Removing it from CRL");
-                }
-            }
-        }
-        return revokedEntries;
+    @Transactional
+    public X509CRL removeEntries(X509CRL x509crl, List<CertificateSerial> serials) {
+        return removeEntries(x509crl, serials, null);
     }
 
     /**
-     * Remove serials inadvertently added to the CRL.
+     * Remove serials inadvertently added to the CRL, numbering the updated crl
+     * after both the given crl and the latest delta crl issued against it.
      * @param x509crl to be repaired.
      * @param serials certificate serials to be removed.
+     * @param deltaCrl the latest delta crl (can be null).
      * @return updated CRL with the given entries removed.
      */
     @Transactional
-    public X509CRL removeEntries(X509CRL x509crl, List<CertificateSerial> serials) {
+    public X509CRL removeEntries(X509CRL x509crl, List<CertificateSerial> serials,
+        X509CRL deltaCrl) {
         List<X509CRLEntryWrapper> crlEntries = null;
-        BigInteger no = getCRLNumber(x509crl);
+        BigInteger no = getCRLNumber(x509crl).max(getCRLNumber(deltaCrl));
         if (log.isDebugEnabled()) {
             log.debug("Old CRLNumber is : " + no);
         }
@@ -224,6 +227,61 @@ public class CrlGenerator {
             x509crl.getExtensionValue(OIDUtil.CRL_NUMBER)));
     }
 
+    /**
+     * Gets the number of the complete crl a delta crl applies to.
+     *
+     * @param deltaCrl the delta crl
+     * @return the base crl number, or null if this is not a delta crl
+     */
+    protected BigInteger getBaseCRLNumber(X509CRL deltaCrl) {
+        if (deltaCrl == null) {
+            return null;
+        }
+        byte[] value = deltaCrl.getExtensionValue(OIDUtil.DELTA_CRL_INDICATOR);
+        if (value == null) {
+            return null;
+        }
+        return new BigInteger(pkiUtility.decodeDERValue(value));
+    }
+
+    /**
+     * Turns the [id, updated] rows of a serial scroll into crl entries, one at
+     * a time.
+     */
+    private static class SerialEntryIterator implements Iterator<X509CRLEntryWrapper> {
+        private ScrollableResults results;
+        private Boolean pending;
+
+        public SerialEntryIterator(ScrollableResults results) {
+            this.results = results;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending == null) {
+                pending = results.next();
+            }
+            return pending;
+        }
+
+        @Override
+        public X509CRLEntryWrapper next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pending = null;
+
+            Object[] row = results.get();
+            Date revoked = row[1] != null ? (Date) row[1] : new Date();
+            return new X509CRLEntryWrapper(Util.toBigInt((Long) row[0]), revoked);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     /**
      * To simple crl entries.
      *
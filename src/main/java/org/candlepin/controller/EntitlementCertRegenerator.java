@@ -0,0 +1,382 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.candlepin.auth.Principal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinSingletonScope;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCertificate;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.Environment;
+import org.candlepin.model.JobCurator;
+import org.candlepin.model.Product;
+import org.candlepin.model.ProvidedProduct;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.policy.js.ProductCache;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.persist.Transactional;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * EntitlementCertRegenerator
+ *
+ * Regenerates the entitlement certificates affected by a product or content change
+ * a chunk at a time. Entitlement ids are read a page at a time, and each chunk is
+ * regenerated on a bounded pool of worker threads in its own unit of work and
+ * transaction, so certificates are signed in parallel and no session holds more
+ * than one chunk.
+ *
+ * Entitlements regenerated since the job was created are skipped, so a job that
+ * is restarted part way through picks up from the chunks it had not committed.
+ * Entitlements marked dirty are drained the same way by a scheduled task.
+ */
+public class EntitlementCertRegenerator {
+
+    private static Logger log = Logger.getLogger(EntitlementCertRegenerator.class);
+
+    private Injector injector;
+    private CandlepinSingletonScope singletonScope;
+    private UnitOfWork unitOfWork;
+    private EntitlementCurator entitlementCurator;
+    private JobCurator jobCurator;
+    private int chunkSize;
+    private int threads;
+    private int dirtyMax;
+    private int dirtyRate;
+    private int dirtyActiveHours;
+
+    @Inject
+    public EntitlementCertRegenerator(Injector injector,
+        CandlepinSingletonScope singletonScope, UnitOfWork unitOfWork,
+        EntitlementCurator entitlementCurator, JobCurator jobCurator,
+        Config config) {
+        this.injector = injector;
+        this.singletonScope = singletonScope;
+        this.unitOfWork = unitOfWork;
+        this.entitlementCurator = entitlementCurator;
+        this.jobCurator = jobCurator;
+        this.chunkSize = Math.max(config.getInt(ConfigProperties.REGEN_CHUNK_SIZE), 1);
+        this.threads = Math.max(config.getInt(ConfigProperties.REGEN_THREADS), 1);
+        this.dirtyMax = config.getInt(ConfigProperties.REGEN_DIRTY_MAX);
+        this.dirtyRate = config.getInt(ConfigProperties.REGEN_DIRTY_RATE);
+        this.dirtyActiveHours = config.getInt(ConfigProperties.REGEN_DIRTY_ACTIVE_HOURS);
+    }
+
+    /**
+     * Regenerate the certificates of entitlements in pools currently providing a
+     * product.
+     *
+     * @param productId product that changed.
+     * @param lazy only mark the certificates dirty.
+     * @param jobId job to report progress to, and resume for, null if none.
+     * @return the number of entitlements regenerated.
+     */
+    public int regenerateProduct(final String productId, boolean lazy, String jobId) {
+        final Date activeOn = new Date();
+        log.info("Regenerating certificates of pools for product: " + productId);
+
+        return regenerate(new IdSource() {
+            public List<String> next(String afterId, int max) {
+                return entitlementCurator.listIdsByProduct(productId, activeOn, afterId,
+                    max);
+            }
+        }, null, lazy, jobId);
+    }
+
+    /**
+     * Regenerate the certificates of entitlements in an environment which include
+     * any of the given content.
+     *
+     * @param environment environment the content was promoted to or demoted from.
+     * @param contentIds content promoted or demoted.
+     * @param lazy only mark the certificates dirty.
+     * @param jobId job to report progress to, and resume for, null if none.
+     * @return the number of entitlements regenerated.
+     */
+    public int regenerateEnvironment(final Environment environment,
+        Set<String> contentIds, boolean lazy, String jobId) {
+        log.info("Regenerating relevant certificates in environment: " +
+            environment.getId());
+
+        return regenerate(new IdSource() {
+            public List<String> next(String afterId, int max) {
+                return entitlementCurator.listIdsByEnvironment(environment, afterId,
+                    max);
+            }
+        }, contentIds, lazy, jobId);
+    }
+
+    /**
+     * Regenerate the certificates of entitlements marked dirty, so clients do not
+     * have to wait for them to be signed when they next fetch their certificates.
+     * Entitlements of recently active consumers are regenerated first, and no more
+     * than the configured number per second.
+     *
+     * @return the number of entitlements regenerated.
+     */
+    public int regenerateDirty() {
+        Date since = new Date();
+        Date activeSince = new Date(since.getTime() - dirtyActiveHours * 3600000L);
+        final List<String> dirtyIds = new ArrayList<String>(
+            entitlementCurator.listDirtyIds(activeSince, dirtyMax));
+        if (dirtyIds.isEmpty()) {
+            return 0;
+        }
+        log.info("Regenerating certificates of " + dirtyIds.size() +
+            " dirty entitlements");
+
+        final long start = since.getTime();
+        return regenerate(new IdSource() {
+            private int offset = 0;
+
+            public List<String> next(String afterId, int max) {
+                throttle(start, offset);
+                int end = Math.min(offset + max, dirtyIds.size());
+                List<String> ids = new ArrayList<String>(dirtyIds.subList(offset, end));
+                offset = end;
+                return ids;
+            }
+        }, null, false, since, null);
+    }
+
+    /*
+     * Wait until handing out the given number of entitlements keeps to the
+     * configured rate.
+     */
+    private void throttle(long start, int handedOut) {
+        if (dirtyRate <= 0) {
+            return;
+        }
+        long wait = start + handedOut * 1000L / dirtyRate - System.currentTimeMillis();
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int regenerate(IdSource source, Set<String> contentIds, boolean lazy,
+        String jobId) {
+        JobStatus status = jobId == null ? null : jobCurator.find(jobId);
+        return regenerate(source, contentIds, lazy,
+            status == null ? null : status.getCreated(), jobId);
+    }
+
+    private int regenerate(IdSource source, Set<String> contentIds, boolean lazy,
+        Date since, String jobId) {
+        Principal principal = ResteasyProviderFactory.getContextData(Principal.class);
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+            new WorkerThreadFactory());
+        LinkedList<Future<Integer>> pending = new LinkedList<Future<Integer>>();
+        int chunks = 0;
+        int regenerated = 0;
+        try {
+            List<String> ids = source.next(null, chunkSize);
+            while (!ids.isEmpty()) {
+                pending.add(workers.submit(new Chunk(ids, contentIds, lazy, since,
+                    principal)));
+
+                // Only read ahead a couple of chunks per worker.
+                if (pending.size() >= threads * 2) {
+                    regenerated += waitFor(pending.removeFirst());
+                    recordProgress(jobId, ++chunks, regenerated);
+                }
+                ids = source.next(ids.get(ids.size() - 1), chunkSize);
+            }
+            while (!pending.isEmpty()) {
+                regenerated += waitFor(pending.removeFirst());
+                recordProgress(jobId, ++chunks, regenerated);
+            }
+        }
+        finally {
+            workers.shutdownNow();
+        }
+
+        log.info("Regenerated " + regenerated + " entitlement certificates in " +
+            chunks + " chunks.");
+        return regenerated;
+    }
+
+    private int waitFor(Future<Integer> chunk) {
+        try {
+            return chunk.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted regenerating certificates", e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Unable to regenerate certificates",
+                e.getCause());
+        }
+    }
+
+    @Transactional
+    void recordProgress(String jobId, int chunks, int regenerated) {
+        if (jobId == null) {
+            return;
+        }
+        JobStatus status = jobCurator.find(jobId);
+        if (status != null) {
+            status.setResult("Regenerated " + regenerated +
+                " entitlement certificates in " + chunks + " chunks");
+            jobCurator.merge(status);
+        }
+    }
+
+    @Transactional
+    int regenerateChunk(List<String> ids, Set<String> contentIds, boolean lazy,
+        Date since, PoolManager poolManager, ProductCache productCache) {
+        int regenerated = 0;
+        for (Entitlement ent : entitlementCurator.listAllByIds(ids)) {
+            if (isRegeneratedSince(ent, lazy, since)) {
+                continue;
+            }
+            if (contentIds != null && !includesContent(ent, contentIds, productCache)) {
+                continue;
+            }
+            poolManager.regenerateCertificatesOf(ent, false, lazy);
+            regenerated++;
+        }
+        return regenerated;
+    }
+
+    private boolean isRegeneratedSince(Entitlement ent, boolean lazy, Date since) {
+        if (lazy) {
+            return ent.getDirty();
+        }
+        if (since != null) {
+            for (EntitlementCertificate cert : ent.getCertificates()) {
+                if (cert.getCreated() != null && !cert.getCreated().before(since)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean includesContent(Entitlement ent, Set<String> contentIds,
+        ProductCache productCache) {
+        List<String> productIds = new ArrayList<String>();
+        productIds.add(ent.getProductId());
+        for (ProvidedProduct provided : ent.getPool().getProvidedProducts()) {
+            productIds.add(provided.getProductId());
+        }
+        for (String productId : productIds) {
+            Product product = productCache.getProductById(productId);
+            for (String contentId : contentIds) {
+                if (product != null && product.hasContent(contentId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * IdSource
+     *
+     * Pages through the ids of the entitlements to consider, in id order.
+     */
+    interface IdSource {
+        List<String> next(String afterId, int max);
+    }
+
+    /**
+     * Chunk
+     *
+     * Regenerates one chunk of entitlements on a worker thread. Pool managers and
+     * the certificate adapters behind them are not safe to share between threads,
+     * so each chunk creates its own.
+     */
+    private class Chunk implements Callable<Integer> {
+        private List<String> ids;
+        private Set<String> contentIds;
+        private boolean lazy;
+        private Date since;
+        private Principal principal;
+
+        Chunk(List<String> ids, Set<String> contentIds, boolean lazy, Date since,
+            Principal principal) {
+            this.ids = ids;
+            this.contentIds = contentIds;
+            this.lazy = lazy;
+            this.since = since;
+            this.principal = principal;
+        }
+
+        @Override
+        public Integer call() {
+            PoolManager poolManager;
+            ProductCache productCache;
+            singletonScope.enter();
+            try {
+                poolManager = injector.getInstance(PoolManager.class);
+                productCache = injector.getInstance(ProductCache.class);
+            }
+            finally {
+                singletonScope.exit();
+            }
+
+            ResteasyProviderFactory.pushContext(Principal.class, principal);
+            unitOfWork.begin();
+            try {
+                return regenerateChunk(ids, contentIds, lazy, since, poolManager,
+                    productCache);
+            }
+            finally {
+                unitOfWork.end();
+                ResteasyProviderFactory.popContextData(Principal.class);
+            }
+        }
+    }
+
+    /**
+     * WorkerThreadFactory
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "entitlement-regen-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -39,6 +39,8 @@ import com.google.inject.util.Modules;
 
 import org.candlepin.audit.HornetqContextListener;
 import org.candlepin.pinsetter.core.PinsetterContextListener;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.JsRunnerProvider;
 
 /**
  * Customized Candlepin version of
@@ -88,6 +90,8 @@ public class CandlepinContextListener extends
     public void contextDestroyed(ServletContextEvent event) {
         hornetqListener.contextDestroyed();
         pinsetterListener.contextDestroyed();
+        injector.getInstance(JsRunnerProvider.class).shutdown();
+        injector.getInstance(KeyPairPool.class).shutdown();
     }
 
     /**
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * CacheStats - Size and hit rate of one of the in-memory caches, as reported
+ * under /status.
+ */
+@XmlRootElement(name = "cache")
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class CacheStats {
+
+    private int size;
+    private long hits;
+    private long misses;
+
+    /**
+     * default ctor
+     */
+    public CacheStats() {
+
+    }
+
+    public CacheStats(int size, long hits, long misses) {
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @return number of entries held.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return number of lookups served from the cache since startup.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    /**
+     * @return number of lookups the cache could not serve since startup.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+}
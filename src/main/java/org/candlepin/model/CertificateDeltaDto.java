@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * CertificateDeltaDto: the entitlement certificates a client is missing, and the
+ * serials of certificates it holds which have since been removed.
+ */
+@XmlRootElement(name = "delta")
+@XmlAccessorType(XmlAccessType.PROPERTY)
+public class CertificateDeltaDto {
+
+    private List<EntitlementCertificate> added;
+    private List<Long> removed;
+
+    public CertificateDeltaDto() {
+    }
+
+    public CertificateDeltaDto(List<EntitlementCertificate> added, List<Long> removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public List<EntitlementCertificate> getAdded() {
+        return added;
+    }
+
+    public void setAdded(List<EntitlementCertificate> added) {
+        this.added = added;
+    }
+
+    public List<Long> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<Long> removed) {
+        this.removed = removed;
+    }
+
+}
@@ -14,9 +14,16 @@
  */
 package org.candlepin.model;
 
+import org.candlepin.auth.interceptor.EnforceAccessControl;
 import org.candlepin.util.Util;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
+import com.google.inject.persist.Transactional;
+
+import java.util.Date;
 import java.util.List;
 
 
@@ -29,6 +36,23 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
         super(CertificateSerial.class);
     }
 
+    /**
+     * Persist a new serial without flushing it. Serial ids are generated in
+     * memory by {@link org.candlepin.util.SerialNumberGenerator}, so the id can be
+     * used to sign a certificate right away, and the insert goes out in the same
+     * JDBC batch as the certificate holding the serial.
+     *
+     * @param serial the new serial
+     * @return the serial, with its id assigned
+     */
+    @Override
+    @Transactional
+    @EnforceAccessControl
+    public CertificateSerial create(CertificateSerial serial) {
+        getEntityManager().persist(serial);
+        return serial;
+    }
+
     /**
      * @return list of certificate serials which are revoked but not yet collected
      * and put into crl
@@ -40,6 +64,17 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(Restrictions.eq("collected", false)).list();
     }
 
+    /**
+     * @return number of certificate serials which are revoked but not yet
+     * collected and put into crl
+     */
+    public int countTobeCollectedSerials() {
+        return (Integer) this.currentSession().createCriteria(CertificateSerial.class)
+            .add(Restrictions.eq("revoked", true))
+            .add(Restrictions.eq("collected", false))
+            .setProjection(Projections.rowCount()).uniqueResult();
+    }
+
     @SuppressWarnings("unchecked")
     public List<CertificateSerial> getExpiredSerials() {
         //TODO - Should date fields be truncated when checking expiration?
@@ -49,6 +84,20 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
             .add(Restrictions.eq("revoked", true)).list();
     }
 
+    /**
+     * @return true if there are revoked serials waiting to be added to the crl,
+     * or expired ones waiting to be removed from it.
+     */
+    public boolean hasCrlChanges() {
+        Integer count = (Integer) this.currentSession()
+            .createCriteria(CertificateSerial.class)
+            .add(Restrictions.eq("revoked", true))
+            .add(Restrictions.or(Restrictions.eq("collected", false),
+                Restrictions.le("expiration", Util.yesterday())))
+            .setProjection(Projections.rowCount()).uniqueResult();
+        return count != null && count > 0;
+    }
+
     /**
      * Delete expired serials.
      *
@@ -62,6 +111,40 @@ public class CertificateSerialCurator extends AbstractHibernateCurator<Certifica
                 .setBoolean("revoked", true).executeUpdate();
     }
 
+    /**
+     * Mark every revoked serial which is not yet in the crl as collected, without
+     * loading them.
+     *
+     * @return the number of serials collected.
+     */
+    public int collectRevokedSerials() {
+        return this.currentSession().createQuery(
+            "update CertificateSerial set collected = :collected, updated = :date" +
+                " where revoked = :revoked and collected = :uncollected")
+                .setBoolean("collected", true)
+                .setTimestamp("date", new Date())
+                .setBoolean("revoked", true)
+                .setBoolean("uncollected", false).executeUpdate();
+    }
+
+    /**
+     * Stream the revoked serials as [id, updated] rows rather than entities, so
+     * crls can be built without holding every serial in memory.
+     *
+     * @param collected true for the serials already in the crl, false for the
+     * ones still to be collected.
+     * @return forward only results, which the caller must close.
+     */
+    public ScrollableResults scrollRevokedSerials(boolean collected) {
+        return this.currentSession().createQuery(
+            "select id, updated from CertificateSerial" +
+                " where revoked = :revoked and collected = :collected")
+                .setBoolean("revoked", true)
+                .setBoolean("collected", collected)
+                .setFetchSize(1000)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
     @SuppressWarnings("unchecked")
     public List<CertificateSerial> listBySerialIds(String[] ids) {
         if (ids == null) {
@@ -48,7 +48,6 @@ import org.codehaus.jackson.map.annotate.JsonFilter;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CollectionOfElements;
 import org.hibernate.annotations.ForeignKey;
-import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 import org.hibernate.annotations.MapKeyManyToMany;
@@ -127,9 +126,15 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
     @Index(name = "cp_consumer_env_fk_idx")
     private Environment environment;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent " +
-        "where ent.consumer_id = id)")
-    private Long entitlementCount;
+    // Running total of this consumer's entitlement quantities, only ever written
+    // by EntitlementCurator adding to it.
+    @Column(nullable = false, updatable = false)
+    private Long entitlementCount = 0L;
+
+    // Bumped whenever one of this consumer's entitlement certificates is created
+    // or deleted, only ever written by EntitlementCertificateCurator.
+    @Column(nullable = false, updatable = false)
+    private Long certSerialsVersion = 0L;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "consumer", fetch = FetchType.LAZY)
     private Set<Entitlement> entitlements;
@@ -386,6 +391,11 @@ public class Consumer extends AbstractHibernateObject implements Linkable, Owned
         }
         return entitlementCount.longValue();
     }
+
+    // Not public, the stored total is only kept by the curators.
+    void setEntitlementCount(Long entitlementCount) {
+        this.entitlementCount = entitlementCount == null ? 0L : entitlementCount;
+    }
     /**
      * @return Returns the entitlements.
      */
@@ -113,11 +113,39 @@ public class ConsumerCurator extends AbstractHibernateCurator<Consumer> {
             ReplicationMode.EXCEPTION);
         this.currentSession().replicate(idCert, ReplicationMode.EXCEPTION);
 
+        // Entitlements are replicated first, count them up for the stored total:
+        consumer.setEntitlementCount(sumEntitlements(consumer));
+
         this.currentSession().replicate(consumer, ReplicationMode.EXCEPTION);
 
         return consumer;
     }
 
+    /**
+     * Reset the consumer's stored entitlement total from its entitlements. Used
+     * when entitlements are linked to the consumer without going through
+     * EntitlementCurator.create, as when an owner is migrated.
+     *
+     * @param consumer consumer whose total should be counted again.
+     */
+    @Transactional
+    public void recountEntitlements(Consumer consumer) {
+        Long count = sumEntitlements(consumer);
+        currentSession().createQuery("update Consumer set " +
+            "entitlementCount = :count where id = :id")
+            .setLong("count", count == null ? 0 : count)
+            .setString("id", consumer.getId())
+            .executeUpdate();
+        consumer.setEntitlementCount(count);
+    }
+
+    private Long sumEntitlements(Consumer consumer) {
+        return (Long) currentSession().createQuery("select sum(e.quantity) " +
+            "from Entitlement e where e.consumer.id = :id")
+            .setString("id", consumer.getId())
+            .uniqueResult();
+    }
+
     /**
      * Lookup consumer by its name
      *
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.model;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EntitledProducts
+ *
+ * The products a consumer has entitlements to, along with the dates each
+ * entitlement covers. Certificate generation uses it to decide which modifier
+ * content sets to include, instead of querying once per content set.
+ */
+public class EntitledProducts {
+
+    private String version;
+    private Map<String, List<Date[]>> spans = new HashMap<String, List<Date[]>>();
+
+    /**
+     * @param version version of the consumer's entitlements this was built from.
+     */
+    public EntitledProducts(String version) {
+        this.version = version;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Record an entitlement to a product.
+     *
+     * @param productId product the entitlement provides.
+     * @param startDate start of the entitlement.
+     * @param endDate end of the entitlement.
+     */
+    public void add(String productId, Date startDate, Date endDate) {
+        List<Date[]> productSpans = spans.get(productId);
+        if (productSpans == null) {
+            productSpans = new LinkedList<Date[]>();
+            spans.put(productId, productSpans);
+        }
+        productSpans.add(new Date[] {startDate, endDate});
+    }
+
+    /**
+     * Check for an entitlement providing any of the given products which overlaps
+     * at least partially with the given dates. Matches
+     * {@link EntitlementCurator#listProviding(Consumer, String, Date, Date)}.
+     *
+     * @param productIds products to look for.
+     * @param startDate start of the period to check.
+     * @param endDate end of the period to check.
+     * @return true if the consumer is entitled to one of the products.
+     */
+    public boolean providesAny(Collection<String> productIds, Date startDate,
+        Date endDate) {
+        for (String productId : productIds) {
+            List<Date[]> productSpans = spans.get(productId);
+            if (productSpans == null) {
+                continue;
+            }
+            for (Date[] span : productSpans) {
+                if (overlaps(span[0], span[1], startDate, endDate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean overlaps(Date entStart, Date entEnd, Date startDate,
+        Date endDate) {
+        return (!entStart.after(startDate) && !entEnd.before(startDate)) ||
+            (!entStart.after(endDate) && !entEnd.before(endDate)) ||
+            (!entStart.before(startDate) && !entEnd.after(endDate));
+    }
+}
@@ -14,9 +14,13 @@
  */
 package org.candlepin.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.candlepin.auth.interceptor.EnforceAccessControl;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
 import com.google.inject.Inject;
@@ -28,6 +32,9 @@ import com.google.inject.persist.Transactional;
 public class EntitlementCertificateCurator extends
     AbstractHibernateCurator<EntitlementCertificate> {
 
+    // Oracle rejects IN lists longer than this:
+    private static final int IN_LIST_MAX = 1000;
+
     @Inject
     public EntitlementCertificateCurator() {
         super(EntitlementCertificate.class);
@@ -53,11 +60,108 @@ public class EntitlementCertificateCurator extends
             .list();
     }
 
+    /**
+     * Looks the serials up at most IN_LIST_MAX at a time.
+     *
+     * @param c consumer to list certificates for.
+     * @param serials serial ids of the certificates to list.
+     * @return the consumer's entitlement certificates with the given serials.
+     */
+    @Transactional
+    @EnforceAccessControl
+    public List<EntitlementCertificate> listForConsumer(Consumer c,
+        Collection<Long> serials) {
+        List<EntitlementCertificate> certs = new LinkedList<EntitlementCertificate>();
+        List<Long> batch = new ArrayList<Long>(Math.min(serials.size(), IN_LIST_MAX));
+        for (Long serial : serials) {
+            batch.add(serial);
+            if (batch.size() == IN_LIST_MAX) {
+                certs.addAll(listForConsumerBatch(c, batch));
+                batch = new ArrayList<Long>(IN_LIST_MAX);
+            }
+        }
+        if (!batch.isEmpty()) {
+            certs.addAll(listForConsumerBatch(c, batch));
+        }
+        return certs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<EntitlementCertificate> listForConsumerBatch(Consumer c,
+        List<Long> serials) {
+        return currentSession().createCriteria(EntitlementCertificate.class)
+            .createAlias("entitlement", "ent")
+            .add(Restrictions.eq("ent.consumer", c))
+            .add(Restrictions.in("serial.id", serials))
+            .list();
+    }
+
+    /**
+     * Serial ids of a consumer's entitlement certificates, without loading the
+     * certificates themselves.
+     *
+     * @param c consumer to list serials for.
+     * @return serial ids of the consumer's entitlement certificates.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    @EnforceAccessControl
+    public List<Long> listSerialIdsForConsumer(Consumer c) {
+        return currentSession().createCriteria(EntitlementCertificate.class)
+            .createAlias("entitlement", "ent")
+            .add(Restrictions.eq("ent.consumer", c))
+            .setProjection(Projections.property("serial.id"))
+            .list();
+    }
+
+    /**
+     * @param c consumer to check.
+     * @return counter which changes whenever one of the consumer's entitlement
+     * certificates is created or deleted.
+     */
+    public long getSerialsVersion(Consumer c) {
+        Long version = (Long) currentSession().createQuery(
+            "select c.certSerialsVersion from Consumer c where c.id = :id")
+            .setString("id", c.getId())
+            .uniqueResult();
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Record that the set of certificates held by a consumer has changed.
+     *
+     * @param c consumer whose certificates changed.
+     */
+    @Transactional
+    public void bumpSerialsVersion(Consumer c) {
+        if (c == null) {
+            return;
+        }
+        currentSession().createQuery("update Consumer set " +
+            "certSerialsVersion = certSerialsVersion + 1 where id = :id")
+            .setString("id", c.getId())
+            .executeUpdate();
+    }
+
+    @Override
+    @Transactional
+    @EnforceAccessControl
+    public EntitlementCertificate create(EntitlementCertificate cert) {
+        EntitlementCertificate created = super.create(cert);
+        bumpSerialsVersion(consumerOf(created));
+        return created;
+    }
+
     @Transactional
     public void delete(EntitlementCertificate cert) {
         //make sure to delete it! else get ready to face
         //javax.persistence.EntityNotFoundException('deleted entity passed to persist')
         cert.getEntitlement().getCertificates().remove(cert);
         super.delete(cert);
+        bumpSerialsVersion(consumerOf(cert));
+    }
+
+    private Consumer consumerOf(EntitlementCertificate cert) {
+        return cert.getEntitlement() == null ? null : cert.getEntitlement().getConsumer();
     }
 }
@@ -14,18 +14,27 @@
  */
 package org.candlepin.model;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.candlepin.service.ProductServiceAdapter;
 import org.hibernate.Criteria;
 import org.hibernate.ReplicationMode;
+import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.xnap.commons.i18n.I18n;
 
 import com.google.inject.Inject;
@@ -36,17 +45,29 @@ import com.google.inject.persist.Transactional;
  */
 public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
     private static Logger log = Logger.getLogger(EntitlementCurator.class);
+    private static final int ENTITLED_PRODUCTS_MAX = 100;
     private ProductServiceAdapter productAdapter;
     private I18n i18n;
+    private EntitlementCertificateCurator entCertCurator;
+    private Map<String, EntitledProducts> entitledProducts =
+        Collections.synchronizedMap(new LinkedHashMap<String, EntitledProducts>() {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, EntitledProducts> eldest) {
+                return size() > ENTITLED_PRODUCTS_MAX;
+            }
+        });
 
     /**
      * default ctor
      */
     @Inject
-    public EntitlementCurator(ProductServiceAdapter productAdapter, I18n i18n) {
+    public EntitlementCurator(ProductServiceAdapter productAdapter, I18n i18n,
+        EntitlementCertificateCurator entCertCurator) {
         super(Entitlement.class);
         this.productAdapter = productAdapter;
         this.i18n = i18n;
+        this.entCertCurator = entCertCurator;
     }
 
     // TODO: handles addition of new entitlements only atm!
@@ -68,18 +89,205 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         return toReturn;
     }
 
+    @Override
+    @Transactional
+    public Entitlement create(Entitlement entity) {
+        Entitlement created = super.create(entity);
+        adjustQuantity(created, quantityOf(created));
+        // Certificates saved along with a new entitlement bypass the cert curator:
+        if (!created.getCertificates().isEmpty()) {
+            entCertCurator.bumpSerialsVersion(created.getConsumer());
+        }
+        return created;
+    }
+
+    /**
+     * Add to the consumed and exported totals of the entitlement's pool, and the
+     * entitlement total of its consumer. Called when entitlements are created or
+     * deleted, and when an entitlement's quantity changes.
+     *
+     * @param ent entitlement whose quantity changed.
+     * @param change change in quantity, negative for a decrease.
+     */
+    @Transactional
+    public void adjustQuantity(Entitlement ent, long change) {
+        if (change == 0) {
+            return;
+        }
+
+        if (ent.getPool() != null) {
+            Consumer consumer = ent.getConsumer();
+            boolean manifest = consumer != null && consumer.getType() != null &&
+                consumer.getType().isManifest();
+            currentSession().createQuery("update Pool set " +
+                "consumed = consumed + :consumed, exported = exported + :exported " +
+                "where id = :id")
+                .setLong("consumed", change)
+                .setLong("exported", manifest ? change : 0)
+                .setString("id", ent.getPool().getId())
+                .executeUpdate();
+        }
+
+        if (ent.getConsumer() != null) {
+            currentSession().createQuery("update Consumer set " +
+                "entitlementCount = entitlementCount + :change where id = :id")
+                .setLong("change", change)
+                .setString("id", ent.getConsumer().getId())
+                .executeUpdate();
+        }
+    }
+
+    private long quantityOf(Entitlement ent) {
+        return ent.getQuantity() == null ? 0 : ent.getQuantity();
+    }
+
     public List<Entitlement> listByConsumer(Consumer consumer) {
         DetachedCriteria query = DetachedCriteria.forClass(Entitlement.class)
             .add(Restrictions.eq("consumer", consumer));
         return listByCriteria(query);
     }
 
+    /**
+     * @param consumer consumer to check.
+     * @return the consumer's entitlements whose certificates are marked dirty.
+     */
+    public List<Entitlement> listDirtyByConsumer(Consumer consumer) {
+        DetachedCriteria query = DetachedCriteria.forClass(Entitlement.class)
+            .add(Restrictions.eq("consumer", consumer))
+            .add(Restrictions.eq("dirty", true));
+        return listByCriteria(query);
+    }
+
+    /**
+     * Cheap summary of a consumer's entitlements which changes whenever an
+     * entitlement, or the pool it came from, is added, removed or updated.
+     *
+     * @param consumer consumer to check.
+     * @return version string for the consumer's current entitlements.
+     */
+    public String getEntitlementVersion(Consumer consumer) {
+        Object[] row = (Object[]) currentSession().createCriteria(Entitlement.class)
+            .createAlias("pool", "p", CriteriaSpecification.LEFT_JOIN)
+            .add(Restrictions.eq("consumer", consumer))
+            .setProjection(Projections.projectionList()
+                .add(Projections.rowCount())
+                .add(Projections.max("updated"))
+                .add(Projections.max("p.updated")))
+            .uniqueResult();
+        return row[0] + ":" + dateVersion(row[1]) + ":" + dateVersion(row[2]);
+    }
+
+    private long dateVersion(Object date) {
+        return date == null ? 0 : ((Date) date).getTime();
+    }
+
     public List<Entitlement> listByEnvironment(Environment environment) {
         Criteria criteria = currentSession().createCriteria(Entitlement.class)
             .createCriteria("consumer").add(Restrictions.eq("environment", environment));
         return criteria.list();
     }
 
+    /**
+     * Page through the ids of entitlements in pools providing a product, either as
+     * the pool's product or one of its provided products, in id order.
+     *
+     * @param productId product to list entitlement ids for.
+     * @param activeOn only include entitlements in pools active on this date.
+     * @param afterId only list ids after this one, null to start from the first.
+     * @param max maximum number of ids to return.
+     * @return the next page of entitlement ids.
+     */
+    public List<String> listIdsByProduct(String productId, Date activeOn,
+        String afterId, int max) {
+        DetachedCriteria provided = DetachedCriteria.forClass(ProvidedProduct.class)
+            .add(Restrictions.eq("productId", productId))
+            .setProjection(Projections.property("pool.id"));
+        Criteria criteria = currentSession().createCriteria(Entitlement.class)
+            .createAlias("pool", "p")
+            .add(Restrictions.le("p.startDate", activeOn))
+            .add(Restrictions.ge("p.endDate", activeOn))
+            .add(Restrictions.or(Restrictions.eq("p.productId", productId),
+                Subqueries.propertyIn("p.id", provided)));
+        return listIdsAfter(criteria, afterId, max);
+    }
+
+    /**
+     * Page through the ids of entitlements held by consumers in an environment, in
+     * id order.
+     *
+     * @param environment environment to list entitlement ids for.
+     * @param afterId only list ids after this one, null to start from the first.
+     * @param max maximum number of ids to return.
+     * @return the next page of entitlement ids.
+     */
+    public List<String> listIdsByEnvironment(Environment environment, String afterId,
+        int max) {
+        Criteria criteria = currentSession().createCriteria(Entitlement.class)
+            .createAlias("consumer", "c")
+            .add(Restrictions.eq("c.environment", environment));
+        return listIdsAfter(criteria, afterId, max);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> listIdsAfter(Criteria criteria, String afterId, int max) {
+        if (afterId != null) {
+            criteria.add(Restrictions.gt("id", afterId));
+        }
+        return criteria.setProjection(Projections.id())
+            .addOrder(Order.asc("id"))
+            .setMaxResults(max)
+            .list();
+    }
+
+    /**
+     * List the ids of entitlements whose certificates are marked dirty. Entitlements
+     * of consumers which checked in since the given date come first, most recent
+     * check in first, followed by the rest in id order.
+     *
+     * @param activeSince consumers checked in since this date are listed first.
+     * @param max maximum number of ids to return.
+     * @return ids of dirty entitlements.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> listDirtyIds(Date activeSince, int max) {
+        List<String> ids = currentSession().createCriteria(Entitlement.class)
+            .createAlias("consumer", "c")
+            .add(Restrictions.eq("dirty", true))
+            .add(Restrictions.ge("c.lastCheckin", activeSince))
+            .setProjection(Projections.id())
+            .addOrder(Order.desc("c.lastCheckin"))
+            .addOrder(Order.asc("id"))
+            .setMaxResults(max)
+            .list();
+        if (ids.size() < max) {
+            ids.addAll(currentSession().createCriteria(Entitlement.class)
+                .createAlias("consumer", "c")
+                .add(Restrictions.eq("dirty", true))
+                .add(Restrictions.or(Restrictions.isNull("c.lastCheckin"),
+                    Restrictions.lt("c.lastCheckin", activeSince)))
+                .setProjection(Projections.id())
+                .addOrder(Order.asc("id"))
+                .setMaxResults(max - ids.size())
+                .list());
+        }
+        return ids;
+    }
+
+    /**
+     * @param ids entitlement ids to look up.
+     * @return the entitlements with the given ids.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Entitlement> listAllByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new LinkedList<Entitlement>();
+        }
+        return currentSession().createCriteria(Entitlement.class)
+            .add(Restrictions.in("id", ids))
+            .addOrder(Order.asc("id"))
+            .list();
+    }
+
     /**
      * List entitlements for a consumer which are valid for a specific date.
      *
@@ -175,25 +383,29 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
     }
 
     public Set<Entitlement> listModifying(Entitlement entitlement) {
-        Set<Entitlement> modifying = new HashSet<Entitlement>();
-
-        Consumer consumer = entitlement.getConsumer();
-        Date startDate = entitlement.getStartDate();
-        Date endDate = entitlement.getEndDate();
-
-        modifying.addAll(listModifying(consumer, entitlement.getProductId(),
-                startDate, endDate));
-
+        Set<String> productIds = new HashSet<String>();
+        productIds.add(entitlement.getProductId());
         for (ProvidedProduct product : entitlement.getPool().getProvidedProducts()) {
-            modifying.addAll(listModifying(consumer, product.getProductId(),
-                    startDate, endDate));
+            productIds.add(product.getProductId());
         }
 
-        return modifying;
+        return new HashSet<Entitlement>(listModifying(entitlement.getConsumer(),
+            productIds, entitlement.getStartDate(), entitlement.getEndDate()));
     }
 
     public List<Entitlement> listModifying(Consumer consumer, String productId,
         Date startDate, Date endDate) {
+        Set<String> productIds = new HashSet<String>();
+        productIds.add(productId);
+        return listModifying(consumer, productIds, startDate, endDate);
+    }
+
+    /*
+     * Overlapping entitlements are queried once for all of the products, and each
+     * pool product is looked up once to find the products its content modifies.
+     */
+    private List<Entitlement> listModifying(Consumer consumer,
+        Set<String> productIds, Date startDate, Date endDate) {
 
         /*
          * Essentially the opposite of the above query which searches for entitlement
@@ -217,8 +429,9 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
                         Restrictions.ge("endDate", endDate)))));
         List<Entitlement> finalResults = new LinkedList<Entitlement>();
         List<Entitlement> entsWithOverlap = criteria.list();
+        Map<String, Set<String>> modifiedByProduct = new HashMap<String, Set<String>>();
         for (Entitlement existingEnt : entsWithOverlap) {
-            if (modifies(existingEnt, productId)) {
+            if (modifiesAny(existingEnt, productIds, modifiedByProduct)) {
                 finalResults.add(existingEnt);
             }
         }
@@ -235,6 +448,12 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
      * @return true if entitlement modifies the given product
      */
     public boolean modifies(Entitlement ent, String modifiedProductId) {
+        return modifiesAny(ent, Collections.singleton(modifiedProductId),
+            new HashMap<String, Set<String>>());
+    }
+
+    private boolean modifiesAny(Entitlement ent, Set<String> modifiedProductIds,
+        Map<String, Set<String>> modifiedByProduct) {
         Set<String> prodIdsToCheck = new HashSet<String>();
         prodIdsToCheck.add(ent.getPool().getProductId());
         for (ProvidedProduct pp : ent.getPool().getProvidedProducts()) {
@@ -242,19 +461,72 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         }
 
         for (String prodId : prodIdsToCheck) {
+            for (String modified : modifiedBy(prodId, modifiedByProduct)) {
+                if (modifiedProductIds.contains(modified)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Products modified by the content of the given product, looked up at most once
+     * per product.
+     */
+    private Set<String> modifiedBy(String prodId,
+        Map<String, Set<String>> modifiedByProduct) {
+        Set<String> modified = modifiedByProduct.get(prodId);
+        if (modified == null) {
             Product p = productAdapter.getProductById(prodId);
             if (null == p) {
                 String msg = i18n.tr("No product found for product ID {0}", prodId);
                 log.error("No product found for product id " + prodId);
                 throw new CuratorException(msg);
             }
-            else {
-                if (p.modifies(modifiedProductId)) {
-                    return true;
-                }
+            modified = new HashSet<String>();
+            for (ProductContent pc : p.getProductContent()) {
+                modified.addAll(pc.getContent().getModifiedProductIds());
             }
+            modifiedByProduct.put(prodId, modified);
         }
-        return false;
+        return modified;
+    }
+
+    /**
+     * The products a consumer is entitled to, and the dates each entitlement covers,
+     * read with a single query. The result is reused for as long as the consumer's
+     * entitlements stay the same, so generating a batch of certificates for one
+     * consumer reads it once.
+     *
+     * @param consumer consumer to look up.
+     * @return the consumer's entitled products.
+     */
+    @SuppressWarnings("unchecked")
+    public EntitledProducts getEntitledProducts(Consumer consumer) {
+        String version = getEntitlementVersion(consumer);
+        EntitledProducts entitled = entitledProducts.get(consumer.getId());
+        if (entitled != null && entitled.getVersion().equals(version)) {
+            return entitled;
+        }
+
+        entitled = new EntitledProducts(version);
+        List<Object[]> rows = currentSession().createQuery(
+            "select e.startDate, e.endDate, p.productId, pp.productId " +
+            "from Entitlement e join e.pool p left join p.providedProducts pp " +
+            "where e.consumer = :consumer")
+            .setParameter("consumer", consumer)
+            .list();
+        for (Object[] row : rows) {
+            Date startDate = (Date) row[0];
+            Date endDate = (Date) row[1];
+            entitled.add((String) row[2], startDate, endDate);
+            if (row[3] != null) {
+                entitled.add((String) row[3], startDate, endDate);
+            }
+        }
+        entitledProducts.put(consumer.getId(), entitled);
+        return entitled;
     }
 
 
@@ -285,7 +557,11 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
         for (EntitlementCertificate cert : toDelete.getCertificates()) {
             currentSession().delete(cert);
         }
+        if (!toDelete.getCertificates().isEmpty()) {
+            entCertCurator.bumpSerialsVersion(toDelete.getConsumer());
+        }
         currentSession().delete(toDelete);
+        adjustQuantity(toDelete, -quantityOf(toDelete));
     }
 
     @Transactional
@@ -296,6 +572,14 @@ public class EntitlementCurator extends AbstractHibernateCurator<Entitlement> {
             .uniqueResult();
     }
 
+    /**
+     * Replicated pools already carry their consumed and exported totals, and
+     * consumer totals are counted once the entitlements are linked to their
+     * consumers, so no totals are adjusted here.
+     *
+     * @param ent entitlement to replicate.
+     * @return the replicated entitlement.
+     */
     @Transactional
     public Entitlement replicate(Entitlement ent) {
         for (EntitlementCertificate ec : ent.getCertificates()) {
@@ -23,6 +23,8 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 
+import com.google.inject.persist.Transactional;
+
 /**
  * AttributeCurator
  */
@@ -32,6 +34,27 @@ public class EventCurator extends AbstractHibernateCurator<Event> {
         super(Event.class);
     }
 
+    /**
+     * Inserts the given events in one transaction, using JDBC batching.
+     *
+     * @param events events to be created.
+     */
+    @Transactional
+    @EnforceAccessControl
+    public void createAll(List<Event> events) {
+        try {
+            saveOrUpdateAll(events);
+            flush();
+        }
+        finally {
+            // Events are never read back through this session, and the listener
+            // thread calling us keeps it open, so don't let them pile up in it.
+            // After a failure this also keeps the failed batch from being flushed
+            // again along with the next insert.
+            currentSession().clear();
+        }
+    }
+
     /**
      * Query events, most recent first.
      *
@@ -21,7 +21,6 @@ import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.annotate.JsonFilter;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.ForeignKey;
-import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Index;
 import org.hibernate.annotations.LazyCollection;
@@ -142,14 +141,14 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
     private String accountNumber;
     private String orderNumber;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent " +
-             "where ent.pool_id = id)")
-    private Long consumed;
+    // Running totals of the entitlement quantities consumed from this pool, and
+    // exported to manifest consumers. Only ever written by EntitlementCurator
+    // adding to them, so merging a pool can not overwrite them.
+    @Column(nullable = false, updatable = false)
+    private Long consumed = 0L;
 
-    @Formula("(select sum(ent.quantity) from cp_entitlement ent, cp_consumer cons, " +
-        "cp_consumer_type ctype where ent.pool_id = id and ent.consumer_id = cons.id " +
-        "and cons.type_id = ctype.id and ctype.manifest = 'Y')")
-    private Long exported;
+    @Column(nullable = false, updatable = false)
+    private Long exported = 0L;
 
     // TODO: May not still be needed, iirc a temporary hack for client.
     private String productName;
@@ -246,7 +245,7 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param consumed set the activate uses.
      */
     public void setConsumed(Long consumed) {
-        // Even tho this is calculated at DB fetch time, we allow
+        // The stored total is kept by EntitlementCurator, we allow
         // setting it for changes in a single txn
         this.consumed = consumed;
     }
@@ -262,7 +261,7 @@ public class Pool extends AbstractHibernateObject implements Persisted, Owned {
      * @param exported set the activate uses.
      */
     public void setExported(Long exported) {
-        // Even tho this is calculated at DB fetch time, we allow
+        // The stored total is kept by EntitlementCurator, we allow
         // setting it for changes in a single txn
         this.exported = exported;
     }
@@ -16,10 +16,12 @@ package org.candlepin.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -40,6 +42,7 @@ import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.hibernate.impl.FilterImpl;
 
 import com.google.inject.Inject;
@@ -214,6 +217,14 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             crit.add(Restrictions.le("startDate", activeOn));
             crit.add(Restrictions.ge("endDate", activeOn));
         }
+        if (productId != null) {
+            // Either a direct match, or a pool whose product provides the one we want:
+            DetachedCriteria providing = DetachedCriteria.forClass(ProvidedProduct.class)
+                .add(Restrictions.eq("productId", productId))
+                .setProjection(Projections.property("pool.id"));
+            crit.add(Restrictions.or(Restrictions.eq("productId", productId),
+                Subqueries.propertyIn("id", providing)));
+        }
 
         // FIXME: sort by enddate?
         List<Pool> results = crit.list();
@@ -231,35 +242,17 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
             log.debug("active pools for owner: " + results.size());
         }
 
-        // crit.add(Restrictions.or(Restrictions.eq("productId", productId),
-        // Restrictions.in("", results)))
-        // Filter for product we want:
-        if (productId != null) {
-
-            List<Pool> newResults = new LinkedList<Pool>();
-            for (Pool p : results) {
-                // Provides will check if the products are a direct match, or if the
-                // desired product is provided by the product this pool is for:
-                if (p.provides(productId)) {
-                    newResults.add(p);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pool provides " + productId + ": " + p);
-                    }
-                }
-            }
-            results = newResults;
-        }
-
         // If querying for pools available to a specific consumer, we need
         // to do a rules pass to verify the entitlement will be granted.
         // Note that something could change between the time we list a pool as
         // available, and the consumer requests the actual entitlement, and the
         // request still could fail.
         if (c != null) {
+            Map<Pool, ValidationResult> validations = enforcer.preEntitlement(
+                c, results, CallerType.LIST_POOLS);
             List<Pool> newResults = new LinkedList<Pool>();
             for (Pool p : results) {
-                ValidationResult result = enforcer.preEntitlement(
-                    c, p, 1, CallerType.LIST_POOLS);
+                ValidationResult result = validations.get(p);
                 if (result.isSuccessful() && (!result.hasWarnings() || includeWarnings)) {
                     newResults.add(p);
                 }
@@ -400,6 +393,66 @@ public class PoolCurator extends AbstractHibernateCurator<Pool> {
         return super.create(entity);
     }
 
+    /**
+     * Filter the given pools down to those providing at least one of the
+     * products, either as the pool's product or one of its provided products.
+     * Saved pools are checked against the database rather than their loaded
+     * provided products, so changes made by other nodes are always seen.
+     *
+     * @param owner owner of the pools.
+     * @param pools pools to filter.
+     * @param productIds product IDs to look for.
+     * @return pools providing any of the products, in their original order.
+     */
+    public List<Pool> filterProviding(Owner owner, Collection<Pool> pools,
+        String[] productIds) {
+        Set<String> poolIds = null;
+        if (owner != null && owner.getId() != null) {
+            poolIds = listIdsProviding(owner, productIds);
+        }
+
+        List<Pool> providing = new LinkedList<Pool>();
+        for (Pool pool : pools) {
+            if (poolIds == null || pool.getId() == null ?
+                providesAny(pool, productIds) : poolIds.contains(pool.getId())) {
+                providing.add(pool);
+            }
+        }
+        return providing;
+    }
+
+    /**
+     * @param owner owner of the pools.
+     * @param productIds product IDs to look for.
+     * @return IDs of the owner's pools providing any of the products.
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public Set<String> listIdsProviding(Owner owner, String... productIds) {
+        if (productIds.length == 0) {
+            return new HashSet<String>();
+        }
+        DetachedCriteria provided = DetachedCriteria.forClass(ProvidedProduct.class)
+            .add(Restrictions.in("productId", productIds))
+            .setProjection(Projections.property("pool.id"));
+        List<String> ids = currentSession().createCriteria(Pool.class)
+            .add(Restrictions.eq("owner", owner))
+            .add(Restrictions.or(Restrictions.in("productId", productIds),
+                Subqueries.propertyIn("id", provided)))
+            .setProjection(Projections.id())
+            .list();
+        return new HashSet<String>(ids);
+    }
+
+    private static boolean providesAny(Pool pool, String[] productIds) {
+        for (String productId : productIds) {
+            if (pool.provides(productId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static final String CONSUMER_FILTER = "Entitlement_CONSUMER_FILTER";
 
     public int getNoOfDependentEntitlements(String entitlementId) {
@@ -49,6 +49,7 @@ public class ProvidedProduct extends AbstractHibernateObject {
     private String id;
 
     @Column(name = "product_id", nullable = false)
+    @Index(name = "cp_pool_products_product_idx")
     private String productId;
 
     @Column(name = "product_name")
@@ -19,17 +19,14 @@ import com.google.inject.Inject;
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
-import org.candlepin.util.CrlFileUtil;
+import org.candlepin.controller.CrlCache;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 
 /**
  * CertificateRevocationListTask.
@@ -39,23 +36,20 @@ public class CertificateRevocationListTask implements Job {
     public static final String DEFAULT_SCHEDULE = "0 0 12 * * ?";
 
     private Config config;
-    private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
+    private CrlCache crlCache;
 
     private static Logger log = Logger.getLogger(CertificateRevocationListTask.class);
 
     /**
      * Instantiates a new certificate revocation list task.
      *
-     * @param crlFileUtil file util
      * @param conf the conf
+     * @param crlCache cached CRL to regenerate
      */
     @Inject
-    public CertificateRevocationListTask(Config conf,
-        CrlFileUtil crlFileUtil, CrlGenerator crlGenerator) {
+    public CertificateRevocationListTask(Config conf, CrlCache crlCache) {
         this.config = conf;
-        this.crlFileUtil = crlFileUtil;
-        this.crlGenerator = crlGenerator;
+        this.crlCache = crlCache;
     }
 
     @Override
@@ -68,10 +62,7 @@ public class CertificateRevocationListTask implements Job {
                 ConfigProperties.CRL_FILE_PATH, false);
         }
         try {
-            File crlFile = new File(filePath);
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            crlFileUtil.writeCRLFile(crlFile, crl);
+            crlCache.refresh();
         }
         catch (CRLException e) {
             log.error("CRLException:", e);
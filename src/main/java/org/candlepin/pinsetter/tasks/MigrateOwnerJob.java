@@ -224,6 +224,9 @@ public class MigrateOwnerJob implements Job {
                 realent.setConsumer(c);
                 entCurator.merge(realent);
             }
+
+            // The consumer was replicated before its entitlements were linked:
+            consumerCurator.recountEntitlements(c);
         }
 
         sink.emitOwnerMigrated(owner);
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import org.apache.log4j.Logger;
+import org.candlepin.controller.EntitlementCertRegenerator;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import com.google.inject.Inject;
+
+/**
+ * RegenDirtyEntitlementCertsTask
+ *
+ * Regenerates the certificates of entitlements marked dirty in the background.
+ * Clients fetching their certificates still regenerate any dirty entitlements
+ * this task has not reached yet.
+ */
+@DisallowConcurrentExecution
+public class RegenDirtyEntitlementCertsTask implements Job {
+
+    public static final String DEFAULT_SCHEDULE = "0 * * * * ?"; // every minute
+
+    private static Logger log = Logger.getLogger(RegenDirtyEntitlementCertsTask.class);
+
+    private EntitlementCertRegenerator regenerator;
+
+    @Inject
+    public RegenDirtyEntitlementCertsTask(EntitlementCertRegenerator regenerator) {
+        this.regenerator = regenerator;
+    }
+
+    @Override
+    public void execute(JobExecutionContext ctx) throws JobExecutionException {
+        int count = regenerator.regenerateDirty();
+        if (count > 0) {
+            log.info("Regenerated " + count + " dirty entitlement certificates.");
+        }
+        ctx.setResult("Regenerated " + count + " dirty entitlement certificates");
+    }
+}
@@ -21,7 +21,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import com.google.inject.Inject;
-import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.EntitlementCertRegenerator;
 import org.candlepin.model.Environment;
 
 /**
@@ -32,14 +32,14 @@ import org.candlepin.model.Environment;
  */
 public class RegenEnvEntitlementCertsJob implements Job {
 
-    private PoolManager poolManager;
+    private EntitlementCertRegenerator regenerator;
     public static final String ENV = "env_id";
     public static final String CONTENT = "content_ids";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenEnvEntitlementCertsJob(PoolManager poolManager) {
-        this.poolManager = poolManager;
+    public RegenEnvEntitlementCertsJob(EntitlementCertRegenerator regenerator) {
+        this.regenerator = regenerator;
     }
 
     @Override
@@ -50,6 +50,9 @@ public class RegenEnvEntitlementCertsJob implements Job {
             arg0.getJobDetail().getJobDataMap().get(CONTENT);
         Boolean lazy = arg0.getMergedJobDataMap().getBoolean(LAZY_REGEN);
 
-        this.poolManager.regenerateCertificatesOf(env, contentIds, lazy);
+        int count = this.regenerator.regenerateEnvironment(env, contentIds, lazy,
+            arg0.getJobDetail().getKey().getName());
+        arg0.setResult("Regenerated " + count +
+            " entitlement certificates in environment " + env.getId());
     }
 }
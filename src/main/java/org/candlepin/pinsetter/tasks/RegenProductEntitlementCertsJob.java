@@ -19,20 +19,20 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
 import com.google.inject.Inject;
-import org.candlepin.controller.PoolManager;
+import org.candlepin.controller.EntitlementCertRegenerator;
 
 /**
  * The Class RegenEntitlementCertsJob.
  */
 public class RegenProductEntitlementCertsJob implements Job {
 
-    private PoolManager poolManager;
+    private EntitlementCertRegenerator regenerator;
     public static final String PROD_ID = "product_id";
     public static final String LAZY_REGEN = "lazy_regen";
 
     @Inject
-    public RegenProductEntitlementCertsJob(PoolManager poolManager) {
-        this.poolManager = poolManager;
+    public RegenProductEntitlementCertsJob(EntitlementCertRegenerator regenerator) {
+        this.regenerator = regenerator;
     }
 
     @Override
@@ -40,6 +40,9 @@ public class RegenProductEntitlementCertsJob implements Job {
         String prodId = arg0.getJobDetail().getJobDataMap().getString(
             PROD_ID);
         boolean lazy = arg0.getJobDetail().getJobDataMap().getBoolean(LAZY_REGEN);
-        this.poolManager.regenerateCertificatesOf(prodId, lazy);
+        int count = this.regenerator.regenerateProduct(prodId, lazy,
+            arg0.getJobDetail().getKey().getName());
+        arg0.setResult("Regenerated " + count +
+            " entitlement certificates for product " + prodId);
     }
 }
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.log4j.Logger;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * KeyPairPool
+ *
+ * Keeps a number of RSA key pairs generated ahead of time by low priority
+ * background threads, so consumer registration does not have to wait on key
+ * generation. When the pool has run dry, key pairs are generated inline.
+ */
+@Singleton
+public class KeyPairPool {
+    private static Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private PKIUtility pki;
+    private BlockingQueue<KeyPair> pairs;
+    private ExecutorService refillers;
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public KeyPairPool(PKIUtility pki, Config config) {
+        this.pki = pki;
+
+        int size = config.getInt(ConfigProperties.KEYPAIR_POOL_SIZE);
+        int threads = config.getInt(ConfigProperties.KEYPAIR_POOL_THREADS);
+        if (size > 0 && threads > 0) {
+            pairs = new ArrayBlockingQueue<KeyPair>(size);
+            startRefillers(threads);
+        }
+    }
+
+    /**
+     * @return a key pair from the pool, or a newly generated one if the pool is
+     * empty or disabled.
+     * @throws NoSuchAlgorithmException if a key pair has to be generated and RSA is
+     * not available.
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair pair = pairs == null ? null : pairs.poll();
+        if (pair != null) {
+            hits.incrementAndGet();
+            return pair;
+        }
+
+        if (pairs != null) {
+            misses.incrementAndGet();
+            log.debug("Key pair pool is empty, generating a key pair inline.");
+        }
+        return pki.generateNewKeyPair();
+    }
+
+    /**
+     * @return number of key pairs ready to be handed out.
+     */
+    public int getDepth() {
+        return pairs == null ? 0 : pairs.size();
+    }
+
+    /**
+     * @return number of key pairs taken from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of key pairs generated inline because the pool was empty.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Stops the background refill threads, if any were started.
+     */
+    public void shutdown() {
+        if (refillers != null) {
+            refillers.shutdownNow();
+        }
+    }
+
+    private void startRefillers(int threads) {
+        refillers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "keypair-pool-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+
+        for (int i = 0; i < threads; i++) {
+            refillers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    refill();
+                }
+            });
+        }
+    }
+
+    void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // blocks while the pool is full
+                pairs.put(pki.generateNewKeyPair());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (NoSuchAlgorithmException e) {
+            log.error("Unable to pre-generate key pairs", e);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -76,6 +77,28 @@ public abstract class PKIUtility {
     public abstract X509CRL createX509CRL(List<X509CRLEntryWrapper> entries,
         BigInteger crlNumber);
 
+    /**
+     * Generate crl from entries read one at a time, so they never all have to
+     * be held in memory.
+     *
+     * @param entries the entries
+     * @param crlNumber number of the crl
+     * @return the x509 crl
+     */
+    public abstract X509CRL createX509CRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber);
+
+    /**
+     * Generate a delta crl.
+     *
+     * @param entries entries revoked since the base crl was issued
+     * @param crlNumber number of the delta crl
+     * @param baseCrlNumber number of the complete crl this delta applies to
+     * @return the x509 delta crl
+     */
+    public abstract X509CRL createX509DeltaCRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber);
+
     public KeyPair decodeKeys(byte[] privKeyBits, byte[] pubKeyBits)
         throws InvalidKeySpecException, NoSuchAlgorithmException {
 
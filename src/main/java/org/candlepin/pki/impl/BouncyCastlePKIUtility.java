@@ -52,6 +52,7 @@ import java.security.KeyPair;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -170,6 +171,23 @@ public class BouncyCastlePKIUtility extends PKIUtility {
 
     @Override
     public X509CRL createX509CRL(List<X509CRLEntryWrapper> entries, BigInteger crlNumber) {
+        return createCRL(entries.iterator(), crlNumber, null);
+    }
+
+    @Override
+    public X509CRL createX509CRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber) {
+        return createCRL(entries, crlNumber, null);
+    }
+
+    @Override
+    public X509CRL createX509DeltaCRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber) {
+        return createCRL(entries, crlNumber, baseCrlNumber);
+    }
+
+    private X509CRL createCRL(Iterator<X509CRLEntryWrapper> entries,
+        BigInteger crlNumber, BigInteger baseCrlNumber) {
 
         try {
             X509Certificate caCert = reader.getCACert();
@@ -179,7 +197,8 @@ public class BouncyCastlePKIUtility extends PKIUtility {
             generator.setNextUpdate(Util.tomorrow());
             generator.setSignatureAlgorithm(SIGNATURE_ALGO);
             //add all the crl entries.
-            for (X509CRLEntryWrapper entry : entries) {
+            while (entries.hasNext()) {
+                X509CRLEntryWrapper entry = entries.next();
                 generator.addCRLEntry(entry.getSerialNumber(), entry.getRevocationDate(),
                     CRLReason.privilegeWithdrawn);
             }
@@ -188,6 +207,11 @@ public class BouncyCastlePKIUtility extends PKIUtility {
                 false, new AuthorityKeyIdentifierStructure(caCert));
             generator.addExtension(X509Extensions.CRLNumber, false,
                 new CRLNumber(crlNumber));
+            if (baseCrlNumber != null) {
+                // RFC 5280 requires the delta indicator to be critical
+                generator.addExtension(X509Extensions.DeltaCRLIndicator, true,
+                    new CRLNumber(baseCrlNumber));
+            }
             return generator.generate(reader.getCaKey());
         }
         catch (Exception e) {
@@ -23,6 +23,8 @@ import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
 import org.mozilla.javascript.Wrapper;
 
+import java.util.Date;
+
 /**
  * JsRunner - Responsible for running the javascript rules methods in all namespaces.
  * Used by the various "Rules" classes.
@@ -33,11 +35,25 @@ public class JsRunner {
     private Object rulesNameSpace;
     private String namespace;
     private Scriptable scope;
+    private Date rulesUpdated;
 
     private boolean initialized = false;
 
     public JsRunner(Scriptable scope) {
+        this(scope, null);
+    }
+
+    public JsRunner(Scriptable scope, Date rulesUpdated) {
         this.scope = scope;
+        this.rulesUpdated = rulesUpdated;
+    }
+
+    /**
+     * @return timestamp of the rules this runner was created with, or null if
+     * not known.
+     */
+    public Date getRulesUpdated() {
+        return rulesUpdated;
     }
 
     /**
@@ -15,13 +15,25 @@
 package org.candlepin.policy.js;
 
 import java.util.Date;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import org.apache.log4j.Logger;
 import org.candlepin.auth.Principal;
 import org.candlepin.auth.SystemPrincipal;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.RulesCurator;
+import org.hibernate.Session;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
@@ -32,22 +44,35 @@ import org.mozilla.javascript.ScriptableObject;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.persist.UnitOfWork;
 
 /**
  * Reads/compiles our javascript rules and the standard js objects only
  * once across the jvm lifetime (and whenever the rules require a recompile), and creates
  * lightweight execution scopes per thread/request.
+ *
+ * The compiled rules are cached along with the timestamp they were compiled from.
+ * Handing out a runner never touches the database: the cache is only re-checked
+ * once after {@link #invalidate()} has been called by one of the rules
+ * upload/delete paths (after the transaction storing the rules has committed),
+ * or periodically by the optional background poller (see
+ * {@link ConfigProperties#RULES_REFRESH_INTERVAL}) for deployments where
+ * another node may have changed the rules.
  */
 public class JsRunnerProvider implements Provider<JsRunner> {
     private static Logger log = Logger.getLogger(JsRunnerProvider.class);
 
     private RulesCurator rulesCurator;
+    private UnitOfWork unitOfWork;
+    private Provider<EntityManager> entityManager;
+    private ScheduledExecutorService poller;
 
-    private Script script;
-    private Scriptable scope;
-    private Date updated;
-    // Use this lock to access script, scope and updated
-    private ReadWriteLock scriptLock = new ReentrantReadWriteLock();
+    private volatile Scriptable scope;
+    private volatile Date updated;
+    // Set once rules changes are committed, cleared by the next successful re-check
+    private final AtomicBoolean stale = new AtomicBoolean();
+    // Use this lock to recompile script, scope and updated
+    private Lock compileLock = new ReentrantLock();
 
     /**
      * DynamicScopeContextFactory - replace the standard rhino context factory with one that
@@ -69,7 +94,6 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         ContextFactory.initGlobal(new DynamicScopeContextFactory());
     }
 
-    @Inject
     public JsRunnerProvider(RulesCurator rulesCurator) {
         this.rulesCurator = rulesCurator;
 
@@ -78,6 +102,20 @@ public class JsRunnerProvider implements Provider<JsRunner> {
         compileRules(rulesCurator);
     }
 
+    @Inject
+    public JsRunnerProvider(RulesCurator rulesCurator, Config config,
+        UnitOfWork unitOfWork, Provider<EntityManager> entityManager) {
+        this(rulesCurator);
+        this.unitOfWork = unitOfWork;
+        this.entityManager = entityManager;
+
+        int interval = config.getInt(ConfigProperties.RULES_REFRESH_INTERVAL, 0);
+        if (interval > 0) {
+            log.info("Polling for rules changes every " + interval + " seconds");
+            startPoller(interval);
+        }
+    }
+
     /**
      * These are the expensive operations (initStandardObjects and compileReader/exec).
      *  We do them once here, and define this provider as a singleton, so it's only
@@ -86,37 +124,115 @@ public class JsRunnerProvider implements Provider<JsRunner> {
      * @param rulesCurator
      */
     private void compileRules(RulesCurator rulesCurator) {
-        scriptLock.writeLock().lock();
+        compileLock.lock();
 
         // XXX: we need a principal to access the rules,
         // but pushing and popping system principal could be a bad idea
         Principal systemPrincipal = new SystemPrincipal();
         ResteasyProviderFactory.pushContext(Principal.class, systemPrincipal);
-        // Check to see if we need to recompile. we do this inside the write lock just to
-        // avoid race conditions where we might double compile
-        Date newUpdated = rulesCurator.getUpdated();
-        if (newUpdated.equals(this.updated)) {
-            scriptLock.writeLock().unlock();
+        try {
+            // Check to see if we need to recompile. we do this inside the lock just to
+            // avoid race conditions where we might double compile
+            Date newUpdated = rulesCurator.getUpdated();
+            if (newUpdated.equals(this.updated)) {
+                return;
+            }
+
+            log.debug("Recompiling rules with timestamp: " + newUpdated);
+
+            Context context = Context.enter();
+            try {
+                context.setOptimizationLevel(9);
+                Scriptable newScope = context.initStandardObjects(null, true);
+                Script script = context.compileString(
+                    rulesCurator.getRules().getRules(), "rules", 1, null);
+                script.exec(context, newScope);
+                ((ScriptableObject) newScope).sealObject();
+                // Readers only ever look at the scope, publish it as a whole
+                this.scope = newScope;
+                this.updated = newUpdated;
+            }
+            finally {
+                Context.exit();
+            }
+        }
+        finally {
             ResteasyProviderFactory.popContextData(Principal.class);
+            compileLock.unlock();
+        }
+    }
+
+    /**
+     * Flags the compiled rules as possibly stale, so the next request compares the
+     * rules timestamp against the compiled copy and recompiles if it changed.
+     * When called within a transaction (i.e. during a manifest import) this only
+     * happens once it commits, and not at all if it rolls back, so uncommitted
+     * rules are never compiled and a late commit is never missed.
+     */
+    public void invalidate() {
+        EntityManager em = entityManager == null ? null : entityManager.get();
+        if (em == null || !em.getTransaction().isActive()) {
+            markStale();
             return;
         }
+        ((Session) em.getDelegate()).getTransaction().registerSynchronization(
+            new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
 
-        log.debug("Recompiling rules with timestamp: " + newUpdated);
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        markStale();
+                    }
+                }
+            });
+    }
 
-        Context context = Context.enter();
-        context.setOptimizationLevel(9);
-        scope = context.initStandardObjects(null, true);
+    private void markStale() {
+        log.debug("Rules invalidated, will re-check for changes");
+        stale.set(true);
+    }
+
+    /**
+     * Stops the background rules poller, if one was started.
+     */
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    private void startPoller(int interval) {
+        poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "rules-poller");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    void poll() {
+        unitOfWork.begin();
         try {
-            script = context.compileString(rulesCurator.getRules().getRules(), "rules", 1,
-                null);
-            script.exec(context, scope);
-            ((ScriptableObject) scope).sealObject();
-            this.updated = newUpdated;
+            compileRules(rulesCurator);
+        }
+        catch (RuntimeException e) {
+            // Keep serving the rules we have, try again on the next poll.
+            log.error("Unable to check for updated rules", e);
         }
         finally {
-            Context.exit();
-            ResteasyProviderFactory.popContextData(Principal.class);
-            scriptLock.writeLock().unlock();
+            unitOfWork.end();
         }
     }
 
@@ -125,22 +241,32 @@ public class JsRunnerProvider implements Provider<JsRunner> {
          * Create a new thread/request local javascript scope for the JsRules,
          * based on the preinitialized global one (which contains our js rules).
          */
-        // try and recompile (if needed) first
-        compileRules(this.rulesCurator);
+        // only go back to the database if the rules were invalidated
+        if (stale.compareAndSet(true, false)) {
+            try {
+                compileRules(this.rulesCurator);
+            }
+            catch (RuntimeException e) {
+                stale.set(true);
+                throw e;
+            }
+        }
+        // read before the scope, compileRules publishes them the other way round,
+        // so the timestamp is never newer than the rules in the scope:
+        Date rulesUpdated = this.updated;
+        Scriptable globalScope = this.scope;
         Scriptable rulesScope;
-        scriptLock.readLock().lock();
+        Context context = Context.enter();
         try {
-            Context context = Context.enter();
-            rulesScope = context.newObject(scope);
-            rulesScope.setPrototype(scope);
+            rulesScope = context.newObject(globalScope);
+            rulesScope.setPrototype(globalScope);
             rulesScope.setParentScope(null);
-            Context.exit();
         }
         finally {
-            scriptLock.readLock().unlock();
+            Context.exit();
         }
 
-        return new JsRunner(rulesScope);
+        return new JsRunner(rulesScope, rulesUpdated);
     }
 
 }
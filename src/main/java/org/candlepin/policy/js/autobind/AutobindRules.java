@@ -16,6 +16,7 @@ package org.candlepin.policy.js.autobind;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,8 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Pool;
 import org.candlepin.model.PoolQuantity;
@@ -52,13 +55,19 @@ public class AutobindRules {
     private static Logger log = Logger.getLogger(AutobindRules.class);
     private ProductCache productCache;
     private RulesObjectMapper mapper;
+    private Map<String, Object> solver;
 
 
     @Inject
-    public AutobindRules(JsRunner jsRules, ProductCache productCache) {
+    public AutobindRules(JsRunner jsRules, ProductCache productCache, Config config) {
         this.jsRules = jsRules;
         this.productCache = productCache;
 
+        solver = new HashMap<String, Object>();
+        solver.put("mode", config.getString(ConfigProperties.AUTOBIND_SOLVER));
+        solver.put("maxNodes", config.getInt(ConfigProperties.AUTOBIND_MAX_NODES));
+        solver.put("maxMillis", config.getInt(ConfigProperties.AUTOBIND_MAX_MILLIS));
+
         mapper = RulesObjectMapper.instance();
         jsRules.init("autobind_name_space");
     }
@@ -95,6 +104,7 @@ public class AutobindRules {
         args.put("log", log, false);
         args.put("compliance", compliance);
         args.put("exemptList", exemptLevels);
+        args.put("solver", solver);
 
         // Convert the JSON returned into a Map object:
         Map<String, Integer> result = null;
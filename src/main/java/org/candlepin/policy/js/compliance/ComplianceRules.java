@@ -41,13 +41,15 @@ public class ComplianceRules {
     private RulesObjectMapper mapper;
     private static Logger log = Logger.getLogger(ComplianceRules.class);
     private StatusReasonMessageGenerator generator;
+    private ComplianceStatusCache statusCache;
 
     @Inject
     public ComplianceRules(JsRunner jsRules, EntitlementCurator entCurator,
-        StatusReasonMessageGenerator generator) {
+        StatusReasonMessageGenerator generator, ComplianceStatusCache statusCache) {
         this.entCurator = entCurator;
         this.jsRules = jsRules;
         this.generator = generator;
+        this.statusCache = statusCache;
 
         mapper = RulesObjectMapper.instance();
         jsRules.init("compliance_name_space");
@@ -62,18 +64,35 @@ public class ComplianceRules {
      */
     public ComplianceStatus getStatus(Consumer c, Date date) {
 
-        List<Entitlement> ents = entCurator.listByConsumer(c);
+        String version = statusCache.isEnabled() ? statusVersion(c) : null;
+        String json = statusCache.get(c, version, date);
+        boolean cached = json != null;
 
-        JsonJsContext args = new JsonJsContext(mapper);
-        args.put("consumer", c);
-        args.put("entitlements", ents);
-        args.put("ondate", date);
-        args.put("log", log, false);
+        if (!cached) {
+            List<Entitlement> ents = entCurator.listByConsumer(c);
+
+            JsonJsContext args = new JsonJsContext(mapper);
+            args.put("consumer", c);
+            args.put("entitlements", ents);
+            args.put("ondate", date);
+            args.put("log", log, false);
+
+            json = jsRules.runJsFunction(String.class, "get_status", args);
+            statusCache.put(c, version, date, ents, json);
+        }
 
         // Convert the JSON returned into a ComplianceStatus object:
-        String json = jsRules.runJsFunction(String.class, "get_status", args);
         try {
             ComplianceStatus result = mapper.toObject(json, ComplianceStatus.class);
+            if (cached) {
+                // Cached for another date in the same bucket, non-compliant
+                // statuses are only compliant until the date checked.
+                if (result.getDate() != null &&
+                    result.getDate().equals(result.getCompliantUntil())) {
+                    result.setCompliantUntil(date);
+                }
+                result.setDate(date);
+            }
             for (ComplianceReason reason : result.getReasons()) {
                 generator.setMessage(c, reason);
             }
@@ -84,6 +103,26 @@ public class ComplianceRules {
         }
     }
 
+    /*
+     * Cached statuses depend on the rules as well as the consumer's entitlements,
+     * so statuses computed with earlier rules are not used once new rules load.
+     */
+    private String statusVersion(Consumer c) {
+        Date rulesUpdated = jsRules.getRulesUpdated();
+        return entCurator.getEntitlementVersion(c) + ":" +
+            (rulesUpdated == null ? 0 : rulesUpdated.getTime());
+    }
+
+    /**
+     * Forget any cached compliance status for a consumer, to be called when
+     * its entitlements, facts or installed products change.
+     *
+     * @param c Consumer which changed.
+     */
+    public void invalidateStatus(Consumer c) {
+        statusCache.invalidate(c);
+    }
+
     public boolean isStackCompliant(Consumer consumer, String stackId,
         List<Entitlement> entsToConsider) {
         JsonJsContext args = new JsonJsContext(mapper);
@@ -69,6 +69,10 @@ public class ComplianceStatus {
         return date;
     }
 
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
     /**
      * @return Set of product IDs installed on the consumer, but not provided by any
      * entitlement. (not even partially)
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.apache.log4j.Logger;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ComplianceStatusCache
+ *
+ * Holds the last compliance status computed by the rules for each consumer, so
+ * repeated checks (check-ins, GET consumer, bind) do not have to load the
+ * consumer's entitlements and run the rules again.
+ *
+ * An entry is only used if the rules version, the consumer's entitlement
+ * version, facts and installed products are the ones it was computed for, and
+ * the date checked
+ * falls in the same time bucket. Statuses are not cached for buckets in which
+ * any of the consumer's entitlements start or end, so the result can not change
+ * within a bucket.
+ */
+@Singleton
+public class ComplianceStatusCache {
+
+    private static Logger log = Logger.getLogger(ComplianceStatusCache.class);
+
+    // One second either side, the rules check compliance a second after end dates.
+    private static final long BOUNDARY_MARGIN = 1000L;
+
+    private long bucketMillis;
+    private StatusMapping statuses;
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public ComplianceStatusCache(Config config) {
+        this.bucketMillis =
+            config.getInt(ConfigProperties.COMPLIANCE_CACHE_BUCKET) * 1000L;
+        this.statuses = new StatusMapping(
+            config.getInt(ConfigProperties.COMPLIANCE_CACHE_MAX));
+    }
+
+    public boolean isEnabled() {
+        return bucketMillis > 0 && statuses.max > 0;
+    }
+
+    /**
+     * Look up the status json computed for this consumer.
+     *
+     * @param consumer consumer being checked.
+     * @param version the current rules and entitlement version.
+     * @param date date being checked.
+     * @return the get_status json, or null if there is no usable entry.
+     */
+    public String get(Consumer consumer, String version, Date date) {
+        if (!isEnabled() || version == null || consumer.getId() == null) {
+            return null;
+        }
+
+        CachedStatus cached;
+        synchronized (statuses) {
+            cached = statuses.get(consumer.getId());
+        }
+
+        if (cached != null && cached.matches(consumer, version, bucket(date))) {
+            hits.incrementAndGet();
+            return cached.json;
+        }
+
+        misses.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("Compliance status cache miss for consumer: " + consumer.getUuid() +
+                " (" + hits.get() + " hits, " + misses.get() + " misses)");
+        }
+        return null;
+    }
+
+    /**
+     * Store the status json computed for this consumer on the given date, unless
+     * one of the entitlements starts or ends within the date's bucket.
+     *
+     * @param consumer consumer checked.
+     * @param version the rules and entitlement version the status was computed
+     * with.
+     * @param date date checked.
+     * @param ents entitlements the status was computed with.
+     * @param json status json returned by the rules.
+     */
+    public void put(Consumer consumer, String version, Date date,
+        List<Entitlement> ents, String json) {
+        if (!isEnabled() || version == null || consumer.getId() == null) {
+            return;
+        }
+
+        long bucket = bucket(date);
+        long start = bucket * bucketMillis - BOUNDARY_MARGIN;
+        long end = (bucket + 1) * bucketMillis + BOUNDARY_MARGIN;
+        for (Entitlement ent : ents) {
+            if (within(ent.getStartDate(), start, end) ||
+                within(ent.getEndDate(), start, end)) {
+                return;
+            }
+        }
+
+        CachedStatus cached = new CachedStatus(consumer, version, bucket, json);
+        synchronized (statuses) {
+            statuses.put(consumer.getId(), cached);
+        }
+    }
+
+    /**
+     * Drop the cached status for a consumer, used when its entitlements, facts or
+     * installed products are changed.
+     *
+     * @param consumer consumer that changed.
+     */
+    public void invalidate(Consumer consumer) {
+        if (consumer == null || consumer.getId() == null) {
+            return;
+        }
+        synchronized (statuses) {
+            statuses.remove(consumer.getId());
+        }
+    }
+
+    /**
+     * @return number of consumer statuses held.
+     */
+    public int getSize() {
+        synchronized (statuses) {
+            return statuses.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private long bucket(Date date) {
+        return date.getTime() / bucketMillis;
+    }
+
+    private boolean within(Date date, long start, long end) {
+        return date != null && date.getTime() >= start && date.getTime() <= end;
+    }
+
+    /**
+     * CachedStatus
+     *
+     * A status json along with the consumer state it was computed for.
+     */
+    private static class CachedStatus {
+
+        private String version;
+        private long bucket;
+        private Map<String, String> facts;
+        private Set<String> installed;
+        private String json;
+
+        CachedStatus(Consumer consumer, String version, long bucket, String json) {
+            this.version = version;
+            this.bucket = bucket;
+            this.facts = new HashMap<String, String>(consumer.getFacts());
+            this.installed = installedProductIds(consumer);
+            this.json = json;
+        }
+
+        boolean matches(Consumer consumer, String version, long bucket) {
+            return this.bucket == bucket && this.version.equals(version) &&
+                this.facts.equals(consumer.getFacts()) &&
+                this.installed.equals(installedProductIds(consumer));
+        }
+
+        private static Set<String> installedProductIds(Consumer consumer) {
+            Set<String> ids = new HashSet<String>();
+            if (consumer.getInstalledProducts() != null) {
+                for (ConsumerInstalledProduct product : consumer.getInstalledProducts()) {
+                    ids.add(product.getProductId());
+                }
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * StatusMapping
+     *
+     * Keeps the most recently used statuses, removing the eldest entry once the
+     * configured maximum is reached.
+     */
+    private static class StatusMapping extends LinkedHashMap<String, CachedStatus> {
+
+        private int max;
+
+        StatusMapping(int max) {
+            super(16, 0.75f, true);
+            this.max = max;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CachedStatus> eldest) {
+            return size() > max;
+        }
+    }
+}
@@ -15,6 +15,8 @@
 package org.candlepin.policy.js.entitlement;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -36,6 +38,7 @@ import org.candlepin.policy.ValidationResult;
 import org.candlepin.policy.ValidationWarning;
 import org.candlepin.policy.js.JsContext;
 import org.candlepin.policy.js.JsRunner;
+import org.candlepin.policy.js.JsonJsContext;
 import org.candlepin.policy.js.ProductCache;
 import org.candlepin.policy.js.RuleExecutionException;
 import org.candlepin.policy.js.RulesObjectMapper;
@@ -66,6 +69,7 @@ public abstract class AbstractEntitlementRules implements Enforcer {
     protected static final String POST_PREFIX = "post_";
     protected static final String GLOBAL_PRE_FUNCTION = PRE_PREFIX + "global";
     protected static final String GLOBAL_POST_FUNCTION = POST_PREFIX + "global";
+    protected static final String BATCH_PRE_FUNCTION = "pre_entitlement_batch";
 
     protected void rulesInit() {
         String mappings;
@@ -174,6 +178,76 @@ public abstract class AbstractEntitlementRules implements Enforcer {
         return result;
     }
 
+    /**
+     * Runs the given pre-entitlement rules for each pool, for a quantity of one, in a
+     * single call into the rules. The consumer (and host consumer for guests) is
+     * only serialized once for the whole batch.
+     *
+     * @param consumer consumer being checked
+     * @param pools pools to check
+     * @param poolRules the rules to run for each pool, in the same order as pools
+     * @param caller the context calling the rules
+     * @return the rules results in the same order as pools, or null if the current
+     *         rules do not support batch evaluation.
+     */
+    protected List<ValidationResult> callPreEntitlementRules(Consumer consumer,
+        List<Pool> pools, List<List<Rule>> poolRules, CallerType caller) {
+        List<List<String>> ruleNames = new ArrayList<List<String>>(poolRules.size());
+        for (List<Rule> rules : poolRules) {
+            List<String> names = new ArrayList<String>(rules.size());
+            for (Rule rule : rules) {
+                names.add(rule.getRuleName());
+            }
+            ruleNames.add(names);
+        }
+
+        JsonJsContext context = new JsonJsContext(this.objectMapper);
+        context.put("consumer", consumer);
+        // Entitlements are put into the context seperately because they do
+        // not get serialized along with the Consumer.
+        context.put("consumerEntitlements", consumer.getEntitlements());
+        context.put("pools", pools);
+        context.put("poolRules", ruleNames);
+        context.put("standalone", config.standalone());
+        context.put("quantity", 1);
+        context.put("caller", caller.getLabel());
+
+        // If the consumer is a guest, the rules may require the host
+        // consumer.
+        if (consumer.hasFact("virt.uuid")) {
+            String guestUuid = consumer.getFact("virt.uuid");
+            context.put("hostConsumer", consumerCurator.getHost(guestUuid));
+        }
+
+        // Add all non-serializable objects to the context.
+        context.put("log", log, false);
+
+        log.debug("Running batch pre-entitlement rules for: " + consumer.getUuid() +
+            " pools: " + pools.size());
+
+        String resultJson;
+        try {
+            resultJson = jsRules.invokeMethod(BATCH_PRE_FUNCTION, context);
+        }
+        catch (NoSuchMethodException ex) {
+            // Older rules, caller has to run the pools one at a time.
+            log.info("No batch rule found: " + BATCH_PRE_FUNCTION);
+            return null;
+        }
+        catch (RhinoException ex) {
+            throw new RuleExecutionException(ex);
+        }
+
+        ValidationResult[] results = objectMapper.toObject(resultJson,
+            ValidationResult[].class);
+        if (results.length != pools.size()) {
+            throw new RuleExecutionException("Expected " + pools.size() +
+                " pre-entitlement results, rules returned " + results.length);
+        }
+
+        return Arrays.asList(results);
+    }
+
     protected void callPostEntitlementRules(List<Rule> matchingRules) {
         for (Rule rule : matchingRules) {
             jsRules.invokeRule(POST_PREFIX + rule.getRuleName());
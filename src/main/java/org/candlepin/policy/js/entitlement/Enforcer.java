@@ -14,6 +14,9 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.List;
+import java.util.Map;
+
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
@@ -84,6 +87,24 @@ public interface Enforcer {
      */
     ValidationResult preEntitlement(Consumer consumer, Pool entitlementPool,
         Integer quantity, CallerType caller);
+
+    /**
+     * Run pre-entitlement checks for a quantity of one against each of the given
+     * pools.
+     *
+     * The consumer is only serialized once and all pools are evaluated in a single
+     * rules invocation, which is much cheaper than calling
+     * {@link #preEntitlement(Consumer, Pool, Integer, CallerType)} for every pool
+     * when listing pools or selecting pools for autobind.
+     *
+     * @param consumer Consumer who wishes to consume an entitlement.
+     * @param pools Entitlement pools to check.
+     * @param caller the context calling the rules.
+     * @return a {@link ValidationResult} for each of the given pools.
+     */
+    Map<Pool, ValidationResult> preEntitlement(Consumer consumer, List<Pool> pools,
+        CallerType caller);
+
     /**
      * Run post-entitlement actions.
      *
@@ -14,6 +14,9 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.List;
+import java.util.Map;
+
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
@@ -65,6 +68,17 @@ public class EnforcerDispatcher implements Enforcer {
         return jsEnforcer.preEntitlement(consumer, entitlementPool, quantity, caller);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        List<Pool> pools, CallerType caller) {
+
+        if (consumer.getType().isManifest()) {
+            return manifestEnforcer.preEntitlement(consumer, pools, caller);
+        }
+
+        return jsEnforcer.preEntitlement(consumer, pools, caller);
+    }
+
     public PoolHelper postUnbind(Consumer consumer, PoolHelper postEntHelper,
                 Entitlement ent) {
         if (consumer.getType().isManifest()) {
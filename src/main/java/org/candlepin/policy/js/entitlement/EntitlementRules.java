@@ -14,7 +14,10 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -71,16 +74,60 @@ public class EntitlementRules extends AbstractEntitlementRules implements Enforc
 
         ValidationResult result = runPreEntitlement(consumer,
             entitlementPool, quantity, caller);
-        validatePoolQuantity(result, entitlementPool, quantity);
+        validatePool(result, entitlementPool, quantity);
 
-        if (entitlementPool.isExpired(dateSource)) {
+        return result;
+    }
+
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        List<Pool> pools, CallerType caller) {
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        if (pools.isEmpty()) {
+            return results;
+        }
+
+        jsRules.reinitTo("entitlement_name_space");
+        rulesInit();
+
+        // Determine all rules to run based on each pool's attributes.
+        AttributeHelper attributeHelper = new AttributeHelper();
+        List<List<Rule>> poolRules = new ArrayList<List<Rule>>(pools.size());
+        for (Pool pool : pools) {
+            Set<String> attributeNames =
+                attributeHelper.getFlattenedAttributes(pool).keySet();
+            poolRules.add(rulesForAttributes(attributeNames, attributesToRules));
+        }
+
+        List<ValidationResult> ruleResults = callPreEntitlementRules(consumer, pools,
+            poolRules, caller);
+
+        for (int i = 0; i < pools.size(); i++) {
+            Pool pool = pools.get(i);
+            ValidationResult result;
+            if (ruleResults != null) {
+                result = ruleResults.get(i);
+                logResult(result);
+            }
+            else {
+                result = runPreEntitlement(consumer, pool, 1, caller);
+            }
+            validatePool(result, pool, 1);
+            results.put(pool, result);
+        }
+
+        return results;
+    }
+
+    private void validatePool(ValidationResult result, Pool pool, Integer quantity) {
+        validatePoolQuantity(result, pool, quantity);
+
+        if (pool.isExpired(dateSource)) {
             result.addError(
                 new ValidationError(i18n.tr("Subscriptions for {0} expired on: {1}",
-                    entitlementPool.getProductId(),
-                    entitlementPool.getEndDate())));
+                    pool.getProductId(),
+                    pool.getEndDate())));
         }
-
-        return result;
     }
 
     private ValidationResult runPreEntitlement(Consumer consumer, Pool pool,
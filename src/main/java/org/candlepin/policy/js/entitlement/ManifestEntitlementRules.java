@@ -14,6 +14,13 @@
  */
 package org.candlepin.policy.js.entitlement;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 import org.candlepin.config.Config;
 import org.candlepin.model.Consumer;
@@ -67,6 +74,45 @@ public class ManifestEntitlementRules extends AbstractEntitlementRules implement
         return runPreEntitlement(consumer, entitlementPool, quantity, caller);
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+        List<Pool> pools, CallerType caller) {
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        if (pools.isEmpty()) {
+            return results;
+        }
+
+        jsRules.reinitTo("entitlement_name_space");
+        rulesInit();
+
+        // Only the global rule applies to manifest consumers, see below.
+        List<Rule> globalOnly = Collections.singletonList(
+            new Rule("global", 0, new HashSet<String>()));
+        List<List<Rule>> poolRules = new ArrayList<List<Rule>>(pools.size());
+        for (int i = 0; i < pools.size(); i++) {
+            poolRules.add(globalOnly);
+        }
+
+        List<ValidationResult> ruleResults = callPreEntitlementRules(consumer, pools,
+            poolRules, caller);
+
+        for (int i = 0; i < pools.size(); i++) {
+            Pool pool = pools.get(i);
+            ValidationResult result;
+            if (ruleResults != null) {
+                result = ruleResults.get(i);
+                validatePoolQuantity(result, pool, 1);
+                logResult(result);
+            }
+            else {
+                result = runPreEntitlement(consumer, pool, 1, caller);
+            }
+            results.put(pool, result);
+        }
+
+        return results;
+    }
+
     /**
      * The standard pre entitlement runs both the global and the attribute rules
      *    Here we have limited it to the global only as the exclusions based on
@@ -40,6 +40,7 @@ import org.candlepin.exceptions.NotFoundException;
 import org.candlepin.model.ActivationKey;
 import org.candlepin.model.ActivationKeyCurator;
 import org.candlepin.model.ActivationKeyPool;
+import org.candlepin.model.CertificateDeltaDto;
 import org.candlepin.model.CertificateSerialDto;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerCurator;
@@ -109,8 +110,12 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * API Gateway for Consumers
@@ -765,6 +770,7 @@ public class ConsumerResource {
         if (changesMade) {
             log.info("Consumer " + toUpdate.getUuid() + " updated.");
 
+            complianceRules.invalidateStatus(toUpdate);
             ComplianceStatus compliance = complianceRules.getStatus(toUpdate,
                 Calendar.getInstance().getTime());
             toUpdate.setEntitlementStatus(compliance.getStatus());
@@ -1078,21 +1084,65 @@ public class ConsumerResource {
             log.debug("Getting client certificates for consumer: " + consumerUuid);
         }
         Consumer consumer = verifyAndLookupConsumer(consumerUuid);
-        poolManager.regenerateDirtyEntitlements(
-            entitlementCurator.listByConsumer(consumer));
+        regenerateDirtyEntitlements(consumer);
 
         Set<Long> serialSet = this.extractSerials(serials);
+        if (serialSet.isEmpty()) {
+            return entCertService.listForConsumer(consumer);
+        }
+        return entCertService.listForConsumer(consumer, serialSet);
+    }
 
-        List<EntitlementCertificate> returnCerts = new LinkedList<EntitlementCertificate>();
-        List<EntitlementCertificate> allCerts = entCertService
-            .listForConsumer(consumer);
-        for (EntitlementCertificate cert : allCerts) {
-            if (serialSet.isEmpty() ||
-                serialSet.contains(cert.getSerial().getId())) {
-                returnCerts.add(cert);
+    /**
+     * Return the changes to a consumer's entitlement certificates since the client
+     * last synced. Clients pass the serials they currently hold and get back the
+     * certificates they are missing along with the serials which were removed.
+     *
+     * The response carries the same ETag as the serials list, clients sending it
+     * back in If-None-Match get a 304 while their certificates are unchanged.
+     *
+     * @param consumerUuid UUID of the consumer
+     * @param serials comma separated serials the client currently holds.
+     * @return added certificates and removed serials for the given consumer.
+     * @httpcode 404
+     * @httpcode 200
+     * @httpcode 304
+     */
+    @GET
+    @Path("{consumer_uuid}/certificates/delta")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getEntitlementCertificateDelta(
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @QueryParam("serials") String serials,
+        @Context Request request) {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Getting client certificate delta for consumer: " +
+                consumerUuid);
+        }
+        Consumer consumer = verifyAndLookupConsumer(consumerUuid);
+        regenerateDirtyEntitlements(consumer);
+
+        EntityTag tag = new EntityTag(entCertService.getSerialsVersion(consumer));
+        ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder == null) {
+            Set<Long> known = this.extractSerials(serials);
+            Set<Long> added = new HashSet<Long>(
+                entCertService.listSerialIdsForConsumer(consumer));
+            List<Long> removed = new LinkedList<Long>();
+            for (Long serial : known) {
+                if (!added.remove(serial)) {
+                    removed.add(serial);
+                }
             }
+            // with nothing known, every certificate is new:
+            List<EntitlementCertificate> certs = known.isEmpty() ?
+                entCertService.listForConsumer(consumer) :
+                entCertService.listForConsumer(consumer, added);
+            builder = Response.ok(new CertificateDeltaDto(certs, removed));
         }
-        return returnCerts;
+
+        return builder.tag(tag).build();
     }
 
     /**
@@ -1114,8 +1164,7 @@ public class ConsumerResource {
                 consumerUuid);
         }
         Consumer consumer = verifyAndLookupConsumer(consumerUuid);
-        poolManager.regenerateDirtyEntitlements(
-            entitlementCurator.listByConsumer(consumer));
+        regenerateDirtyEntitlements(consumer);
 
         Set<Long> serialSet = this.extractSerials(serials);
         // filtering requires a null set, so make this null if it is
@@ -1138,6 +1187,13 @@ public class ConsumerResource {
         }
     }
 
+    private void regenerateDirtyEntitlements(Consumer consumer) {
+        List<Entitlement> dirty = entitlementCurator.listDirtyByConsumer(consumer);
+        if (!dirty.isEmpty()) {
+            poolManager.regenerateDirtyEntitlements(dirty);
+        }
+    }
+
     private Set<Long> extractSerials(String serials) {
         Set<Long> serialSet = new HashSet<Long>();
         if (serials != null) {
@@ -1170,33 +1226,44 @@ public class ConsumerResource {
      * is a small subset of data clients can use to determine which certificates
      * they need to update/fetch.
      *
+     * The response carries an ETag which changes whenever a certificate is added
+     * or removed, clients sending it back in If-None-Match get a 304 while their
+     * serials are unchanged.
+     *
      * @param consumerUuid UUID of the consumer
      * @return list of the client certificate metadata for the given consumer.
      * @httpcode 404
      * @httpcode 200
+     * @httpcode 304
      */
     @GET
     @Path("{consumer_uuid}/certificates/serials")
     @Produces(MediaType.APPLICATION_JSON)
     @Wrapped(element = "serials")
-    public List<CertificateSerialDto> getEntitlementCertificateSerials(
-        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid) {
+    public Response getEntitlementCertificateSerials(
+        @PathParam("consumer_uuid") @Verify(Consumer.class) String consumerUuid,
+        @Context Request request) {
 
         if (log.isDebugEnabled()) {
             log.debug("Getting client certificate serials for consumer: " +
                 consumerUuid);
         }
         Consumer consumer = verifyAndLookupConsumer(consumerUuid);
-        poolManager.regenerateDirtyEntitlements(
-            entitlementCurator.listByConsumer(consumer));
-
-        List<CertificateSerialDto> allCerts = new LinkedList<CertificateSerialDto>();
-        for (EntitlementCertificate cert : entCertService
-            .listForConsumer(consumer)) {
-            allCerts.add(new CertificateSerialDto(cert.getSerial().getId()));
+        regenerateDirtyEntitlements(consumer);
+
+        EntityTag tag = new EntityTag(entCertService.getSerialsVersion(consumer));
+        ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder == null) {
+            List<CertificateSerialDto> allCerts =
+                new LinkedList<CertificateSerialDto>();
+            for (Long serial : entCertService.listSerialIdsForConsumer(consumer)) {
+                allCerts.add(new CertificateSerialDto(serial));
+            }
+            builder = Response.ok(
+                new GenericEntity<List<CertificateSerialDto>>(allCerts) {});
         }
 
-        return allCerts;
+        return builder.tag(tag).build();
     }
 
     /**
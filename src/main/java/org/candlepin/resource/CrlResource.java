@@ -17,19 +17,14 @@ package org.candlepin.resource;
 import com.google.inject.Inject;
 
 import org.candlepin.auth.Principal;
-import org.candlepin.config.Config;
-import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlCache;
 import org.candlepin.exceptions.IseException;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
-import org.candlepin.util.CrlFileUtil;
 
-import java.io.File;
 import java.io.IOException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
-import java.security.cert.X509CRL;
 import java.util.List;
 
 import javax.ws.rs.DELETE;
@@ -38,7 +33,11 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 /**
  * CrlResource
@@ -46,49 +45,82 @@ import javax.ws.rs.core.MediaType;
 @Path("/crl")
 public class CrlResource {
 
-    private CrlGenerator crlGenerator;
-    private CrlFileUtil crlFileUtil;
-    private Config config;
+    private CrlCache crlCache;
     private CertificateSerialCurator certificateSerialCurator;
 
 
     @Inject
-    public CrlResource(CrlGenerator crlGenerator,
-        CrlFileUtil crlFileUtil, Config config,
+    public CrlResource(CrlCache crlCache,
         CertificateSerialCurator certificateSerialCurator) {
 
-        this.crlGenerator = crlGenerator;
-        this.crlFileUtil = crlFileUtil;
-        this.config = config;
+        this.crlCache = crlCache;
         this.certificateSerialCurator = certificateSerialCurator;
     }
 
     /**
+     * The CRL is served with ETag and Last-Modified headers, so pollers can
+     * send If-None-Match or If-Modified-Since and get a 304 while it is unchanged.
+     *
      * @return the current CRL
      * @throws CRLException if there is issue generating the CRL
      * @throws IOException if there is a problem serializing the CRL
      * @httpcode 200
+     * @httpcode 304
      */
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
-    public String getCurrentCrl(@Context Principal principal)
+    public Response getCurrentCrl(@Context Principal principal,
+        @Context Request request)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
+        CrlCache.Entry crl = null;
+        try {
+            crl = crlCache.get();
+        }
+        catch (CertificateException e) {
+            throw new IseException(e.getMessage(), e);
+        }
 
-        byte[] encoded = null;
+        return buildResponse(crl, request);
+    }
 
+    /**
+     * Serials revoked since the current CRL was issued, as an RFC 5280 delta
+     * CRL. Served with the same ETag and Last-Modified headers as the CRL.
+     *
+     * @return the delta CRL against the current CRL
+     * @throws CRLException if there is issue generating the CRL
+     * @throws IOException if there is a problem serializing the CRL
+     * @httpcode 200
+     * @httpcode 304
+     */
+    @GET
+    @Path("delta")
+    @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
+    public Response getDeltaCrl(@Context Principal principal,
+        @Context Request request)
+        throws CRLException, IOException {
+
+        CrlCache.Entry crl = null;
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-            crl = crlGenerator.syncCRLWithDB(crl);
-            encoded = crlFileUtil.writeCRLFile(crlFile, crl);
+            crl = crlCache.getDelta();
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
 
-        return new String(encoded);
+        return buildResponse(crl, request);
+    }
+
+    private Response buildResponse(CrlCache.Entry crl, Request request) {
+        EntityTag tag = new EntityTag(crl.getETag());
+        ResponseBuilder builder = request.evaluatePreconditions(
+            crl.getLastModified(), tag);
+        if (builder == null) {
+            builder = Response.ok(new String(crl.getEncoded()));
+        }
+
+        return builder.tag(tag).lastModified(crl.getLastModified()).build();
     }
 
     /**
@@ -102,33 +134,15 @@ public class CrlResource {
     public void unrevoke(@QueryParam("serial") String[] serialIds)
         throws CRLException, IOException {
 
-        String filePath = getCrlFilePath();
-        File crlFile = new File(filePath);
+        // lookup entitlement, find CertificateSerial
+        List<CertificateSerial> serials =
+            certificateSerialCurator.listBySerialIds(serialIds);
 
         try {
-            X509CRL crl = crlFileUtil.readCRLFile(crlFile);
-
-            // get crl file if it exists
-            // lookup entitlement, find CertificateSerial
-            List<CertificateSerial> serials =
-                certificateSerialCurator.listBySerialIds(serialIds);
-
-            crl = crlGenerator.removeEntries(crl, serials);
-
-            crlFileUtil.writeCRLFile(crlFile,  crl);
+            crlCache.removeEntries(serials);
         }
         catch (CertificateException e) {
             throw new IseException(e.getMessage(), e);
         }
     }
-
-    private String getCrlFilePath() {
-        String filePath = config.getString(ConfigProperties.CRL_FILE_PATH);
-
-        if (filePath == null) {
-            throw new IseException("CRL file path not defined in config file");
-        }
-
-        return filePath;
-    }
 }
@@ -264,6 +264,7 @@ public class EntitlementResource {
 
         JobDetail detail = newJob(RegenProductEntitlementCertsJob.class)
             .withIdentity("regen_entitlement_cert_of_prod" + Util.generateUUID())
+            .requestRecovery(true) // resume the job upon restarts
             .usingJobData(map)
             .build();
 
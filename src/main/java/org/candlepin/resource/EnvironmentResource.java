@@ -185,6 +185,7 @@ public class EnvironmentResource {
 
         JobDetail detail = newJob(RegenEnvEntitlementCertsJob.class)
             .withIdentity("regen_entitlement_cert_of_env" + Util.generateUUID())
+            .requestRecovery(true) // resume the job upon restarts
             .usingJobData(map)
             .build();
 
@@ -233,6 +234,7 @@ public class EnvironmentResource {
 
         JobDetail detail = newJob(RegenEnvEntitlementCertsJob.class)
             .withIdentity("regen_entitlement_cert_of_env" + Util.generateUUID())
+            .requestRecovery(true) // resume the job upon restarts
             .usingJobData(map)
             .build();
 
@@ -14,10 +14,16 @@
  */
 package org.candlepin.resource;
 
+import org.candlepin.audit.EventSinkStats;
+import org.candlepin.audit.ListenerMetrics;
+import org.candlepin.audit.ListenerStats;
 import org.candlepin.auth.interceptor.SecurityHole;
 import org.candlepin.config.Config;
+import org.candlepin.model.CacheStats;
 import org.candlepin.model.RulesCurator;
 import org.candlepin.model.Status;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.util.VersionUtil;
 
 import com.google.inject.Inject;
@@ -48,11 +54,22 @@ public class StatusResource {
     private boolean standalone = true;
 
     private RulesCurator rulesCurator;
+    private ListenerMetrics listenerMetrics;
+    private EventSinkStats eventSinkStats;
+    private ComplianceStatusCache complianceCache;
+    private KeyPairPool keyPairPool;
 
     @Inject
     public StatusResource(RulesCurator rulesCurator,
-                          Config config) {
+                          Config config, ListenerMetrics listenerMetrics,
+                          EventSinkStats eventSinkStats,
+                          ComplianceStatusCache complianceCache,
+                          KeyPairPool keyPairPool) {
         this.rulesCurator = rulesCurator;
+        this.listenerMetrics = listenerMetrics;
+        this.eventSinkStats = eventSinkStats;
+        this.complianceCache = complianceCache;
+        this.keyPairPool = keyPairPool;
 
         Map<String, String> map = VersionUtil.getVersionMap();
         version = map.get("version");
@@ -86,4 +103,61 @@ public class StatusResource {
             rulesCurator.getRules().getVersion(), rulesCurator.getRules().getRulesSource());
         return status;
     }
+
+    /**
+     * Retrieves how far behind each audit event listener is
+     *
+     * @return lag statistics by listener
+     * @httpcode 200
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON})
+    @Path("events")
+    public Map<String, ListenerStats> eventListeners() {
+        return listenerMetrics.getAll();
+    }
+
+    /**
+     * Retrieves how many events are waiting to be sent, and how long sending
+     * them takes
+     *
+     * @return event sink statistics
+     * @httpcode 200
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON})
+    @Path("eventsink")
+    public EventSinkStats eventSink() {
+        return eventSinkStats;
+    }
+
+    /**
+     * Retrieves how many consumer compliance statuses are cached, and how often
+     * the cache is used
+     *
+     * @return compliance status cache statistics
+     * @httpcode 200
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON})
+    @Path("compliancecache")
+    public CacheStats complianceCache() {
+        return new CacheStats(complianceCache.getSize(), complianceCache.getHits(),
+            complianceCache.getMisses());
+    }
+
+    /**
+     * Retrieves how many pre-generated key pairs are ready, and how often
+     * registration had to generate one itself
+     *
+     * @return key pair pool statistics
+     * @httpcode 200
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON})
+    @Path("keypairpool")
+    public CacheStats keyPairPool() {
+        return new CacheStats(keyPairPool.getDepth(), keyPairPool.getHits(),
+            keyPairPool.getMisses());
+    }
 }
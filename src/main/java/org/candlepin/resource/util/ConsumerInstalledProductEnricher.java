@@ -15,11 +15,15 @@
 package org.candlepin.resource.util;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
@@ -42,6 +46,15 @@ public class ConsumerInstalledProductEnricher {
     private Consumer consumer;
     private ComplianceRules complianceRules;
 
+    // Rules results shared by every installed product of the consumer. Entitlements
+    // are numbered so the set active on a date can be used as a key.
+    private Map<Entitlement, Integer> entIndexes =
+        new IdentityHashMap<Entitlement, Integer>();
+    private Map<String, Map<BitSet, Boolean>> stackCompliance =
+        new HashMap<String, Map<BitSet, Boolean>>();
+    private Map<Entitlement, Boolean> entCompliance =
+        new IdentityHashMap<Entitlement, Boolean>();
+
     public ConsumerInstalledProductEnricher(Consumer consumer,
         ComplianceStatus populatedComplianceStatus, ComplianceRules complianceRules) {
         this.status = populatedComplianceStatus;
@@ -116,20 +129,23 @@ public class ConsumerInstalledProductEnricher {
         Date endDate = null;
         Entitlement lastProcessed = null;
         possible = sortByStartDate(possible);
+        Map<Date, BitSet> activeOnDates = getActiveOnDates(possible);
         for (int i = 0; i < possible.size(); i++) {
             boolean last = i == possible.size() - 1;
             Entitlement next = possible.get(i);
             Date entStart = next.getStartDate();
             Date entEnd = next.getEndDate();
 
-            boolean entValidOnStart = isEntitlementValidOnDate(next, possible, entStart);
-            boolean entValidOnEnd = isEntitlementValidOnDate(next, possible, entEnd);
+            boolean entValidOnStart = isEntitlementValidOnDate(next, possible,
+                activeOnDates, entStart);
+            boolean entValidOnEnd = isEntitlementValidOnDate(next, possible,
+                activeOnDates, entEnd);
 
             boolean validAfterLast = true;
             if (lastProcessed != null && !last) {
                 Date afterLastProcessed = getDatePlusOneSecond(lastProcessed.getEndDate());
                 validAfterLast = isEntitlementValidOnDate(lastProcessed, possible,
-                    afterLastProcessed);
+                    activeOnDates, afterLastProcessed);
                 if (!validAfterLast) {
                     startDate = null;
                 }
@@ -172,29 +188,27 @@ public class ConsumerInstalledProductEnricher {
      * @param ent the entitlement to check.
      * @param possible a list of possible entitlements to check (entitlements already
      *                 filtered b product id.
+     * @param activeOnDates entitlements active on each date checked.
      * @param date the date to check.
      * @return true if the entitlement is valid on this date, false otherwise.
      */
     private boolean isEntitlementValidOnDate(Entitlement ent,
-        List<Entitlement> possible, Date date) {
+        List<Entitlement> possible, Map<Date, BitSet> activeOnDates, Date date) {
         DateRange entToCheckRange = new DateRange(ent.getStartDate(), ent.getEndDate());
         boolean entToCheckActiveOnDate = entToCheckRange.contains(date);
 
         // Check if entitlement is stackable.
         if (ent.getPool().hasProductAttribute("stacking_id")) {
+            BitSet active = activeOnDates.get(date);
             List<Entitlement> activeOnDate = new ArrayList<Entitlement>();
             for (Entitlement next : possible) {
-                DateRange validRange = new DateRange(next.getStartDate(),
-                    next.getEndDate());
-                if (validRange.contains(date)) {
+                if (active.get(getIndex(next))) {
                     activeOnDate.add(next);
                 }
             }
             // Entitlement is valid if its stack is valid.
             String stackId = ent.getPool().getProductAttribute("stacking_id").getValue();
-            boolean isStackCompliant = this.complianceRules.isStackCompliant(this.consumer,
-                stackId, activeOnDate);
-            if (isStackCompliant) {
+            if (isStackCompliant(stackId, active, activeOnDate)) {
                 return true;
             }
 
@@ -208,7 +222,7 @@ public class ConsumerInstalledProductEnricher {
             return false;
         }
         // Non-stackable entitlement may not be valid according to the rules file.
-        else if (!complianceRules.isEntitlementCompliant(this.consumer, ent)) {
+        else if (!isEntitlementCompliant(ent)) {
             return false;
         }
 
@@ -217,6 +231,93 @@ public class ConsumerInstalledProductEnricher {
         return entToCheckActiveOnDate;
     }
 
+    /**
+     * Find the entitlements active on every date the valid date range is checked
+     * for: each entitlement's start and end dates, and one second after its end.
+     * The dates are visited in order, adding entitlements as they start and
+     * removing them once they have ended, so each entitlement is only looked at
+     * twice.
+     *
+     * @param possible entitlements to check, sorted by start date.
+     * @return entitlements active on each date, as indexes into the consumer's
+     * entitlements.
+     */
+    private Map<Date, BitSet> getActiveOnDates(List<Entitlement> possible) {
+        List<Date> dates = new ArrayList<Date>();
+        for (Entitlement ent : possible) {
+            dates.add(ent.getStartDate());
+            dates.add(ent.getEndDate());
+            dates.add(getDatePlusOneSecond(ent.getEndDate()));
+        }
+        Collections.sort(dates);
+
+        List<Entitlement> byEnd = new ArrayList<Entitlement>(possible);
+        Collections.sort(byEnd, new Comparator<Entitlement>() {
+            @Override
+            public int compare(Entitlement ent1, Entitlement ent2) {
+                return ent1.getEndDate().compareTo(ent2.getEndDate());
+            }
+        });
+
+        Map<Date, BitSet> activeOnDates = new HashMap<Date, BitSet>();
+        BitSet active = new BitSet();
+        int started = 0;
+        int ended = 0;
+        for (Date date : dates) {
+            if (activeOnDates.containsKey(date)) {
+                continue;
+            }
+            while (started < possible.size() &&
+                possible.get(started).getStartDate().compareTo(date) <= 0) {
+                active.set(getIndex(possible.get(started++)));
+            }
+            while (ended < byEnd.size() && byEnd.get(ended).getEndDate().before(date)) {
+                active.clear(getIndex(byEnd.get(ended++)));
+            }
+            activeOnDates.put(date, (BitSet) active.clone());
+        }
+        return activeOnDates;
+    }
+
+    private int getIndex(Entitlement ent) {
+        Integer index = entIndexes.get(ent);
+        if (index == null) {
+            index = entIndexes.size();
+            entIndexes.put(ent, index);
+        }
+        return index;
+    }
+
+    /**
+     * Check stack compliance through the rules, once for each set of active
+     * entitlements.
+     */
+    private boolean isStackCompliant(String stackId, BitSet active,
+        List<Entitlement> activeOnDate) {
+        Map<BitSet, Boolean> results = stackCompliance.get(stackId);
+        if (results == null) {
+            results = new HashMap<BitSet, Boolean>();
+            stackCompliance.put(stackId, results);
+        }
+
+        Boolean compliant = results.get(active);
+        if (compliant == null) {
+            compliant = complianceRules.isStackCompliant(this.consumer, stackId,
+                activeOnDate);
+            results.put(active, compliant);
+        }
+        return compliant;
+    }
+
+    private boolean isEntitlementCompliant(Entitlement ent) {
+        Boolean compliant = entCompliance.get(ent);
+        if (compliant == null) {
+            compliant = complianceRules.isEntitlementCompliant(this.consumer, ent);
+            entCompliance.put(ent, compliant);
+        }
+        return compliant;
+    }
+
     /**
      * Gets a list of entitlements that form a continuous span across the date
      * specified in {@link ComplianceStatus}. Stacking is not considered here.
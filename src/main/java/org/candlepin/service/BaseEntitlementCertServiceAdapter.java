@@ -14,6 +14,7 @@
  */
 package org.candlepin.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.candlepin.model.Consumer;
@@ -37,4 +38,20 @@ public abstract class BaseEntitlementCertServiceAdapter implements
         return entCertCurator.listForConsumer(consumer);
     }
 
+    @Override
+    public List<EntitlementCertificate> listForConsumer(Consumer consumer,
+        Collection<Long> serials) {
+        return entCertCurator.listForConsumer(consumer, serials);
+    }
+
+    @Override
+    public List<Long> listSerialIdsForConsumer(Consumer consumer) {
+        return entCertCurator.listSerialIdsForConsumer(consumer);
+    }
+
+    @Override
+    public String getSerialsVersion(Consumer consumer) {
+        return consumer.getId() + "-" + entCertCurator.getSerialsVersion(consumer);
+    }
+
 }
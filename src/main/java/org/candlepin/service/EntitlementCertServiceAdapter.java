@@ -16,6 +16,7 @@ package org.candlepin.service;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Collection;
 import java.util.List;
 
 import org.candlepin.model.Consumer;
@@ -76,4 +77,32 @@ public interface EntitlementCertServiceAdapter {
      * @return All entitlement certs for this consumer.
      */
     List<EntitlementCertificate> listForConsumer(Consumer consumer);
+
+    /**
+     * Return the entitlement certificates of a given consumer with the given serials.
+     *
+     * @param consumer
+     * @param serials serial ids of the certificates to return.
+     * @return Entitlement certs for this consumer with the given serials.
+     */
+    List<EntitlementCertificate> listForConsumer(Consumer consumer,
+        Collection<Long> serials);
+
+    /**
+     * Return the serial ids of all entitlement certificates for a given consumer,
+     * without loading the certificates themselves.
+     *
+     * @param consumer
+     * @return Serial ids of all entitlement certs for this consumer.
+     */
+    List<Long> listSerialIdsForConsumer(Consumer consumer);
+
+    /**
+     * Return a version for the set of entitlement certificates of a given consumer,
+     * which changes whenever a certificate is added or removed.
+     *
+     * @param consumer
+     * @return Version of this consumer's entitlement cert serials.
+     */
+    String getSerialsVersion(Consumer consumer);
 }
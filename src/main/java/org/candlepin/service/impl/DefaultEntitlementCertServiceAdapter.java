@@ -24,6 +24,7 @@ import java.security.cert.X509Certificate;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -153,10 +154,6 @@ public class DefaultEntitlementCertServiceAdapter extends
         KeyPair keyPair, boolean useContentPrefix)
         throws GeneralSecurityException, IOException {
 
-        // oiduitl is busted at the moment, so do this manually
-        Set<X509ExtensionWrapper> extensions;
-        Set<X509ByteExtensionWrapper> byteExtensions =
-            new LinkedHashSet<X509ByteExtensionWrapper>();
         Set<Product> products = new HashSet<Product>(getProvidedProducts(ent
             .getPool(), sub));
         products.add(product);
@@ -168,12 +165,28 @@ public class DefaultEntitlementCertServiceAdapter extends
         // the consumer's cert_version.
         verifySubscriptionSupport(ent, sub);
 
+        Set<X509ByteExtensionWrapper> byteExtensions =
+            new LinkedHashSet<X509ByteExtensionWrapper>();
         if (shouldGenerateV3(ent)) {
-            extensions = prepareV3Extensions(products, ent, contentPrefix,
-                promotedContent, sub);
             byteExtensions = prepareV3ByteExtensions(products, ent, contentPrefix,
                 promotedContent, sub);
         }
+        return createX509Certificate(ent, sub, products, contentPrefix,
+            promotedContent, byteExtensions, serialNumber, keyPair);
+    }
+
+    private X509Certificate createX509Certificate(Entitlement ent,
+        Subscription sub, Set<Product> products, String contentPrefix,
+        Map<String, EnvironmentContent> promotedContent,
+        Set<X509ByteExtensionWrapper> byteExtensions, BigInteger serialNumber,
+        KeyPair keyPair) throws GeneralSecurityException, IOException {
+
+        // oiduitl is busted at the moment, so do this manually
+        Set<X509ExtensionWrapper> extensions;
+        if (shouldGenerateV3(ent)) {
+            extensions = prepareV3Extensions(products, ent, contentPrefix,
+                promotedContent, sub);
+        }
         else {
             extensions = prepareV1Extensions(products, ent, contentPrefix,
                 promotedContent, sub);
@@ -346,28 +359,42 @@ public class DefaultEntitlementCertServiceAdapter extends
 
         KeyPair keyPair = keyPairCurator.getConsumerKeyPair(entitlement.getConsumer());
         CertificateSerial serial = new CertificateSerial(entitlement.getEndDate());
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
+        // The serial id is generated in memory when the serial is persisted, the
+        // insert itself waits for the flush along with the certificate
         serial = serialCurator.create(serial);
 
-        X509Certificate x509Cert = createX509Certificate(entitlement, sub,
-            product, BigInteger.valueOf(serial.getId()), keyPair, !thisIsUeberCert);
-
-        EntitlementCertificate cert = new EntitlementCertificate();
-        cert.setSerial(serial);
-        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
-
         Set<Product> products = new HashSet<Product>(getProvidedProducts(entitlement
             .getPool(), sub));
         products.add(product);
         Map<String, EnvironmentContent> promotedContent = getPromotedContent(entitlement);
         String contentPrefix = getContentPrefix(entitlement, !thisIsUeberCert);
 
-        String pem = new String(this.pki.getPemEncoded(x509Cert));
+        verifySubscriptionSupport(entitlement, sub);
 
+        // The v3 products (and the content filtering behind them) are mapped once,
+        // and shared by the content extension and the entitlement data payload.
+        List<org.candlepin.json.model.Product> productModels = null;
+        Set<X509ByteExtensionWrapper> byteExtensions =
+            new LinkedHashSet<X509ByteExtensionWrapper>();
         if (shouldGenerateV3(entitlement)) {
-            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(products,
-                entitlement, contentPrefix, promotedContent, sub);
+            productModels = v3extensionUtil.createProducts(products, contentPrefix,
+                promotedContent, entitlement.getConsumer(), entitlement);
+            byteExtensions = v3extensionUtil.getByteExtensions(productModels);
+        }
+
+        X509Certificate x509Cert = createX509Certificate(entitlement, sub,
+            products, contentPrefix, promotedContent, byteExtensions,
+            BigInteger.valueOf(serial.getId()), keyPair);
+
+        EntitlementCertificate cert = new EntitlementCertificate();
+        cert.setSerial(serial);
+        cert.setKeyAsBytes(pki.getPemEncoded(keyPair.getPrivate()));
+
+        String pem = new String(this.pki.getPemEncoded(x509Cert));
+
+        if (productModels != null) {
+            byte[] payloadBytes = v3extensionUtil.createEntitlementDataPayload(
+                productModels, entitlement, sub);
             String payload = "-----BEGIN ENTITLEMENT DATA-----\n";
             payload += Util.toBase64(payloadBytes);
             payload += "-----END ENTITLEMENT DATA-----\n";
@@ -117,8 +117,8 @@ public class DefaultIdentityCertServiceAdapter implements
         Date endDate = this.endDateGenerator.apply(startDate);
 
         CertificateSerial serial = new CertificateSerial(endDate);
-        // We need the sequence generated id before we create the EntitlementCertificate,
-        // otherwise we could have used cascading create
+        // The serial id is generated in memory when the serial is persisted, the
+        // insert itself waits for the flush along with the certificate
         serialCurator.create(serial);
 
         String dn = createDN(consumer);
@@ -21,6 +21,7 @@ import org.apache.log4j.Logger;
 import org.candlepin.audit.EventSink;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.util.VersionUtil;
 
 import com.google.inject.Inject;
@@ -33,11 +34,14 @@ public class RulesImporter {
 
     private RulesCurator curator;
     private EventSink sink;
+    private JsRunnerProvider jsProvider;
 
     @Inject
-    RulesImporter(RulesCurator curator, EventSink sink) {
+    RulesImporter(RulesCurator curator, EventSink sink,
+        JsRunnerProvider jsProvider) {
         this.curator = curator;
         this.sink = sink;
+        this.jsProvider = jsProvider;
     }
 
     public void importObject(Reader reader) throws IOException {
@@ -50,6 +54,7 @@ public class RulesImporter {
             log.info("Importing new rules from manifest, current version: " +
                 existingRules.getVersion() + " new version: " + newRules.getVersion());
             curator.update(newRules);
+            jsProvider.invalidate();
             sink.emitRulesModified(existingRules, newRules);
         }
         else {
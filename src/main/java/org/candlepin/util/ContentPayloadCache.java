@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * ContentPayloadCache
+ *
+ * Holds the compressed content extension of v3 entitlement certificates, so the
+ * path tree and huffman encoding are only done once for all the consumers who
+ * get the same content sets.
+ *
+ * Entries are keyed by the ordered content paths the payload is encoded from.
+ * These already reflect the product set, content prefix, promoted content and
+ * the content definitions themselves, so a product or content change yields a
+ * new key rather than a stale entry. Old entries are dropped once the total size
+ * of the cached payloads goes over the configured limit.
+ */
+@Singleton
+public class ContentPayloadCache {
+
+    private long maxBytes;
+    private long bytes = 0;
+    private LinkedHashMap<List<String>, byte[]> payloads =
+        new LinkedHashMap<List<String>, byte[]>(16, 0.75f, true);
+
+    @Inject
+    public ContentPayloadCache(Config config) {
+        this.maxBytes = config.getInt(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX_BYTES);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param paths content paths, in the order they are encoded.
+     * @return the cached payload, or null if there is none. The array is shared and
+     * must not be modified.
+     */
+    public byte[] get(List<String> paths) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (payloads) {
+            return payloads.get(paths);
+        }
+    }
+
+    /**
+     * Cache the payload encoded from the given paths, evicting the least recently
+     * used payloads until the cache is back under its size limit.
+     *
+     * @param paths content paths, in the order they were encoded.
+     * @param payload the encoded payload.
+     */
+    public void put(List<String> paths, byte[] payload) {
+        long size = sizeOf(paths, payload);
+        if (!isEnabled() || size > maxBytes) {
+            return;
+        }
+
+        List<String> key = new ArrayList<String>(paths);
+        synchronized (payloads) {
+            byte[] previous = payloads.put(key, payload);
+            if (previous != null) {
+                bytes -= sizeOf(key, previous);
+            }
+            bytes += size;
+
+            Iterator<Entry<List<String>, byte[]>> eldest =
+                payloads.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Entry<List<String>, byte[]> entry = eldest.next();
+                bytes -= sizeOf(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (payloads) {
+            return payloads.size();
+        }
+    }
+
+    private long sizeOf(List<String> paths, byte[] payload) {
+        // Rough footprint, counting two bytes per path character.
+        long size = payload.length;
+        for (String path : paths) {
+            size += 2 * path.length();
+        }
+        return size;
+    }
+}
@@ -175,4 +175,5 @@ public final class OIDUtil {
 
     // Maybe not the best place for this, but better than relying on bouncycastle for it.
     public static final String CRL_NUMBER = "2.5.29.20";
+    public static final String DELTA_CRL_INDICATOR = "2.5.29.27";
 }
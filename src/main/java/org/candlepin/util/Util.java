@@ -57,6 +57,8 @@ public class Util {
     private static ObjectMapper mapper = new ObjectMapper();
     // If we don't specify the line separator, it will use CRLF
     private static Base64 base64 = new Base64(64, "\n".getBytes());
+    // seeding a SecureRandom is expensive, and the instance is thread safe
+    private static SecureRandom random = new SecureRandom();
 
     private Util() {
         // default ctor
@@ -234,7 +236,7 @@ public class Util {
           [1] http://en.wikipedia.org/wiki/Birthday_problem
          */
 
-        return Math.abs(new SecureRandom().nextLong());
+        return Math.abs(random.nextLong());
     }
 
     public static String toBase64(byte [] data) {
@@ -20,6 +20,7 @@ import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.candlepin.model.EntitledProducts;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCurator;
 import org.candlepin.model.EnvironmentContent;
@@ -64,6 +65,7 @@ public abstract class X509Util {
         EntitlementCurator entCurator, Map<String, EnvironmentContent> promotedContent,
         boolean filterEnvironment) {
         Set<ProductContent> filtered = new HashSet<ProductContent>();
+        EntitledProducts entitled = null;
 
         for (ProductContent pc : prod.getProductContent()) {
             // Filter any content not promoted to environment.
@@ -78,18 +80,13 @@ public abstract class X509Util {
 
             boolean include = true;
             if (pc.getContent().getModifiedProductIds().size() > 0) {
-                include = false;
-                Set<String> prodIds = pc.getContent().getModifiedProductIds();
+                if (entitled == null) {
+                    entitled = entCurator.getEntitledProducts(ent.getConsumer());
+                }
                 // If consumer has an entitlement to just one of the modified products,
                 // we will include this content set:
-                for (String prodId : prodIds) {
-                    Set<Entitlement> entsProviding = entCurator.listProviding(
-                        ent.getConsumer(), prodId, ent.getStartDate(), ent.getEndDate());
-                    if (entsProviding.size() > 0) {
-                        include = true;
-                        break;
-                    }
-                }
+                include = entitled.providesAny(pc.getContent().getModifiedProductIds(),
+                    ent.getStartDate(), ent.getEndDate());
             }
 
             if (include) {
@@ -20,7 +20,9 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -41,6 +43,7 @@ import org.candlepin.json.model.Order;
 import org.candlepin.json.model.Service;
 import org.candlepin.json.model.Subscription;
 import org.candlepin.model.Consumer;
+import org.candlepin.model.EntitledProducts;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCurator;
 import org.candlepin.model.EnvironmentContent;
@@ -64,6 +67,7 @@ public class X509V3ExtensionUtil extends X509Util{
     private static Logger log = Logger.getLogger(X509V3ExtensionUtil.class);
     private Config config;
     private EntitlementCurator entCurator;
+    private ContentPayloadCache payloadCache;
     private String thisVersion = "3.2";
 
     private long pathNodeId = 0;
@@ -72,10 +76,12 @@ public class X509V3ExtensionUtil extends X509Util{
     private static boolean treeDebug = false;
 
     @Inject
-    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator) {
+    public X509V3ExtensionUtil(Config config, EntitlementCurator entCurator,
+        ContentPayloadCache payloadCache) {
         // Output everything in UTC
         this.config = config;
         this.entCurator = entCurator;
+        this.payloadCache = payloadCache;
     }
 
     public Set<X509ExtensionWrapper> getExtensions(Set<Product> products,
@@ -98,11 +104,25 @@ public class X509V3ExtensionUtil extends X509Util{
         Entitlement ent, String contentPrefix,
         Map<String, EnvironmentContent> promotedContent,
         org.candlepin.model.Subscription sub) throws IOException {
+        return getByteExtensions(createProducts(products, contentPrefix,
+            promotedContent, ent.getConsumer(), ent));
+    }
+
+    /**
+     * Create the byte extensions from products already mapped for the entitlement,
+     * so they can be shared with the entitlement data payload of the same cert.
+     *
+     * @param productModels products as created by createProducts.
+     * @return the byte extensions for the certificate.
+     * @throws IOException if the content could not be encoded.
+     */
+    public Set<X509ByteExtensionWrapper> getByteExtensions(
+        List<org.candlepin.json.model.Product> productModels) throws IOException {
         Set<X509ByteExtensionWrapper> toReturn =
             new LinkedHashSet<X509ByteExtensionWrapper>();
 
-        EntitlementBody eb = createEntitlementBodyContent(products, ent,
-            contentPrefix, promotedContent, sub);
+        EntitlementBody eb = new EntitlementBody();
+        eb.setProducts(productModels);
 
         X509ByteExtensionWrapper bodyExtension =
             new X509ByteExtensionWrapper(OIDUtil.REDHAT_OID + "." +
@@ -126,9 +146,43 @@ public class X509V3ExtensionUtil extends X509Util{
         return processPayload(json);
     }
 
+    /**
+     * Create the entitlement data payload from products already mapped for the
+     * entitlement, so they can be shared with the byte extensions of the same cert.
+     *
+     * @param productModels products as created by createProducts.
+     * @param ent entitlement the certificate is for.
+     * @param sub subscription the entitlement was granted from.
+     * @return the compressed payload.
+     * @throws IOException if the payload could not be compressed.
+     */
+    public byte[] createEntitlementDataPayload(
+        List<org.candlepin.json.model.Product> productModels, Entitlement ent,
+        org.candlepin.model.Subscription sub) throws IOException {
+
+        EntitlementBody map = createEntitlementBody(productModels, ent, sub);
+
+        String json = toJson(map);
+        return processPayload(json);
+    }
+
 
     private byte[] retreiveContentValue(EntitlementBody eb) throws IOException {
         List<Content> contentList = getContentList(eb);
+        List<String> paths = new ArrayList<String>();
+        for (Content c : contentList) {
+            paths.add(c.getPath());
+        }
+
+        byte[] value = payloadCache.get(paths);
+        if (value == null) {
+            value = encodeContentValue(contentList);
+            payloadCache.put(paths, value);
+        }
+        return value;
+    }
+
+    private byte[] encodeContentValue(List<Content> contentList) throws IOException {
         PathNode treeRoot = makePathTree(contentList, new PathNode());
         List<String> nodeStrings = orderStrings(treeRoot);
         if (nodeStrings.size() == 0) {
@@ -142,7 +196,7 @@ public class X509V3ExtensionUtil extends X509Util{
         List<PathNode> orderedNodes = orderNodes(treeRoot);
         List<HuffNode> pathNodeHuffNodes = getPathNodeNodeList(orderedNodes);
         HuffNode pathNodeTrieParent = makeTrie(pathNodeHuffNodes);
-        data.write(makeNodeDictionary(stringTrieParent,
+        data.write(makeNodeDictionary(stringTrieParent, nodeStrings,
             pathNodeTrieParent, orderedNodes));
 
         return data.toByteArray();
@@ -153,13 +207,20 @@ public class X509V3ExtensionUtil extends X509Util{
         Map<String, EnvironmentContent> promotedContent,
         org.candlepin.model.Subscription sub) {
 
+        return createEntitlementBody(createProducts(products, contentPrefix,
+            promotedContent, ent.getConsumer(), ent), ent, sub);
+    }
+
+    public EntitlementBody createEntitlementBody(
+        List<org.candlepin.json.model.Product> productModels, Entitlement ent,
+        org.candlepin.model.Subscription sub) {
+
         EntitlementBody toReturn = new EntitlementBody();
         toReturn.setConsumer(ent.getConsumer().getUuid());
         toReturn.setQuantity(ent.getQuantity());
         toReturn.setSubscription(createSubscription(sub, ent));
         toReturn.setOrder(createOrder(sub));
-        toReturn.setProducts(createProducts(products, contentPrefix, promotedContent,
-            ent.getConsumer(), ent));
+        toReturn.setProducts(productModels);
         toReturn.setPool(createPool(ent));
 
         return toReturn;
@@ -394,22 +455,18 @@ public class X509V3ExtensionUtil extends X509Util{
      */
     public Set<ProductContent> filterProductContent(Product prod, Entitlement ent) {
         Set<ProductContent> filtered = new HashSet<ProductContent>();
+        EntitledProducts entitled = null;
 
         for (ProductContent pc : prod.getProductContent()) {
             boolean include = true;
             if (pc.getContent().getModifiedProductIds().size() > 0) {
-                include = false;
-                Set<String> prodIds = pc.getContent().getModifiedProductIds();
+                if (entitled == null) {
+                    entitled = entCurator.getEntitledProducts(ent.getConsumer());
+                }
                 // If consumer has an entitlement to just one of the modified products,
                 // we will include this content set:
-                for (String prodId : prodIds) {
-                    Set<Entitlement> entsProviding = entCurator.listProviding(
-                        ent.getConsumer(), prodId, ent.getStartDate(), ent.getEndDate());
-                    if (entsProviding.size() > 0) {
-                        include = true;
-                        break;
-                    }
-                }
+                include = entitled.providesAny(pc.getContent().getModifiedProductIds(),
+                    ent.getStartDate(), ent.getEndDate());
             }
 
             if (include) {
@@ -536,14 +593,13 @@ public class X509V3ExtensionUtil extends X509Util{
 
     private void condenseSubTreeNodes(PathNode location) {
         // "equivalent" parents are merged
-        List<PathNode> parentResult = new ArrayList<PathNode>();
-        parentResult.addAll(location.getParents());
+        Set<PathNode> removed = new HashSet<PathNode>();
         for (PathNode parent1 : location.getParents()) {
-            if (!parentResult.contains(parent1)) {
+            if (removed.contains(parent1)) {
                 continue;
             }
             for (PathNode parent2 : location.getParents()) {
-                if (!parentResult.contains(parent2) ||
+                if (removed.contains(parent2) ||
                     parent2.getId() == parent1.getId()) {
                     continue;
                 }
@@ -577,10 +633,16 @@ public class X509V3ExtensionUtil extends X509Util{
                             }
                         }
                     }
-                    parentResult.remove(toRemove);
+                    removed.add(toRemove);
                 }
             }
         }
+        List<PathNode> parentResult = new ArrayList<PathNode>();
+        for (PathNode parent : location.getParents()) {
+            if (!removed.contains(parent)) {
+                parentResult.add(parent);
+            }
+        }
         location.setParents(parentResult);
         for (PathNode pn : location.getParents()) {
             condenseSubTreeNodes(pn);
@@ -590,27 +652,20 @@ public class X509V3ExtensionUtil extends X509Util{
     public List<String> orderStrings(PathNode parent) throws IOException {
         List<String> parts = new ArrayList<String>();
         // walk tree to make string map
-        Map<String, Integer> segments =  new HashMap<String, Integer>();
+        final Map<String, Integer> segments =  new HashMap<String, Integer>();
         Set<PathNode> nodes =  new HashSet<PathNode>();
         buildSegments(segments, nodes, parent);
         for (String part : segments.keySet()) {
             if (!part.equals("")) {
-                int count = segments.get(part);
-                if (parts.size() == 0) {
-                    parts.add(part);
-                }
-                else {
-                    int pos = parts.size();
-                    for (int i = 0; i < parts.size(); i++) {
-                        if (count < segments.get(parts.get(i))) {
-                            pos = i;
-                            break;
-                        }
-                    }
-                    parts.add(pos, part);
-                }
+                parts.add(part);
             }
         }
+        // least used first, the sort is stable so equal counts keep the map order
+        Collections.sort(parts, new Comparator<String>() {
+            public int compare(String part1, String part2) {
+                return segments.get(part1).compareTo(segments.get(part2));
+            }
+        });
         if (treeDebug) {
             log.debug("Parts List: " + parts);
         }
@@ -633,26 +688,17 @@ public class X509V3ExtensionUtil extends X509Util{
     }
 
     private List<PathNode> orderNodes(PathNode treeRoot) {
-        List<PathNode> result = new ArrayList<PathNode>();
-
         // walk tree to make string map
-        Set<PathNode> nodes =  getPathNodes(treeRoot);
-        for (PathNode pn : nodes) {
-            int count = pn.getParents().size();
-            if (nodes.size() == 0) {
-                nodes.add(pn);
-            }
-            else {
-                int pos = result.size();
-                for (int i = 0; i < result.size(); i++) {
-                    if (count <= result.get(i).getParents().size()) {
-                        pos = i;
-                        break;
-                    }
-                }
-                result.add(pos, pn);
+        List<PathNode> result = new ArrayList<PathNode>(getPathNodes(treeRoot));
+
+        // fewest parents first, nodes with the same number of parents in reverse
+        // of the set order.
+        Collections.reverse(result);
+        Collections.sort(result, new Comparator<PathNode>() {
+            public int compare(PathNode node1, PathNode node2) {
+                return node1.getParents().size() - node2.getParents().size();
             }
-        }
+        });
         if (treeDebug) {
             log.debug(result);
         }
@@ -661,14 +707,20 @@ public class X509V3ExtensionUtil extends X509Util{
 
     private Set<PathNode> getPathNodes(PathNode treeRoot) {
         Set<PathNode> nodes = new HashSet<PathNode>();
-        nodes.add(treeRoot);
-        for (NodePair np : treeRoot.getChildren()) {
-            nodes.addAll(getPathNodes(np.getConnection()));
-        }
+        addPathNodes(treeRoot, nodes);
         return nodes;
     }
 
-    private byte[] makeNodeDictionary(HuffNode stringParent,
+    private void addPathNodes(PathNode node, Set<PathNode> nodes) {
+        // merged nodes are reachable from several parents, only walk them once
+        if (nodes.add(node)) {
+            for (NodePair np : node.getChildren()) {
+                addPathNodes(np.getConnection(), nodes);
+            }
+        }
+    }
+
+    private byte[] makeNodeDictionary(HuffNode stringParent, List<String> strings,
         HuffNode pathNodeParent, List<PathNode> pathNodes)
         throws UnsupportedEncodingException, IOException {
 
@@ -693,37 +745,30 @@ public class X509V3ExtensionUtil extends X509Util{
         else {
             baos.write(nodeSize);
         }
-        StringBuffer bits = new StringBuffer();
-        String endNodeLocation = findHuffPath(stringParent, END_NODE);
+        // Look up every code once rather than searching the tries for each child.
+        Map<Object, Integer> stringIndex = new HashMap<Object, Integer>();
+        for (String s : strings) {
+            stringIndex.put(s, stringIndex.size());
+        }
+        stringIndex.put(END_NODE, stringIndex.size());
+        HuffCodes stringCodes = new HuffCodes(stringParent, stringIndex);
+
+        Map<Object, Integer> nodeIndex = new HashMap<Object, Integer>();
         for (PathNode pn : pathNodes) {
-            for (NodePair np : pn.getChildren()) {
-                bits.append(findHuffPath(stringParent, np.getName()));
-                bits.append(findHuffPath(pathNodeParent, np.getConnection()));
-            }
-            bits.append(endNodeLocation);
-            while (bits.length() >= 8) {
-                int next = 0;
-                for (int i = 0; i < 8; i++) {
-                    next = (byte) next << 1;
-                    if (bits.charAt(i) == '1') {
-                        next++;
-                    }
-                }
-                baos.write(next);
-                bits.delete(0, 8);
-            }
+            nodeIndex.put(pn, nodeIndex.size());
         }
+        HuffCodes nodeCodes = new HuffCodes(pathNodeParent, nodeIndex);
 
-        if (bits.length() > 0) {
-            int next = 0;
-            for (int i = 0;  i < 8; i++) {
-                next = (byte) next << 1;
-                if (i < bits.length() && bits.charAt(i) == '1') {
-                    next++;
-                }
+        BitWriter bits = new BitWriter(baos);
+        int endNodeLocation = stringIndex.get(END_NODE);
+        for (PathNode pn : pathNodes) {
+            for (NodePair np : pn.getChildren()) {
+                stringCodes.write(bits, stringIndex.get(np.getName()));
+                nodeCodes.write(bits, nodeIndex.get(np.getConnection()));
             }
-            baos.write(next);
+            stringCodes.write(bits, endNodeLocation);
         }
+        bits.flush();
         byte[] result = baos.toByteArray();
         if (treeDebug) {
             ByteArrayInputStream bais = new ByteArrayInputStream(result);
@@ -825,32 +870,19 @@ public class X509V3ExtensionUtil extends X509Util{
         if (nodesList.get(0).getValue() instanceof PathNode) {
             nodesList.remove(0);
         }
-        while (nodesList.size() > 1) {
-            int node1 = findSmallest(-1, nodesList);
-            int node2 = findSmallest(node1, nodesList);
-            HuffNode hn1 = nodesList.get(node1);
-            HuffNode hn2 = nodesList.get(node2);
-            HuffNode merged = mergeNodes(hn1, hn2);
-            nodesList.remove(hn1);
-            nodesList.remove(hn2);
-            nodesList.add(merged);
+        HuffQueue queue = new HuffQueue(nodesList);
+        while (queue.size() > 1) {
+            HuffNode hn1 = queue.poll();
+            HuffNode hn2 = queue.poll();
+            queue.add(mergeNodes(hn1, hn2));
         }
+        HuffNode root = queue.poll();
+        nodesList.clear();
+        nodesList.add(root);
         if (treeDebug) {
-            printTrie(nodesList.get(0), 0);
+            printTrie(root, 0);
         }
-        return nodesList.get(0);
-    }
-
-    private int findSmallest(int exclude, List<HuffNode> nodes) {
-        int smallest = -1;
-        for (int index = 0; index < nodes.size(); index++) {
-            if (index == exclude) { continue; }
-            if (smallest == -1 || nodes.get(index).getWeight() <
-                nodes.get(smallest).getWeight()) {
-                smallest = index;
-            }
-        }
-        return smallest;
+        return root;
     }
 
     private HuffNode mergeNodes(HuffNode node1, HuffNode node2) {
@@ -872,15 +904,15 @@ public class X509V3ExtensionUtil extends X509Util{
         ios.finish();
         long read = i.getBytesRead();
 
-        String name = "";
+        StringBuilder name = new StringBuilder();
         int weight = 1;
         for (byte b : baos.toByteArray()) {
             if (b == '\0') {
-                pathDictionary.add(new HuffNode(name, weight++));
-                name = "";
+                pathDictionary.add(new HuffNode(name.toString(), weight++));
+                name.setLength(0);
             }
             else {
-                name += (char) b;
+                name.append((char) b);
             }
         }
         pathDictionary.add(new HuffNode(END_NODE, weight));
@@ -888,7 +920,6 @@ public class X509V3ExtensionUtil extends X509Util{
         triePathDictionary.addAll(pathDictionary);
         HuffNode pathTrie = makeTrie(triePathDictionary);
 
-        StringBuffer nodeBits = new StringBuffer();
         ByteArrayInputStream bais = new ByteArrayInputStream(payload, (int) read,
             (int) (payload.length - read));
 
@@ -904,15 +935,9 @@ public class X509V3ExtensionUtil extends X509Util{
             }
             nodeCount = total;
         }
-        value = bais.read();
-        while (value != -1) {
-            String someBits = Integer.toString(value, 2);
-            for (int pad = 0; pad < 8 - someBits.length(); pad++) {
-                nodeBits.append("0");
-            }
-            nodeBits.append(someBits);
-            value = bais.read();
-        }
+        byte[] nodeBytes = new byte[bais.available()];
+        bais.read(nodeBytes);
+        BitReader nodeBits = new BitReader(nodeBytes);
         for (int j = 0; j < nodeCount; j++) {
             nodeDictionary.add(new HuffNode(new PathNode(), j));
         }
@@ -959,7 +984,7 @@ public class X509V3ExtensionUtil extends X509Util{
     }
 
     private Set<PathNode> populatePathNodes(List<HuffNode> nodeDictionary,
-        HuffNode pathTrie, HuffNode nodeTrie, StringBuffer nodeBits) {
+        HuffNode pathTrie, HuffNode nodeTrie, BitReader nodeBits) {
         Set<PathNode> pathNodes = new HashSet<PathNode>();
         for (HuffNode node : nodeDictionary) {
             pathNodes.add((PathNode) node.getValue());
@@ -968,12 +993,10 @@ public class X509V3ExtensionUtil extends X509Util{
                 // get first child name
                 // if its END_NODE we are done
                 String nameValue = null;
-                StringBuffer nameBits = new StringBuffer();
+                HuffNode nameLocation = pathTrie;
                 while (nameValue == null && stillNode) {
-                    nameBits.append(nodeBits.charAt(0));
-                    nodeBits.deleteCharAt(0);
-                    Object lookupValue = findHuffNodeValueByBits(pathTrie,
-                        nameBits.toString());
+                    nameLocation = nextHuffNode(nameLocation, nodeBits.next());
+                    Object lookupValue = nameLocation.getValue();
                     if (lookupValue != null) {
                         if (lookupValue.equals(END_NODE)) {
                             stillNode = false;
@@ -981,25 +1004,23 @@ public class X509V3ExtensionUtil extends X509Util{
                         }
                         nameValue = (String) lookupValue;
                     }
-                    if (nodeBits.length() == 0) {
+                    if (!nodeBits.hasNext()) {
                         stillNode = false;
                     }
                 }
 
                 PathNode nodeValue = null;
-                StringBuffer pathBits = new StringBuffer();
+                HuffNode pathLocation = nodeTrie;
                 while (nodeValue == null && stillNode) {
-                    pathBits.append(nodeBits.charAt(0));
-                    nodeBits.deleteCharAt(0);
-                    PathNode lookupValue = (PathNode) findHuffNodeValueByBits(nodeTrie,
-                        pathBits.toString());
+                    pathLocation = nextHuffNode(pathLocation, nodeBits.next());
+                    PathNode lookupValue = (PathNode) pathLocation.getValue();
                     if (lookupValue != null) {
                         nodeValue = lookupValue;
                         nodeValue.addParent((PathNode) node.getValue());
                         ((PathNode) node.getValue()).addChild(
                             new NodePair(nameValue, nodeValue));
                     }
-                    if (nodeBits.length() == 0) {
+                    if (!nodeBits.hasNext()) {
                         stillNode = false;
                     }
                 }
@@ -1008,6 +1029,14 @@ public class X509V3ExtensionUtil extends X509Util{
         return pathNodes;
     }
 
+    private HuffNode nextHuffNode(HuffNode trie, int bit) {
+        HuffNode next = bit == 0 ? trie.getLeft() : trie.getRight();
+        if (next == null) {
+            throw new RuntimeException("Encoded path not in trie");
+        }
+        return next;
+    }
+
     private void makeURLs(PathNode root, List<String> urls, StringBuffer aPath) {
         if (root.getChildren().size() == 0) {
             urls.add(aPath.toString());
@@ -1102,7 +1131,19 @@ public class X509V3ExtensionUtil extends X509Util{
         }
 
         void addChild(NodePair cp) {
-            this.children.add(cp);
+            // keep children sorted by name, after any others with the same name
+            int low = 0;
+            int high = children.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (children.get(mid).compareTo(cp) <= 0) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            this.children.add(low, cp);
         }
 
         void addParent(PathNode cp) {
@@ -1112,7 +1153,6 @@ public class X509V3ExtensionUtil extends X509Util{
         }
 
         public List<NodePair> getChildren() {
-            Collections.sort(this.children);
             return this.children;
         }
 
@@ -1170,6 +1210,154 @@ public class X509V3ExtensionUtil extends X509Util{
         }
     }
 
+    /**
+     * HuffQueue
+     *
+     * Hands out the nodes of a trie being built smallest weight first. Ties go to
+     * the original nodes in list order, then to merged nodes in the order they
+     * were added. The original nodes are sorted once, and merged nodes are never
+     * lighter than the ones added before them, so both are kept in plain arrays.
+     */
+    private static class HuffQueue {
+        private HuffNode[] nodes;
+        private int nodeHead = 0;
+        private HuffNode[] merged;
+        private int mergedHead = 0;
+        private int mergedTail = 0;
+
+        HuffQueue(List<HuffNode> nodesList) {
+            nodes = nodesList.toArray(new HuffNode[nodesList.size()]);
+            // stable, nodes of equal weight keep their list order
+            Arrays.sort(nodes, new Comparator<HuffNode>() {
+                public int compare(HuffNode node1, HuffNode node2) {
+                    return node1.getWeight() < node2.getWeight() ? -1 :
+                        (node1.getWeight() == node2.getWeight() ? 0 : 1);
+                }
+            });
+            merged = new HuffNode[Math.max(nodes.length - 1, 1)];
+        }
+
+        int size() {
+            return (nodes.length - nodeHead) + (mergedTail - mergedHead);
+        }
+
+        HuffNode poll() {
+            if (nodeHead < nodes.length && (mergedHead == mergedTail ||
+                nodes[nodeHead].getWeight() <= merged[mergedHead].getWeight())) {
+                return nodes[nodeHead++];
+            }
+            return merged[mergedHead++];
+        }
+
+        void add(HuffNode node) {
+            merged[mergedTail++] = node;
+        }
+    }
+
+    /**
+     * HuffCodes
+     *
+     * The bit path to each value of a trie, indexed by the position the value was
+     * given. Values not in the trie get an empty path, as from findHuffPath.
+     */
+    private static class HuffCodes {
+        private long[] codes;
+        private int[] lengths;
+
+        HuffCodes(HuffNode trie, Map<Object, Integer> index) {
+            codes = new long[index.size()];
+            lengths = new int[index.size()];
+            collect(trie, 0L, 0, index);
+        }
+
+        private void collect(HuffNode node, long code, int length,
+            Map<Object, Integer> index) {
+            if (node.getValue() != null) {
+                Integer position = index.get(node.getValue());
+                if (position != null) {
+                    codes[position] = code;
+                    lengths[position] = length;
+                }
+                return;
+            }
+            // depth is bounded by the total weight, well within a long
+            if (node.getLeft() != null) {
+                collect(node.getLeft(), code << 1, length + 1, index);
+            }
+            if (node.getRight() != null) {
+                collect(node.getRight(), (code << 1) | 1L, length + 1, index);
+            }
+        }
+
+        void write(BitWriter bits, Integer position) {
+            if (position != null) {
+                bits.write(codes[position], lengths[position]);
+            }
+        }
+    }
+
+    /**
+     * BitWriter
+     *
+     * Packs bits into bytes, first bit in the high order position, padding the
+     * last byte with zeros.
+     */
+    private static class BitWriter {
+        private ByteArrayOutputStream out;
+        private int pending = 0;
+        private int pendingCount = 0;
+
+        BitWriter(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        void write(long code, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                pending = (pending << 1) | (int) ((code >>> i) & 1L);
+                if (++pendingCount == 8) {
+                    out.write(pending);
+                    pending = 0;
+                    pendingCount = 0;
+                }
+            }
+        }
+
+        void flush() {
+            if (pendingCount > 0) {
+                out.write(pending << (8 - pendingCount));
+                pending = 0;
+                pendingCount = 0;
+            }
+        }
+    }
+
+    /**
+     * BitReader
+     *
+     * Reads back the bits packed by a BitWriter.
+     */
+    private static class BitReader {
+        private byte[] data;
+        private int position = 0;
+
+        BitReader(byte[] data) {
+            this.data = data;
+        }
+
+        boolean hasNext() {
+            return position < data.length * 8;
+        }
+
+        int next() {
+            if (!hasNext()) {
+                throw new RuntimeException("Encoded path not in trie");
+            }
+            int bit = (data[position >> 3] >> (7 - (position & 7))) & 1;
+            position++;
+            return bit;
+        }
+    }
+
     /**
      *
      * NodePair
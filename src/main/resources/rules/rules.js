@@ -1,4 +1,4 @@
-// Version: 3.1
+// Version: 3.3
 
 /*
  * Default Candlepin rule set.
@@ -1304,6 +1304,26 @@ var Entitlement = {
             context.pool = createPool(context.pool);
         }
 
+        return Entitlement.add_attribute_functions(context);
+    },
+
+    // Builds the context for a single pool out of a batch context, which
+    // carries the shared consumer data once and a list of pools.
+    get_pool_attribute_context: function(batchContext, pool) {
+        var poolContext = {
+            consumer: batchContext.consumer,
+            consumerEntitlements: batchContext.consumerEntitlements,
+            hostConsumer: batchContext.hostConsumer,
+            standalone: batchContext.standalone,
+            quantity: batchContext.quantity,
+            caller: batchContext.caller,
+            pool: createPool(pool)
+        };
+
+        return Entitlement.add_attribute_functions(poolContext);
+    },
+
+    add_attribute_functions: function(context) {
         context.hasEntitlement = function(poolId) {
             for (var k = 0; k < this.consumerEntitlements.length; k++) {
                 var e = this.consumerEntitlements[k];
@@ -1328,9 +1348,9 @@ var Entitlement = {
         return context;
     },
 
-    pre_virt_only: function() {
+    pre_virt_only: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         var virt_pool = Utils.equalsIgnoreCase('true', context.getAttribute(context.pool, 'virt_only'));
         var guest = Utils.isGuest(context.consumer);
@@ -1341,9 +1361,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_requires_host: function() {
+    pre_requires_host: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         // It shouldn't be possible to get a host restricted pool in hosted, but just in
         // case, make sure it won't be enforced if we do.
@@ -1364,9 +1384,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_requires_consumer_type: function() {
+    pre_requires_consumer_type: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         var requiresConsumerType = context.getAttribute(context.pool, "requires_consumer_type");
         if (requiresConsumerType != null &&
@@ -1380,9 +1400,9 @@ var Entitlement = {
     pre_virt_limit: function() {
     },
 
-    pre_architecture: function() {
+    pre_architecture: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
         if (!architectureMatches(context.pool.getProductAttribute('arch'),
                                  context.consumer.facts['uname.machine'],
                                  context.consumer.type.label)) {
@@ -1391,9 +1411,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_sockets: function() {
+    pre_sockets: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         var consumer = context.consumer;
         var pool = context.pool;
@@ -1409,9 +1429,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_cores: function() {
+    pre_cores: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         var consumer = context.consumer;
         var pool = context.pool;
@@ -1426,9 +1446,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_ram: function() {
+    pre_ram: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
         var consumerRam = FactValueCalculator.getFact(RAM_ATTRIBUTE, context.consumer);
         log.debug("Consumer has " + consumerRam + "GB of RAM.");
 
@@ -1440,9 +1460,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_instance_multiplier: function() {
+    pre_instance_multiplier: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
         var pool = context.pool;
         var caller = context.caller;
         log.debug("pre_instance_multiplier being called by [" + caller + "]");
@@ -1466,9 +1486,9 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
-    pre_global: function() {
+    pre_global: function(poolContext) {
         var result = Entitlement.ValidationResult();
-        context = Entitlement.get_attribute_context();
+        context = poolContext || Entitlement.get_attribute_context();
 
         var consumer = context.consumer;
         var pool = context.pool;
@@ -1513,6 +1533,39 @@ var Entitlement = {
         return JSON.stringify(result);
     },
 
+    // Runs the pre-entitlement rules against a list of pools in one call, so
+    // the consumer is only serialized and parsed once. The engine provides the
+    // names of the rules to run for each pool, results are returned in the
+    // same order as the pools.
+    pre_entitlement_batch: function() {
+        var batchContext = JSON.parse(json_context);
+        var results = [];
+
+        for (var i = 0; i < batchContext.pools.length; i++) {
+            var poolContext = Entitlement.get_pool_attribute_context(batchContext,
+                batchContext.pools[i]);
+            var poolResult = Entitlement.ValidationResult();
+            var ruleNames = batchContext.poolRules[i];
+
+            for (var j = 0; j < ruleNames.length; j++) {
+                var rule = Entitlement["pre_" + ruleNames[j]];
+                if (typeof rule != "function") {
+                    continue;
+                }
+                var ruleJson = rule(poolContext);
+                // Rules which do not return anything are skipped, same as
+                // when they are invoked individually.
+                if (ruleJson) {
+                    var ruleResult = JSON.parse(ruleJson);
+                    poolResult.errors = poolResult.errors.concat(ruleResult.errors);
+                    poolResult.warnings = poolResult.warnings.concat(ruleResult.warnings);
+                }
+            }
+            results.push(poolResult);
+        }
+        return JSON.stringify(results);
+    }
+
 }
 
 var Autobind = {
@@ -1549,7 +1602,23 @@ var Autobind = {
 
     select_pools: function() {
         var context = this.create_autobind_context();
+        var pools_by_class = Autobind.get_pools_by_class(context);
+
+        var selected_pools;
+        if (context.solver && context.solver.mode == "exhaustive") {
+            selected_pools = Autobind.select_pools_exhaustive(context, pools_by_class);
+        }
+        else {
+            selected_pools = Autobind.select_pools_bounded(context, pools_by_class);
+        }
 
+        // We may not have selected pools for all products; that's ok.
+        selected_pools.dump("selected_pools");
+        var output = JSON.stringify(selected_pools.map);
+        return output;
+    },
+
+    get_pools_by_class: function(context) {
         // Greedy selection for now, in order
         // XXX need to watch out for multientitle products - how so?
 
@@ -1651,6 +1720,12 @@ var Autobind = {
             }
         }
 
+        return pools_by_class;
+    },
+
+    // Checks every combination of pool classes, exponential in the number of
+    // classes. Kept as the reference implementation for the bounded search.
+    select_pools_exhaustive: function(context, pools_by_class) {
         var candidate_combos = powerSet(pools_by_class, context.products.length);
 
         log.debug("Selecting " + context.products.length + " products from " + pools_by_class.length +
@@ -1732,10 +1807,355 @@ var Autobind = {
             }
         }
 
-        // We may not have selected pools for all products; that's ok.
-        selected_pools.dump("selected_pools");
-        var output = JSON.stringify(selected_pools.map);
-        return output;
+        return selected_pools;
+    },
+
+    /*
+     * Branch and bound search for the same selection the exhaustive search makes,
+     * among the combinations of pool classes with at most one class per requested
+     * product and no overlapping products between classes which are not
+     * multi-entitlement.
+     *
+     * The first pass finds how many requested products can be covered, seeded with
+     * a greedy selection and dropping branches that can no longer beat the best
+     * selection found so far. The second pass replays the exhaustive search's own
+     * choice among the combinations covering that many products, skipping any
+     * branch it could not pick from. The stacking pools for each class are only
+     * computed once. If the node or time budget in context.solver runs out, the
+     * best selection of the first pass is returned instead.
+     */
+    select_pools_bounded: function(context, pools_by_class) {
+        var solver = context.solver || {};
+        var maxNodes = solver.maxNodes > 0 ? solver.maxNodes : 0;
+        var deadline = solver.maxMillis > 0 ?
+            new Date().getTime() + solver.maxMillis : 0;
+        var limit = context.products.length;
+
+        // Visit the classes in the order the exhaustive search combines them, so
+        // product overlap is resolved the same way.
+        var classes = [];
+        for (var i = pools_by_class.length - 1; i >= 0; i--) {
+            classes.push({
+                index: classes.length,
+                pools: pools_by_class[i],
+                provided: getRelevantProvidedProducts(pools_by_class[i][0],
+                    context.products),
+                stacking: null,
+                quantity: 0,
+                size: 0
+            });
+        }
+
+        // remaining[k] holds every requested product provided by classes k and up,
+        // used to bound the coverage a branch can still reach.
+        var remaining = [];
+        remaining[classes.length] = [];
+        for (var k = classes.length - 1; k >= 0; k--) {
+            remaining[k] = remaining[k + 1].slice(0);
+            for (var n = 0; n < classes[k].provided.length; n++) {
+                if (!contains(remaining[k], classes[k].provided[n])) {
+                    remaining[k].push(classes[k].provided[n]);
+                }
+            }
+        }
+
+        // Stacking results only depend on the class, compute them once.
+        var stack = function(poolClass) {
+            if (poolClass.stacking == null) {
+                poolClass.stacking = findStackingPools(poolClass.pools, context.consumer,
+                    context.compliance);
+                var values = poolClass.stacking.values();
+                for (var v = 0; v < values.length; v++) {
+                    poolClass.quantity += values[v];
+                }
+                poolClass.size = values.length;
+            }
+            return poolClass;
+        };
+
+        // Same check as hasNoProductOverlap, for a class added after the
+        // classes whose products are counted in seen.
+        var overlaps = function(poolClass, seen) {
+            var pool = poolClass.pools[0];
+            if (pool.getProductAttribute("multi-entitlement") == "yes") {
+                return false;
+            }
+            var products = pool.products();
+            var local = {};
+            for (var m = 0; m < products.length; m++) {
+                if (seen[products[m]] > 0 || local[products[m]]) {
+                    return true;
+                }
+                local[products[m]] = true;
+            }
+            return false;
+        };
+
+        var countProducts = function(poolClass, seen, delta) {
+            var products = poolClass.pools[0].products();
+            for (var m = 0; m < products.length; m++) {
+                seen[products[m]] = (seen[products[m]] || 0) + delta;
+            }
+        };
+
+        // Whether combination a comes before b in the exhaustive search. Both
+        // are in search order: largest class first, the rest by ascending class.
+        var precedes = function(a, b) {
+            if (a.length == 0 || b.length == 0) {
+                return a.length > 0;
+            }
+            if (a[0].index != b[0].index) {
+                return a[0].index < b[0].index;
+            }
+            for (var m = 1; m < a.length && m < b.length; m++) {
+                if (a[m].index != b[m].index) {
+                    return a[m].index > b[m].index;
+                }
+            }
+            return a.length < b.length;
+        };
+
+        // Whether any extension of prefix (classes added after the last one)
+        // could come before b in the exhaustive search.
+        var mayPrecede = function(prefix, b) {
+            if (prefix.length == 0 || b.length == 0) {
+                return true;
+            }
+            if (prefix[0].index != b[0].index) {
+                return prefix[0].index < b[0].index;
+            }
+            for (var m = 1; m < prefix.length && m < b.length; m++) {
+                if (prefix[m].index != b[m].index) {
+                    return prefix[m].index > b[m].index;
+                }
+            }
+            return prefix.length < b.length;
+        };
+
+        // Current branch state.
+        var chosen = [];
+        var seen = {};
+        var covered = {};
+        var coveredCount = 0;
+        var entitlements = 0;
+        var selectedSize = 0;
+
+        var add = function(poolClass) {
+            stack(poolClass);
+            chosen.push(poolClass);
+            countProducts(poolClass, seen, 1);
+            for (var m = 0; m < poolClass.provided.length; m++) {
+                var pid = poolClass.provided[m];
+                covered[pid] = (covered[pid] || 0) + 1;
+                if (covered[pid] == 1) {
+                    coveredCount++;
+                }
+            }
+            entitlements += poolClass.quantity;
+            selectedSize += poolClass.size;
+        };
+
+        var remove = function(poolClass) {
+            chosen.pop();
+            countProducts(poolClass, seen, -1);
+            for (var m = 0; m < poolClass.provided.length; m++) {
+                var pid = poolClass.provided[m];
+                covered[pid]--;
+                if (covered[pid] == 0) {
+                    coveredCount--;
+                }
+            }
+            entitlements -= poolClass.quantity;
+            selectedSize -= poolClass.size;
+        };
+
+        var best = {
+            chosen: [],
+            covered: 0,
+            entitlements: 0
+        };
+        var recordIfBetter = function() {
+            if (selectedSize == 0 || coveredCount < best.covered) {
+                return;
+            }
+            if (coveredCount > best.covered || entitlements < best.entitlements ||
+                (entitlements == best.entitlements && precedes(chosen, best.chosen))) {
+                best.chosen = chosen.slice(0);
+                best.covered = coveredCount;
+                best.entitlements = entitlements;
+            }
+        };
+
+        // Overlap depends on the order classes are combined in, so a greedy
+        // candidate is checked against the chosen classes in search order.
+        var fits = function(poolClass) {
+            var combination = chosen.concat([poolClass]);
+            combination.sort(function(a, b) { return a.index - b.index; });
+            var combined = {};
+            for (var m = 0; m < combination.length; m++) {
+                if (overlaps(combination[m], combined)) {
+                    return false;
+                }
+                countProducts(combination[m], combined, 1);
+            }
+            return true;
+        };
+
+        var gain = function(poolClass) {
+            var count = 0;
+            for (var m = 0; m < poolClass.provided.length; m++) {
+                if (!(covered[poolClass.provided[m]] > 0)) {
+                    count++;
+                }
+            }
+            return count;
+        };
+
+        // Greedy seed: keep taking the class adding the most coverage, preferring
+        // fewer entitlements.
+        var used = [];
+        while (chosen.length < limit) {
+            var pick = -1;
+            var pickGain = 0;
+            for (var c = 0; c < classes.length; c++) {
+                if (used[c] || !fits(classes[c])) {
+                    continue;
+                }
+                var g = gain(classes[c]);
+                if (g > pickGain || (g > 0 && g == pickGain &&
+                        stack(classes[c]).quantity < stack(classes[pick]).quantity)) {
+                    pick = c;
+                    pickGain = g;
+                }
+            }
+            if (pick < 0) {
+                break;
+            }
+            used[pick] = true;
+            add(classes[pick]);
+        }
+        // Keep the search order within the seed so ties compare correctly.
+        chosen.sort(function(a, b) { return a.index - b.index; });
+        recordIfBetter();
+        while (chosen.length > 0) {
+            remove(chosen[chosen.length - 1]);
+        }
+        log.debug("Greedy selection covers " + best.covered + " products using " +
+            best.entitlements + " entitlements");
+
+        var nodes = 0;
+        var exhausted = false;
+        var search = function(k) {
+            if (exhausted) {
+                return;
+            }
+            nodes++;
+            if ((maxNodes > 0 && nodes > maxNodes) ||
+                (deadline > 0 && new Date().getTime() > deadline)) {
+                exhausted = true;
+                return;
+            }
+            if (k == classes.length) {
+                return;
+            }
+
+            var bound = coveredCount;
+            for (var m = 0; m < remaining[k].length; m++) {
+                if (!(covered[remaining[k][m]] > 0)) {
+                    bound++;
+                }
+            }
+            if (bound < best.covered || (bound == best.covered &&
+                    (entitlements > best.entitlements ||
+                    (entitlements == best.entitlements &&
+                    !mayPrecede(chosen, best.chosen))))) {
+                return;
+            }
+
+            var poolClass = classes[k];
+            if (chosen.length < limit && !overlaps(poolClass, seen)) {
+                add(poolClass);
+                recordIfBetter();
+                search(k + 1);
+                remove(poolClass);
+            }
+            search(k + 1);
+        };
+        search(0);
+
+        // The exhaustive search does not simply keep the cheapest combination:
+        // once it has one covering the most products, it moves on to any later
+        // combination covering as many with fewer classes than the entitlements
+        // it currently uses. Replay that over the combinations covering
+        // best.covered products, in the order the exhaustive search sees them:
+        // singletons by ascending class, each followed by its extensions with
+        // one more class, by descending class.
+        var replayed = null;
+        var replayedEntitlements = 0;
+        var replay = function(last) {
+            nodes++;
+            if ((maxNodes > 0 && nodes > maxNodes) ||
+                (deadline > 0 && new Date().getTime() > deadline)) {
+                exhausted = true;
+                return;
+            }
+            if (coveredCount == best.covered && selectedSize > 0 &&
+                    (replayed == null || chosen.length < replayedEntitlements)) {
+                replayed = chosen.slice(0);
+                replayedEntitlements = entitlements;
+            }
+            if (chosen.length >= limit) {
+                return;
+            }
+            for (var j = classes.length - 1; j > last && !exhausted; j--) {
+                descend(j);
+            }
+        };
+        // Visits the combination extended with class j, unless no combination
+        // in its subtree could be picked.
+        var descend = function(j) {
+            var poolClass = classes[j];
+            if (overlaps(poolClass, seen) ||
+                    (replayed != null && chosen.length + 1 >= replayedEntitlements)) {
+                return;
+            }
+            add(poolClass);
+            var bound = coveredCount;
+            for (var m = 0; m < remaining[j + 1].length; m++) {
+                if (!(covered[remaining[j + 1][m]] > 0)) {
+                    bound++;
+                }
+            }
+            if (bound >= best.covered) {
+                replay(j);
+            }
+            remove(poolClass);
+        };
+        if (!exhausted && best.covered > 0) {
+            for (var j = 0; j < classes.length && !exhausted; j++) {
+                descend(j);
+            }
+            if (!exhausted) {
+                best.chosen = replayed;
+            }
+        }
+
+        if (exhausted) {
+            log.warn("Autobind search budget exhausted after " + nodes +
+                " nodes, using the best selection found so far.");
+        }
+        else if (best.covered == 0) {
+            // the exhaustive search never picks a combination covering nothing
+            best.chosen = [];
+        }
+        log.debug("Selected " + best.chosen.length + " pool classes after searching " +
+            nodes + " nodes.");
+
+        var selected_pools = Utils.getJsMap();
+        for (var m = 0; m < best.chosen.length; m++) {
+            selected_pools.putAll(best.chosen[m].stacking);
+        }
+        return selected_pools;
     }
 }
 
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.auth.PrincipalData;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+
+/**
+ * BatchListenerWrapperTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchListenerWrapperTest {
+
+    @Mock private BatchEventListener listener;
+    @Mock private ClientSession session;
+    @Mock private ClientConsumer consumer;
+    @Mock private ClientMessage first;
+    @Mock private ClientMessage second;
+    @Mock private ClientMessage third;
+    private BatchListenerWrapper wrapper;
+
+    @Before
+    public void init() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (ClientMessage msg : new ClientMessage[] {first, second, third}) {
+            Event event = new Event();
+            event.setPrincipal(new PrincipalData("5678", "910112"));
+            when(msg.getBodyBuffer()).thenReturn(HornetQBuffers.dynamicBuffer(100));
+            msg.getBodyBuffer().writeString(mapper.writeValueAsString(event));
+        }
+        when(listener.getBatchSize()).thenReturn(2);
+        when(listener.getBatchWait()).thenReturn(60000L);
+        wrapper = new BatchListenerWrapper(listener, mapper, session, consumer,
+            new ListenerStats());
+    }
+
+    @Test
+    public void nothingToReceive() throws Exception {
+        assertEquals(0, wrapper.drainBatch());
+        verify(session, never()).commit();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void batchIsAcknowledgedAfterListenerReturns() throws Exception {
+        when(consumer.receive(anyLong())).thenReturn(first, second, third);
+        ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+
+        assertEquals(2, wrapper.drainBatch());
+
+        verify(listener).onEvents(events.capture());
+        assertEquals(2, events.getValue().size());
+        verify(first).acknowledge();
+        verify(second).acknowledge();
+        verify(third, never()).acknowledge();
+        verify(session).commit();
+    }
+
+    @Test
+    public void failedBatchFallsBackToSingleEvents() throws Exception {
+        ListenerStats stats = new ListenerStats();
+        wrapper = new BatchListenerWrapper(listener, new ObjectMapper(), session,
+            consumer, stats);
+        when(consumer.receive(anyLong())).thenReturn(first, second);
+        doThrow(new RuntimeException("constraint violation"))
+            .when(listener).onEvents(anyListOf(Event.class));
+        // the first event is fine, the second one fails on its own too:
+        doNothing().doThrow(new RuntimeException("constraint violation"))
+            .when(listener).onEvent(any(Event.class));
+
+        assertEquals(2, wrapper.drainBatch());
+
+        verify(listener, times(2)).onEvent(any(Event.class));
+        verify(first).acknowledge();
+        verify(second).acknowledge();
+        verify(session).commit();
+        verify(session, never()).rollback();
+        assertEquals(1, stats.getProcessed());
+    }
+
+    @Test
+    public void processedEventsAreCounted() throws Exception {
+        ListenerStats stats = new ListenerStats();
+        wrapper = new BatchListenerWrapper(listener, new ObjectMapper(), session,
+            consumer, stats);
+        when(consumer.receive(anyLong())).thenReturn(first, second);
+
+        wrapper.drainBatch();
+
+        assertEquals(2, stats.getProcessed());
+    }
+}
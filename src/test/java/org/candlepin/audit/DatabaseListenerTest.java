@@ -15,10 +15,12 @@
 package org.candlepin.audit;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.EventCurator;
 
 import org.junit.Before;
@@ -27,6 +29,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
  * DatabaseListenerTest
@@ -40,7 +45,7 @@ public class DatabaseListenerTest {
 
     @Before
     public void init() {
-        dl = new DatabaseListener(ec);
+        dl = new DatabaseListener(ec, new CandlepinCommonTestConfig());
     }
 
     @Test
@@ -58,7 +63,16 @@ public class DatabaseListenerTest {
 
     @Test(expected = NullPointerException.class)
     public void curatorNull() {
-        DatabaseListener localdl = new DatabaseListener(null);
+        DatabaseListener localdl = new DatabaseListener(null,
+            new CandlepinCommonTestConfig());
         localdl.onEvent(event);
     }
+
+    @Test
+    public void onEventsCreatesAllInOneCall() {
+        List<Event> events = Arrays.asList(event, mock(Event.class));
+        dl.onEvents(events);
+        verify(ec).createAll(events);
+        verify(ec, never()).create(any(Event.class));
+    }
 }
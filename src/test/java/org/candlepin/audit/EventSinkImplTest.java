@@ -15,6 +15,7 @@
 package org.candlepin.audit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -25,6 +26,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.ArgumentCaptor;
@@ -39,9 +41,14 @@ import org.candlepin.model.Pool;
 import org.candlepin.model.Rules;
 import org.candlepin.test.TestUtil;
 import org.codehaus.jackson.JsonGenerationException;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.hornetq.api.core.HornetQBuffers;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.Message;
+import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.client.ClientMessage;
 import org.hornetq.api.core.client.ClientProducer;
 import org.hornetq.api.core.client.ClientSession;
@@ -55,6 +62,13 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.ArrayList;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import com.google.inject.Provider;
+
 /**
  * EventSinkImplTest
  */
@@ -67,8 +81,14 @@ public class EventSinkImplTest {
     @Mock private ClientMessage mockClientMessage;
     @Mock private PrincipalProvider mockPrincipalProvider;
     @Mock private ServerLocator mockLocator;
+    @Mock private Provider<EntityManager> mockEntityManagerProvider;
+    @Mock private EntityManager mockEntityManager;
+    @Mock private EntityTransaction mockEntityTransaction;
+    @Mock private Session mockSession;
+    @Mock private Transaction mockTransaction;
     private EventFactory factory;
     private EventSinkImpl eventSinkImpl;
+    private EventSinkStats stats;
     private Principal principal;
     private ObjectMapper mapper;
 
@@ -77,13 +97,19 @@ public class EventSinkImplTest {
         this.factory = new EventFactory(mockPrincipalProvider);
         this.principal = TestUtil.createOwnerPrincipal();
         when(mockPrincipalProvider.get()).thenReturn(this.principal);
-        when(mockSessionFactory.createSession()).thenReturn(mockClientSession);
+        when(mockSessionFactory.createSession(anyBoolean(), anyBoolean()))
+            .thenReturn(mockClientSession);
         when(mockClientSession.createProducer(anyString())).thenReturn(mockClientProducer);
         when(mockClientSession.createMessage(anyBoolean())).thenReturn(mockClientMessage);
         when(mockClientMessage.getBodyBuffer()).thenReturn(
             HornetQBuffers.fixedBuffer(2000));
         when(mockSessionFactory.getServerLocator()).thenReturn(mockLocator);
+        when(mockEntityManagerProvider.get()).thenReturn(mockEntityManager);
+        when(mockEntityManager.getTransaction()).thenReturn(mockEntityTransaction);
+        when(mockEntityManager.getDelegate()).thenReturn(mockSession);
+        when(mockSession.getTransaction()).thenReturn(mockTransaction);
         this.mapper = spy(new ObjectMapper());
+        this.stats = new EventSinkStats();
         this.eventSinkImpl = createEventSink(mockSessionFactory);
     }
 
@@ -91,7 +117,8 @@ public class EventSinkImplTest {
      * @return
      */
     private EventSinkImpl createEventSink(final ClientSessionFactory sessionFactory) {
-        return new EventSinkImpl(factory, mapper, new CandlepinCommonTestConfig()) {
+        return new EventSinkImpl(factory, mapper, new CandlepinCommonTestConfig(),
+            mockEntityManagerProvider, stats) {
             @Override
             protected ClientSessionFactory createClientSessionFactory() {
                 return sessionFactory;
@@ -100,7 +127,7 @@ public class EventSinkImplTest {
     }
 
     /**Set up the {@link ClientSessionFactory} to throw an exception when
-     * {@link ClientSessionFactory#createSession()} is called.
+     * {@link ClientSessionFactory#createSession(boolean, boolean)} is called.
      * Make sure, we throw up our hands saying "I am not dealing with this".
      * @throws Exception
      */
@@ -108,7 +135,8 @@ public class EventSinkImplTest {
     public void eventSinkShouldThrowExceptionWhenSessionCreationFailsInConstructor()
         throws Exception {
         final ClientSessionFactory csFactory = mock(ClientSessionFactory.class);
-        doThrow(new HornetQException()).when(csFactory.createSession());
+        doThrow(new HornetQException()).when(csFactory.createSession(anyBoolean(),
+            anyBoolean()));
         createEventSink(csFactory);
         fail("Runtime exception should have been thrown.");
     }
@@ -163,8 +191,13 @@ public class EventSinkImplTest {
     public void ownerCreatedShouldEmitSuccessfully()
         throws Exception {
         Owner owner = new Owner("Test Owner ");
+        owner.setId("owner-id");
         eventSinkImpl.emitOwnerCreated(owner);
         verify(mockClientProducer).send(any(ClientMessage.class));
+        verify(mockClientMessage).putStringProperty(EventSource.TARGET_PROPERTY, "OWNER");
+        verify(mockClientMessage).putStringProperty(EventSource.TYPE_PROPERTY, "CREATED");
+        verify(mockClientMessage).putStringProperty(Message.HDR_GROUP_ID,
+            new SimpleString("owner-id"));
     }
 
     @Test
@@ -227,4 +260,85 @@ public class EventSinkImplTest {
         verify(mockClientProducer).send(any(ClientMessage.class));
     }
 
+    @Test
+    public void eventsAreHeldUntilTransactionCommits() throws Exception {
+        when(mockEntityTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+
+        eventSinkImpl.emitOwnerCreated(new Owner("first"));
+        eventSinkImpl.emitOwnerCreated(new Owner("second"));
+        verify(mockTransaction).registerSynchronization(sync.capture());
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        assertEquals(2, stats.getPendingEvents());
+
+        sync.getValue().afterCompletion(Status.STATUS_COMMITTED);
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        verify(mockClientSession).commit();
+        assertEquals(0, stats.getPendingEvents());
+        assertEquals(1, stats.getFlushCount());
+    }
+
+    @Test
+    public void eventsAreDroppedWhenTransactionRollsBack() throws Exception {
+        when(mockEntityTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+
+        eventSinkImpl.emitOwnerCreated(new Owner("doomed"));
+        verify(mockTransaction).registerSynchronization(sync.capture());
+
+        sync.getValue().afterCompletion(Status.STATUS_ROLLEDBACK);
+        verify(mockClientProducer, never()).send(any(ClientMessage.class));
+        verify(mockClientSession, never()).commit();
+        assertEquals(0, stats.getPendingEvents());
+    }
+
+    @Test
+    public void failedFlushOpensNewSession() throws Exception {
+        doThrow(new HornetQException()).doNothing().when(mockClientSession).commit();
+        eventSinkImpl.emitOwnerCreated(new Owner("first"));
+        eventSinkImpl.emitOwnerCreated(new Owner("second"));
+        verify(mockClientSession).close();
+        verify(mockSessionFactory, times(2)).createSession(false, true);
+        assertEquals(1, stats.getOpenSessions());
+    }
+
+    @Test
+    public void newEntityIsCapturedWhenCreated() throws Exception {
+        when(mockEntityTransaction.isActive()).thenReturn(true);
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+        ArgumentCaptor<ClientMessage> message =
+            ArgumentCaptor.forClass(ClientMessage.class);
+        Owner owner = new Owner("before");
+
+        eventSinkImpl.emitOwnerCreated(owner);
+        owner.setDisplayName("after");
+        verify(mockTransaction).registerSynchronization(sync.capture());
+        sync.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        verify(mockClientProducer).send(message.capture());
+        Event sent = mapper.readValue(message.getValue().getBodyBuffer().readString(),
+            Event.class);
+        JsonNode entity = mapper.readTree(sent.getNewEntity());
+        assertEquals("before", entity.get("displayName").getTextValue());
+    }
+
+    @Test
+    public void sessionsAreSharedBetweenThreads() throws Exception {
+        Thread other = new Thread() {
+            public void run() {
+                eventSinkImpl.emitOwnerCreated(new Owner("other"));
+            }
+        };
+        other.start();
+        other.join();
+        eventSinkImpl.emitOwnerCreated(new Owner("this"));
+
+        verify(mockSessionFactory).createSession(false, true);
+        verify(mockClientProducer, times(2)).send(any(ClientMessage.class));
+        assertEquals(1, stats.getOpenSessions());
+        assertEquals(2, stats.getFlushCount());
+    }
 }
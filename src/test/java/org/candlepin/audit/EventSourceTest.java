@@ -14,19 +14,26 @@
  */
 package org.candlepin.audit;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.Config;
+import org.candlepin.config.ConfigProperties;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.client.ClientConsumer;
 import org.hornetq.api.core.client.ClientSession;
 import org.hornetq.api.core.client.ClientSessionFactory;
@@ -36,6 +43,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 
 /**
  * EventSourceTest
@@ -45,17 +56,21 @@ public class EventSourceTest {
 
     @Mock private ClientSessionFactory clientSessionFactory;
     @Mock private ClientSession clientSession;
+    private Config config;
+    private ListenerMetrics metrics;
 
     @Before
     public void init() throws Exception {
         when(clientSessionFactory.createSession(eq(true), eq(true)))
             .thenReturn(clientSession);
+        config = new CandlepinCommonTestConfig();
+        metrics = new ListenerMetrics();
     }
     /**
      * @return
      */
     private EventSource createEventSourceStubbedWithFactoryCreation() {
-        return new EventSource(new ObjectMapper()) {
+        return new EventSource(new ObjectMapper(), config, metrics) {
             protected ClientSessionFactory createSessionFactory() {
                 return clientSessionFactory;
             }
@@ -150,4 +165,99 @@ public class EventSourceTest {
         verify(this.clientSession).stop();
     }
 
+    @Test
+    public void shouldCreateFilteredQueueForFilteredListener() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSession.createConsumer(anyString())).thenReturn(mockCC);
+        FilteredEventListener eventListener = mock(FilteredEventListener.class);
+        when(eventListener.getInterestingEvents()).thenReturn(
+            Collections.<Event.Target, Set<Event.Type>>singletonMap(
+                Event.Target.POOL, EnumSet.of(Event.Type.CREATED)));
+
+        eventSource.registerListener(eventListener);
+
+        verify(clientSession).createQueue(anyString(), anyString(),
+            eq("(target = 'POOL' AND type = 'CREATED')"), eq(false));
+        verify(clientSession, never()).createQueue(anyString(), anyString());
+        verify(mockCC).setMessageHandler(any(ListenerWrapper.class));
+    }
+
+    @Test
+    public void shouldRecreateExistingQueueWhenFilterChanged() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSession.createConsumer(anyString())).thenReturn(mockCC);
+        // created unfiltered by an earlier run:
+        ClientSession.QueueQuery existing = mock(ClientSession.QueueQuery.class);
+        when(existing.isExists()).thenReturn(true);
+        when(clientSession.queueQuery(any(SimpleString.class))).thenReturn(existing);
+        FilteredEventListener eventListener = mock(FilteredEventListener.class);
+        when(eventListener.getInterestingEvents()).thenReturn(
+            Collections.<Event.Target, Set<Event.Type>>singletonMap(
+                Event.Target.POOL, EnumSet.of(Event.Type.CREATED)));
+
+        eventSource.registerListener(eventListener);
+
+        verify(clientSession).deleteQueue(anyString());
+        verify(clientSession).createQueue(anyString(), anyString(),
+            eq("(target = 'POOL' AND type = 'CREATED')"), eq(false));
+        verify(mockCC).setMessageHandler(any(ListenerWrapper.class));
+    }
+
+    @Test
+    public void shouldKeepExistingQueueWithSameFilter() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSession.createConsumer(anyString())).thenReturn(mockCC);
+        ClientSession.QueueQuery existing = mock(ClientSession.QueueQuery.class);
+        when(existing.isExists()).thenReturn(true);
+        when(existing.getFilterString()).thenReturn(
+            new SimpleString("(target = 'POOL' AND type = 'CREATED')"));
+        when(clientSession.queueQuery(any(SimpleString.class))).thenReturn(existing);
+        FilteredEventListener eventListener = mock(FilteredEventListener.class);
+        when(eventListener.getInterestingEvents()).thenReturn(
+            Collections.<Event.Target, Set<Event.Type>>singletonMap(
+                Event.Target.POOL, EnumSet.of(Event.Type.CREATED)));
+
+        eventSource.registerListener(eventListener);
+
+        verify(clientSession, never()).deleteQueue(anyString());
+        verify(clientSession, never()).createQueue(anyString(), anyString(),
+            anyString(), anyBoolean());
+        verify(mockCC).setMessageHandler(any(ListenerWrapper.class));
+    }
+
+    @Test
+    public void shouldNotRegisterFilteredListenerWithoutInterests() throws Exception {
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        FilteredEventListener eventListener = mock(FilteredEventListener.class);
+        when(eventListener.getInterestingEvents()).thenReturn(
+            Collections.<Event.Target, Set<Event.Type>>emptyMap());
+
+        eventSource.registerListener(eventListener);
+
+        verify(clientSession, never()).createConsumer(anyString());
+    }
+
+    @Test
+    public void shouldGiveEachParallelConsumerItsOwnSession() throws Exception {
+        ((CandlepinCommonTestConfig) config).setProperty(
+            ConfigProperties.AUDIT_LISTENER_CONCURRENCY, "3");
+        EventSource eventSource = createEventSourceStubbedWithFactoryCreation();
+        ClientConsumer mockCC = mock(ClientConsumer.class);
+        when(clientSession.createConsumer(anyString())).thenReturn(mockCC);
+        EventListener eventListener = mock(EventListener.class);
+
+        eventSource.registerListener(eventListener);
+
+        // the shared session plus one per consumer:
+        verify(clientSessionFactory, times(4)).createSession(true, true);
+        verify(mockCC, times(3)).setMessageHandler(any(ListenerWrapper.class));
+        assertEquals(3, metrics.forListener(
+            eventListener.getClass().getCanonicalName()).getConsumers());
+
+        eventSource.shutDown();
+        verify(clientSession, times(4)).close();
+    }
 }
@@ -49,6 +49,10 @@ public class CandlepinCommonTestConfig extends Config {
             throw new RuntimeException("Error loading cert/key resources!", e);
         }
 
+        // generate key pairs inline rather than leaving refill threads behind
+        // every test injector
+        properties.put(ConfigProperties.KEYPAIR_POOL_SIZE, "0");
+
         return properties;
     }
 
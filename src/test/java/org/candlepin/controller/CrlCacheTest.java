@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.CertificateSerialCurator;
+import org.candlepin.util.CrlFileUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+/**
+ * CrlCacheTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CrlCacheTest {
+
+    @Mock private CrlGenerator generator;
+    @Mock private CrlFileUtil crlFileUtil;
+    @Mock private CertificateSerialCurator serialCurator;
+    @Mock private X509CRL crl;
+    @Mock private X509CRL synced;
+    @Mock private X509CRL deltaCrl;
+
+    private CandlepinCommonTestConfig config;
+    private File crlFile;
+    private File deltaFile;
+    private CrlCache cache;
+
+    @Before
+    public void init() throws Exception {
+        crlFile = File.createTempFile("crlcache", ".crl");
+        FileUtils.writeByteArrayToFile(crlFile, "old".getBytes());
+        deltaFile = new File(crlFile.getAbsolutePath() + ".delta");
+
+        config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.CRL_FILE_PATH, crlFile.getAbsolutePath());
+        config.setProperty(ConfigProperties.CRL_DELTA_FILE_PATH,
+            deltaFile.getAbsolutePath());
+        config.setProperty(ConfigProperties.CRL_CHECK_INTERVAL, "3600");
+
+        when(crl.getThisUpdate()).thenReturn(new Date(1000L));
+        when(synced.getThisUpdate()).thenReturn(new Date(2000L));
+        when(deltaCrl.getThisUpdate()).thenReturn(new Date(3000L));
+        when(crlFileUtil.readCRLFile(eq(crlFile))).thenReturn(crl);
+        when(generator.syncCRLWithDB(eq(crl), any(X509CRL.class))).thenReturn(synced);
+        when(crlFileUtil.writeCRLFile(any(File.class), eq(synced)))
+            .thenReturn("new".getBytes());
+        when(generator.createDeltaCRL(eq(crl), any(X509CRL.class))).thenReturn(deltaCrl);
+        when(crlFileUtil.writeCRLFile(eq(deltaFile), eq(deltaCrl)))
+            .thenReturn("delta".getBytes());
+        when(generator.getCRLNumber(crl)).thenReturn(BigInteger.ONE);
+        when(generator.getBaseCRLNumber(deltaCrl)).thenReturn(BigInteger.ONE);
+
+        cache = new CrlCache(config, generator, crlFileUtil, serialCurator);
+    }
+
+    @After
+    public void cleanup() {
+        crlFile.delete();
+        deltaFile.delete();
+    }
+
+    @Test
+    public void servesFileWithoutResigningWhenUnchanged() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+
+        CrlCache.Entry entry = cache.get();
+
+        assertArrayEquals("old".getBytes(), entry.getEncoded());
+        assertEquals(new Date(1000L), entry.getLastModified());
+        verify(generator, never()).syncCRLWithDB(any(X509CRL.class),
+            any(X509CRL.class));
+    }
+
+    @Test
+    public void regeneratesWhenSerialsChanged() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(true);
+
+        CrlCache.Entry entry = cache.get();
+
+        assertArrayEquals("new".getBytes(), entry.getEncoded());
+        assertEquals(new Date(2000L), entry.getLastModified());
+    }
+
+    @Test
+    public void checksDatabaseOncePerInterval() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+
+        CrlCache.Entry first = cache.get();
+        CrlCache.Entry second = cache.get();
+
+        assertSame(first, second);
+        verify(serialCurator, times(1)).hasCrlChanges();
+    }
+
+    @Test
+    public void etagFollowsContent() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+        String before = cache.get().getETag();
+
+        String after = cache.refresh().getETag();
+
+        assertFalse(before.equals(after));
+    }
+
+    @Test
+    public void useDeltaLeavesCrlToTheJob() throws Exception {
+        config.setProperty(ConfigProperties.CRL_USE_DELTA, "true");
+        when(serialCurator.hasCrlChanges()).thenReturn(true);
+
+        CrlCache.Entry entry = cache.get();
+
+        assertArrayEquals("old".getBytes(), entry.getEncoded());
+        verify(generator, never()).syncCRLWithDB(any(X509CRL.class),
+            any(X509CRL.class));
+    }
+
+    @Test
+    public void deltaIssuedAgainstCurrentCrl() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+
+        CrlCache.Entry entry = cache.getDelta();
+
+        assertArrayEquals("delta".getBytes(), entry.getEncoded());
+        verify(generator).createDeltaCRL(eq(crl), (X509CRL) isNull());
+    }
+
+    @Test
+    public void deltaReissuedForNewRevocations() throws Exception {
+        config.setProperty(ConfigProperties.CRL_CHECK_INTERVAL, "0");
+        config.setProperty(ConfigProperties.CRL_USE_DELTA, "true");
+        when(serialCurator.countTobeCollectedSerials()).thenReturn(0, 1);
+
+        cache.getDelta();
+        cache.getDelta();
+        verify(generator, times(1)).createDeltaCRL(eq(crl), any(X509CRL.class));
+
+        cache.getDelta();
+        verify(generator).createDeltaCRL(eq(crl), eq(deltaCrl));
+    }
+
+    @Test
+    public void consolidationNumbersCrlAfterDelta() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+        cache.getDelta();
+
+        cache.refresh();
+
+        verify(generator).syncCRLWithDB(eq(crl), eq(deltaCrl));
+    }
+
+    @Test
+    public void regeneratesExpiringCrlWithoutChanges() throws Exception {
+        config.setProperty(ConfigProperties.CRL_USE_DELTA, "true");
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+        // loaded from disk, due for an update within the check interval:
+        when(crl.getNextUpdate()).thenReturn(
+            new Date(System.currentTimeMillis() + 60 * 1000L));
+
+        CrlCache.Entry entry = cache.get();
+
+        assertArrayEquals("new".getBytes(), entry.getEncoded());
+    }
+
+    @Test
+    public void regeneratesExpiredCrlWithinCheckInterval() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+        when(crl.getNextUpdate()).thenReturn(
+            new Date(System.currentTimeMillis() + 24 * 3600 * 1000L));
+        cache.get();
+        when(crl.getNextUpdate()).thenReturn(new Date(1000L));
+
+        // the cached CRL has since expired, checked or not:
+        CrlCache.Entry entry = cache.get();
+
+        assertArrayEquals("new".getBytes(), entry.getEncoded());
+    }
+
+    @Test
+    public void reissuesExpiringDelta() throws Exception {
+        when(serialCurator.hasCrlChanges()).thenReturn(false);
+        cache.getDelta();
+        when(deltaCrl.getNextUpdate()).thenReturn(new Date(1000L));
+
+        cache.getDelta();
+
+        verify(generator, times(2)).createDeltaCRL(eq(crl), any(X509CRL.class));
+    }
+}
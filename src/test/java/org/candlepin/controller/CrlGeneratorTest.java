@@ -17,6 +17,7 @@ package org.candlepin.controller;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,11 +34,14 @@ import org.candlepin.pki.X509CRLEntryWrapper;
 import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.pki.impl.DefaultSubjectKeyIdentifierWriter;
 import org.candlepin.util.Util;
+import org.hibernate.ScrollableResults;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import java.math.BigInteger;
 import java.security.KeyPair;
@@ -48,7 +52,6 @@ import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -134,66 +137,6 @@ public class CrlGeneratorTest {
         assertEquals(BigInteger.TEN, this.generator.getCRLNumber(x509crl));
     }
 
-    @Test
-    public void serialsTransfered() {
-        List<CertificateSerial> serials = getStubCSList();
-
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(serials);
-        List<X509CRLEntryWrapper> entries = this.generator
-            .getNewSerialsToAppendAndSetThemConsumed();
-        assertEquals(entries.size(), serials.size());
-        verify(this.curator).saveOrUpdateAll(serials);
-        for (int i = 0; i < serials.size(); i++) {
-            CertificateSerial cs = serials.get(i);
-            assertEquals(cs.getSerial(), entries.get(i).getSerialNumber());
-        }
-    }
-
-    @Test
-    public void serialsEmptyList() {
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(new ArrayList<CertificateSerial>());
-        List<X509CRLEntryWrapper> entries = this.generator
-            .getNewSerialsToAppendAndSetThemConsumed();
-        assertEquals(0, entries.size());
-    }
-
-    @Test
-    @SuppressWarnings("serial")
-    public void emptyExpiredSerials() {
-        Set<? extends X509CRLEntry> set = stubX509CRLEntries();
-
-        when(this.curator.getExpiredSerials())
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(1L, new Date()));
-                    add(stubCS(10L, new Date()));
-                }
-            });
-        Set<? extends X509CRLEntry> result = this.generator.removeExpiredSerials(set);
-        assertEquals(1, result.size());
-
-        X509CRLEntry entry = result.iterator().next();
-        assertEquals(BigInteger.ZERO, entry.getSerialNumber());
-    }
-
-    @Test
-    @SuppressWarnings("serial")
-    public void expiredSerials() {
-        Set<? extends X509CRLEntry> set = stubX509CRLEntries();
-
-        when(this.curator.getExpiredSerials())
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(12L, new Date()));
-                    add(stubCS(13L, new Date()));
-                }
-            });
-        Set<? extends X509CRLEntry> result = this.generator.removeExpiredSerials(set);
-        assertEquals(set.size(), result.size());
-    }
-
     @Test
     public void emptyRevocationsReturnsUntouched() throws Exception {
         // there's gotta be a way to reduce to a set of mocks
@@ -260,62 +203,75 @@ public class CrlGeneratorTest {
 
     @Test
     public void updateCRLWithNullInput() {
-        List<CertificateSerial> serials = getStubCSList();
-        when(this.curator.retrieveTobeCollectedSerials())
-            .thenReturn(serials);
+        ScrollableResults serials = scroll(1L, 100L, 1235465L);
+        when(this.curator.scrollRevokedSerials(true)).thenReturn(serials);
         X509CRL x509crl = this.generator.syncCRLWithDB((X509CRL) null);
         verify(this.curator).deleteExpiredSerials();
+        verify(this.curator).collectRevokedSerials();
+        verify(serials).close();
         assertEquals(BigInteger.ONE, this.generator.getCRLNumber(x509crl));
-        Set<? extends X509CRLEntry> entries = x509crl.getRevokedCertificates();
-        Set<BigInteger> nos = Util.newSet();
-        for (X509CRLEntry entry : entries) {
-            nos.add(entry.getSerialNumber());
-        }
+        Set<BigInteger> nos = serialNumbers(x509crl);
         assertTrue(nos.contains(BigInteger.ONE));
         assertTrue(nos.contains(new BigInteger("100")));
         assertTrue(nos.contains(new BigInteger("1235465")));
     }
 
     @Test
-    @SuppressWarnings({ "unchecked", "serial", "rawtypes" })
     public void testUpdateCRLWithMockedCRL() {
         X509CRL oldCert = mock(X509CRL.class);
-        Set<? extends X509CRLEntry> crls = stubX509CRLEntries(); //0, 1, 10,
 
         // byte array captured from previous runs - represents 1
         when(oldCert.getExtensionValue("2.5.29.20"))
             .thenReturn(new byte[] {4, 3, 2, 1, 1});
-        when(oldCert.getRevokedCertificates())
-            .thenReturn((Set) crls);
-        when(this.curator.getExpiredSerials())
-            .thenReturn(getStubCSList());  //1, 100, 1235465
-        when(this.curator.retrieveTobeCollectedSerials()) //1001, 1002
-            .thenReturn(new ArrayList<CertificateSerial>() {
-                {
-                    add(stubCS(1001L, new Date()));
-                    add(stubCS(1002L, new Date()));
-                }
-            });
+        // entries come from the database rather than the old crl
+        ScrollableResults serials = scroll(0L, 10L, 1001L, 1002L);
+        when(this.curator.scrollRevokedSerials(true)).thenReturn(serials);
         X509CRL newCRL = this.generator.syncCRLWithDB(oldCert);
 
-        verify(this.curator, times(1)).retrieveTobeCollectedSerials();
         verify(this.curator, times(1)).deleteExpiredSerials();
-        verify(this.curator, times(1)).getExpiredSerials();
+        verify(this.curator, times(1)).collectRevokedSerials();
+        verify(oldCert, never()).getRevokedCertificates();
 
         assertEquals(new BigInteger("2"), this.generator.getCRLNumber(newCRL));
 
-        Set<? extends X509CRLEntry> entries = newCRL.getRevokedCertificates();
-        Set<BigInteger> nos = Util.newSet();
-        for (X509CRLEntry entry : entries) {
-            nos.add(entry.getSerialNumber());
-        }
+        Set<BigInteger> nos = serialNumbers(newCRL);
         long [] expectedSerials = new long[] { 1001, 1002, 0, 10};
         assertEquals(nos.size(), expectedSerials.length);
         for (int i = 0; i < expectedSerials.length; i++) {
-            nos.contains(Util.toBigInt(expectedSerials[i]));
+            assertTrue(nos.contains(Util.toBigInt(expectedSerials[i])));
         }
     }
 
+    @Test
+    public void deltaCRLAgainstBase() {
+        X509CRL base = pkiUtility.createX509CRL(new ArrayList<X509CRLEntryWrapper>(),
+            BigInteger.TEN);
+        ScrollableResults first = scroll(1L, 100L, 1235465L);
+        ScrollableResults second = scroll(1L, 100L, 1235465L);
+        when(this.curator.scrollRevokedSerials(false)).thenReturn(first, second);
+
+        X509CRL delta = this.generator.createDeltaCRL(base, null);
+
+        assertEquals(new BigInteger("11"), this.generator.getCRLNumber(delta));
+        assertEquals(BigInteger.TEN, this.generator.getBaseCRLNumber(delta));
+        assertTrue(delta.getCriticalExtensionOIDs().contains(
+            X509Extensions.DeltaCRLIndicator.getId()));
+        assertEquals(3, delta.getRevokedCertificates().size());
+        verify(this.curator, never()).collectRevokedSerials();
+
+        // later deltas against the same base keep counting up
+        X509CRL next = this.generator.createDeltaCRL(base, delta);
+        assertEquals(new BigInteger("12"), this.generator.getCRLNumber(next));
+        assertEquals(BigInteger.TEN, this.generator.getBaseCRLNumber(next));
+
+        // and the next complete crl is numbered after them
+        ScrollableResults collected = scroll();
+        when(this.curator.scrollRevokedSerials(true)).thenReturn(collected);
+        X509CRL consolidated = this.generator.syncCRLWithDB(base, next);
+        assertEquals(new BigInteger("13"), this.generator.getCRLNumber(consolidated));
+        assertEquals(null, this.generator.getBaseCRLNumber(consolidated));
+    }
+
     @Test
     public void decodeValue() throws Exception {
         // there's gotta be a way to reduce to a set of mocks
@@ -353,6 +309,34 @@ public class CrlGeneratorTest {
             X509Extensions.CRLNumber.getId())));
     }
 
+    private ScrollableResults scroll(final long... ids) {
+        ScrollableResults results = mock(ScrollableResults.class);
+        final int[] row = {-1};
+        when(results.next()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return ++row[0] < ids.length;
+            }
+        });
+        when(results.get()).thenAnswer(new Answer<Object[]>() {
+            @Override
+            public Object[] answer(InvocationOnMock invocation) {
+                return new Object[] {ids[row[0]], new Date()};
+            }
+        });
+        return results;
+    }
+
+    private Set<BigInteger> serialNumbers(X509CRL x509crl) {
+        Set<BigInteger> nos = Util.newSet();
+        if (x509crl.getRevokedCertificates() != null) {
+            for (X509CRLEntry entry : x509crl.getRevokedCertificates()) {
+                nos.add(entry.getSerialNumber());
+            }
+        }
+        return nos;
+    }
+
     @SuppressWarnings("serial")
     private List<CertificateSerial> getStubCSList() {
         return new ArrayList<CertificateSerial>() {
@@ -369,19 +353,4 @@ public class CrlGeneratorTest {
         cs.setCollected(false);
         return cs;
     }
-
-    private Set<? extends X509CRLEntry> stubX509CRLEntries() {
-        Set<X509CRLEntry> set = new LinkedHashSet<X509CRLEntry>();
-        set.add(mockCRL(BigInteger.ONE, new Date()));
-        set.add(mockCRL(BigInteger.TEN, new Date()));
-        set.add(mockCRL(BigInteger.ZERO, new Date()));
-        return set;
-    }
-
-    private X509CRLEntry mockCRL(BigInteger serial, Date dt) {
-        X509CRLEntry entry = mock(X509CRLEntry.class);
-        when(entry.getSerialNumber()).thenReturn(serial);
-        when(entry.getRevocationDate()).thenReturn(dt);
-        return entry;
-    }
 }
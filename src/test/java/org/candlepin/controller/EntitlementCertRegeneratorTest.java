@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.guice.CandlepinSingletonScope;
+import org.candlepin.model.Content;
+import org.candlepin.model.Entitlement;
+import org.candlepin.model.EntitlementCertificate;
+import org.candlepin.model.EntitlementCurator;
+import org.candlepin.model.Environment;
+import org.candlepin.model.JobCurator;
+import org.candlepin.model.Pool;
+import org.candlepin.model.Product;
+import org.candlepin.pinsetter.core.model.JobStatus;
+import org.candlepin.policy.js.ProductCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.inject.Injector;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * EntitlementCertRegeneratorTest
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EntitlementCertRegeneratorTest {
+
+    @Mock private Injector injector;
+    @Mock private UnitOfWork unitOfWork;
+    @Mock private EntitlementCurator entitlementCurator;
+    @Mock private JobCurator jobCurator;
+    @Mock private PoolManager poolManager;
+    @Mock private ProductCache productCache;
+
+    private EntitlementCertRegenerator regenerator;
+    private JobStatus status;
+    private Date created = new Date(System.currentTimeMillis() - 60000);
+
+    @Before
+    public void setUp() {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.REGEN_CHUNK_SIZE, "2");
+        config.setProperty(ConfigProperties.REGEN_THREADS, "2");
+        config.setProperty(ConfigProperties.REGEN_DIRTY_MAX, "10");
+        config.setProperty(ConfigProperties.REGEN_DIRTY_RATE, "0");
+
+        when(injector.getInstance(PoolManager.class)).thenReturn(poolManager);
+        when(injector.getInstance(ProductCache.class)).thenReturn(productCache);
+
+        status = new JobStatus();
+        status.setCreated(created);
+        when(jobCurator.find("job")).thenReturn(status);
+
+        regenerator = new EntitlementCertRegenerator(injector,
+            new CandlepinSingletonScope(), unitOfWork, entitlementCurator, jobCurator,
+            config);
+    }
+
+    @Test
+    public void regeneratesAffectedEntitlementsInChunks() {
+        Environment env = new Environment("env", "env", null);
+        Entitlement e1 = entitlement("e1", "with-content");
+        Entitlement e2 = entitlement("e2", "without-content");
+        Entitlement e3 = entitlement("e3", "with-content");
+
+        Product withContent = new Product("with-content", "with-content");
+        Content content = new Content();
+        content.setId("content");
+        withContent.addContent(content);
+        when(productCache.getProductById("with-content")).thenReturn(withContent);
+        when(productCache.getProductById("without-content")).thenReturn(
+            new Product("without-content", "without-content"));
+
+        when(entitlementCurator.listIdsByEnvironment(env, null, 2))
+            .thenReturn(Arrays.asList("e1", "e2"));
+        when(entitlementCurator.listIdsByEnvironment(env, "e2", 2))
+            .thenReturn(Arrays.asList("e3"));
+        when(entitlementCurator.listIdsByEnvironment(env, "e3", 2))
+            .thenReturn(Collections.<String>emptyList());
+        when(entitlementCurator.listAllByIds(Arrays.asList("e1", "e2")))
+            .thenReturn(Arrays.asList(e1, e2));
+        when(entitlementCurator.listAllByIds(Arrays.asList("e3")))
+            .thenReturn(Arrays.asList(e3));
+
+        int count = regenerator.regenerateEnvironment(env,
+            Collections.singleton("content"), false, "job");
+
+        assertEquals(2, count);
+        verify(poolManager).regenerateCertificatesOf(eq(e1), eq(false), eq(false));
+        verify(poolManager).regenerateCertificatesOf(eq(e3), eq(false), eq(false));
+        verify(poolManager, never()).regenerateCertificatesOf(eq(e2), anyBoolean(),
+            anyBoolean());
+        assertEquals("Regenerated 2 entitlement certificates in 2 chunks",
+            status.getResult());
+    }
+
+    @Test
+    public void skipsEntitlementsRegeneratedSinceJobCreated() {
+        Entitlement done = entitlement("done", "product");
+        done.getCertificates().add(certificate(new Date()));
+        Entitlement stale = entitlement("stale", "product");
+        stale.getCertificates().add(certificate(
+            new Date(created.getTime() - 60000)));
+
+        when(entitlementCurator.listIdsByProduct(eq("product"), any(Date.class),
+            (String) eq(null), eq(2)))
+            .thenReturn(Arrays.asList("done", "stale"));
+        when(entitlementCurator.listIdsByProduct(eq("product"), any(Date.class),
+            eq("stale"), eq(2)))
+            .thenReturn(Collections.<String>emptyList());
+        when(entitlementCurator.listAllByIds(Arrays.asList("done", "stale")))
+            .thenReturn(Arrays.asList(done, stale));
+
+        assertEquals(1, regenerator.regenerateProduct("product", false, "job"));
+        verify(poolManager).regenerateCertificatesOf(eq(stale), eq(false), eq(false));
+        verify(poolManager, never()).regenerateCertificatesOf(eq(done), anyBoolean(),
+            anyBoolean());
+    }
+
+    @Test
+    public void regeneratesDirtyEntitlements() {
+        Entitlement d1 = entitlement("d1", "product");
+        d1.getCertificates().add(certificate(created));
+        Entitlement d2 = entitlement("d2", "product");
+        // Already regenerated by its consumer fetching certificates:
+        d2.getCertificates().add(certificate(
+            new Date(System.currentTimeMillis() + 60000)));
+        Entitlement d3 = entitlement("d3", "product");
+        d3.getCertificates().add(certificate(created));
+
+        when(entitlementCurator.listDirtyIds(any(Date.class), eq(10)))
+            .thenReturn(Arrays.asList("d1", "d2", "d3"));
+        when(entitlementCurator.listAllByIds(Arrays.asList("d1", "d2")))
+            .thenReturn(Arrays.asList(d1, d2));
+        when(entitlementCurator.listAllByIds(Arrays.asList("d3")))
+            .thenReturn(Arrays.asList(d3));
+
+        assertEquals(2, regenerator.regenerateDirty());
+        verify(poolManager).regenerateCertificatesOf(eq(d1), eq(false), eq(false));
+        verify(poolManager).regenerateCertificatesOf(eq(d3), eq(false), eq(false));
+        verify(poolManager, never()).regenerateCertificatesOf(eq(d2), anyBoolean(),
+            anyBoolean());
+    }
+
+    @Test
+    public void nothingDirtyToRegenerate() {
+        when(entitlementCurator.listDirtyIds(any(Date.class), eq(10)))
+            .thenReturn(Collections.<String>emptyList());
+
+        assertEquals(0, regenerator.regenerateDirty());
+        verify(injector, never()).getInstance(PoolManager.class);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void chunkFailureFailsTheRun() {
+        Environment env = new Environment("env", "env", null);
+        when(entitlementCurator.listIdsByEnvironment(env, null, 2))
+            .thenReturn(Arrays.asList("e1"));
+        when(entitlementCurator.listIdsByEnvironment(env, "e1", 2))
+            .thenReturn(Collections.<String>emptyList());
+        when(entitlementCurator.listAllByIds(Arrays.asList("e1")))
+            .thenThrow(new IllegalStateException("database went away"));
+
+        regenerator.regenerateEnvironment(env, Collections.singleton("content"), true,
+            null);
+    }
+
+    private Entitlement entitlement(String id, String productId) {
+        Pool pool = new Pool();
+        pool.setProductId(productId);
+        Entitlement ent = new Entitlement();
+        ent.setId(id);
+        ent.setPool(pool);
+        return ent;
+    }
+
+    private EntitlementCertificate certificate(Date createdOn) {
+        EntitlementCertificate cert = new EntitlementCertificate();
+        cert.setCreated(createdOn);
+        return cert;
+    }
+}
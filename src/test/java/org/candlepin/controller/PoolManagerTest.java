@@ -20,7 +20,6 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
-import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
@@ -34,8 +33,10 @@ import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.candlepin.audit.Event;
@@ -357,9 +358,15 @@ public class PoolManagerTest {
         when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
             any(Owner.class), any(String.class), eq(now), anyBoolean(),
             anyBoolean())).thenReturn(pools);
+        when(mockPoolCurator.filterProviding(any(Owner.class), eq(pools),
+            any(String[].class))).thenReturn(pools);
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, result);
+        }
+        when(enforcerMock.preEntitlement(any(Consumer.class), any(List.class),
+            any(CallerType.class))).thenReturn(results);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -497,10 +504,16 @@ public class PoolManagerTest {
         when(mockPoolCurator.listAvailableEntitlementPools(any(Consumer.class),
             any(Owner.class), anyString(), eq(now),
             anyBoolean(), anyBoolean())).thenReturn(pools);
+        when(mockPoolCurator.filterProviding(any(Owner.class), eq(pools),
+            any(String[].class))).thenReturn(pools);
 
         when(mockPoolCurator.lockAndLoad(any(Pool.class))).thenReturn(pool1);
-        when(enforcerMock.preEntitlement(any(Consumer.class), any(Pool.class), anyInt(),
-            any(CallerType.class))).thenReturn(result);
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, result);
+        }
+        when(enforcerMock.preEntitlement(any(Consumer.class), any(List.class),
+            any(CallerType.class))).thenReturn(results);
 
         when(result.isSuccessful()).thenReturn(true);
 
@@ -15,6 +15,7 @@
 package org.candlepin.model.test;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.candlepin.util.Util.addDaysToDt;
 import static org.candlepin.util.Util.addToFields;
@@ -26,6 +27,7 @@ import static org.junit.Assert.assertNotNull;
 
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.test.DatabaseTestFixture;
+import org.hibernate.ScrollableResults;
 import org.junit.Test;
 
 import java.math.BigInteger;
@@ -86,6 +88,18 @@ public class CertificateSerialCuratorTest extends DatabaseTestFixture {
         assertNotNull(serial.getId());
     }
 
+    @Test
+    public void testSerialCreationIsBatchedWithFlush() {
+        CertificateSerial serial = certSerialCurator.create(
+            new CertificateSerial(new Date()));
+        assertNotNull(serial.getId());
+
+        // queries flush the pending insert first
+        List<CertificateSerial> found = certSerialCurator.listBySerialIds(
+            new String[] {serial.getId().toString()});
+        assertEquals(1, found.size());
+    }
+
     @Test
     public void testRetrieveToBeCollectedSerials1() {
         createCS().withExpDate("01/10/2010").collected(false).revoked(true)
@@ -127,6 +141,35 @@ public class CertificateSerialCuratorTest extends DatabaseTestFixture {
         assertEquals(0, lcs.size());
     }
 
+    @Test
+    public void testCollectRevokedSerials() {
+        createCS().collected(false).revoked(true).save();
+        createCS().collected(true).revoked(true).save();
+        createCS().collected(false).revoked(false).save();
+
+        assertEquals(1, this.certSerialCurator.collectRevokedSerials());
+        assertEquals(0, this.certSerialCurator.countTobeCollectedSerials());
+    }
+
+    @Test
+    public void testScrollRevokedSerials() {
+        CertificateSerial collected = createCS().collected(true).revoked(true).save();
+        CertificateSerial pending = createCS().collected(false).revoked(true).save();
+        createCS().collected(false).revoked(false).save();
+
+        ScrollableResults results = this.certSerialCurator.scrollRevokedSerials(true);
+        assertTrue(results.next());
+        assertEquals(collected.getId(), results.get()[0]);
+        assertFalse(results.next());
+        results.close();
+
+        results = this.certSerialCurator.scrollRevokedSerials(false);
+        assertTrue(results.next());
+        assertEquals(pending.getId(), results.get()[0]);
+        assertFalse(results.next());
+        results.close();
+    }
+
     @Test
     public void testGetExpiredSerialsWithFewExpiredAndRevokedSerials() {
         Date yesterday = yesterday();
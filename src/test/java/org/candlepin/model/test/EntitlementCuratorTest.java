@@ -15,19 +15,28 @@
 package org.candlepin.model.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerType;
 import org.candlepin.model.Content;
+import org.candlepin.model.EntitledProducts;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Environment;
 import org.candlepin.model.EntitlementCertificate;
+import org.candlepin.model.IdentityCertificate;
 import org.candlepin.model.Owner;
 import org.candlepin.model.Pool;
 import org.candlepin.model.Product;
@@ -135,6 +144,238 @@ public class EntitlementCuratorTest extends DatabaseTestFixture {
         return ent;
     }
 
+    @Test
+    public void createAndDeleteKeepTotals() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L,
+            dateSource.currentDate(), createDate(2020, 1, 1));
+        Consumer other = createConsumer(owner);
+
+        Entitlement ent = createEntitlement(owner, other, pool, null);
+        ent.setQuantity(3);
+        entitlementCurator.create(ent);
+        poolCurator.refresh(pool);
+        consumerCurator.refresh(other);
+        assertEquals(Long.valueOf(3), pool.getConsumed());
+        assertEquals(Long.valueOf(0), pool.getExported());
+        assertEquals(3, other.getEntitlementCount());
+
+        entitlementCurator.delete(ent);
+        poolCurator.refresh(pool);
+        consumerCurator.refresh(other);
+        assertEquals(Long.valueOf(0), pool.getConsumed());
+        assertEquals(0, other.getEntitlementCount());
+    }
+
+    @Test
+    public void adjustQuantityKeepsTotals() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L,
+            dateSource.currentDate(), createDate(2020, 1, 1));
+        Consumer other = createConsumer(owner);
+
+        Entitlement ent = createEntitlement(owner, other, pool, null);
+        ent.setQuantity(3);
+        entitlementCurator.create(ent);
+
+        entitlementCurator.adjustQuantity(ent, 2);
+        poolCurator.refresh(pool);
+        consumerCurator.refresh(other);
+        assertEquals(Long.valueOf(5), pool.getConsumed());
+        assertEquals(Long.valueOf(0), pool.getExported());
+        assertEquals(5, other.getEntitlementCount());
+
+        entitlementCurator.adjustQuantity(ent, -4);
+        poolCurator.refresh(pool);
+        consumerCurator.refresh(other);
+        assertEquals(Long.valueOf(1), pool.getConsumed());
+        assertEquals(1, other.getEntitlementCount());
+    }
+
+    @Test
+    public void manifestConsumersKeepExportedTotal() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L,
+            dateSource.currentDate(), createDate(2020, 1, 1));
+        ConsumerType type = new ConsumerType("test-manifest-type-" +
+            TestUtil.randomInt());
+        type.setManifest(true);
+        consumerTypeCurator.create(type);
+        Consumer distributor = new Consumer("test-distributor", "test-user", owner, type);
+        consumerCurator.create(distributor);
+        Consumer system = createConsumer(owner);
+
+        Entitlement exported = createEntitlement(owner, distributor, pool, null);
+        exported.setQuantity(4);
+        entitlementCurator.create(exported);
+        Entitlement local = createEntitlement(owner, system, pool, null);
+        local.setQuantity(1);
+        entitlementCurator.create(local);
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(5), pool.getConsumed());
+        assertEquals(Long.valueOf(4), pool.getExported());
+
+        entitlementCurator.adjustQuantity(exported, -1);
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(4), pool.getConsumed());
+        assertEquals(Long.valueOf(3), pool.getExported());
+
+        entitlementCurator.delete(exported);
+        poolCurator.refresh(pool);
+        assertEquals(Long.valueOf(1), pool.getConsumed());
+        assertEquals(Long.valueOf(0), pool.getExported());
+    }
+
+    @Test
+    public void replicatedConsumerKeepsTotal() {
+        Product product = TestUtil.createProduct();
+        productCurator.create(product);
+        Pool pool = createPoolAndSub(owner, product, 10L,
+            dateSource.currentDate(), createDate(2020, 1, 1));
+
+        // Replication skips the persist callbacks, so set what they would:
+        CertificateSerial serial = new CertificateSerial(424242L, futureDate);
+        serial.setCreated(pastDate);
+        serial.setUpdated(pastDate);
+        IdentityCertificate idCert = new IdentityCertificate();
+        idCert.setId("migratedidcert");
+        idCert.setKey("key");
+        idCert.setCert("cert");
+        idCert.setSerial(serial);
+        idCert.setCreated(pastDate);
+        idCert.setUpdated(pastDate);
+        Consumer migrated = new Consumer("migrated", "test-user", owner,
+            consumer.getType());
+        migrated.setId("migratedconsumer");
+        migrated.setIdCert(idCert);
+        migrated.setCreated(pastDate);
+        migrated.setUpdated(pastDate);
+        consumerCurator.replicate(migrated);
+        consumerCurator.refresh(migrated);
+        assertEquals(0, migrated.getEntitlementCount());
+
+        Entitlement ent = createEntitlement(owner, migrated, pool, null);
+        ent.setId("migratedentitlement");
+        ent.setQuantity(4);
+        ent.setCreated(pastDate);
+        ent.setUpdated(pastDate);
+        entitlementCurator.replicate(ent);
+        consumerCurator.recountEntitlements(migrated);
+        consumerCurator.refresh(migrated);
+        assertEquals(4, migrated.getEntitlementCount());
+
+        Entitlement added = createEntitlement(owner, migrated, pool, null);
+        added.setQuantity(2);
+        entitlementCurator.create(added);
+        consumerCurator.refresh(migrated);
+        assertEquals(6, migrated.getEntitlementCount());
+    }
+
+    @Test
+    public void listDirtyByConsumer() {
+        assertTrue(entitlementCurator.listDirtyByConsumer(consumer).isEmpty());
+
+        secondEntitlement.setDirty(true);
+        entitlementCurator.merge(secondEntitlement);
+        List<Entitlement> dirty = entitlementCurator.listDirtyByConsumer(consumer);
+        assertEquals(1, dirty.size());
+        assertEquals(secondEntitlement, dirty.get(0));
+    }
+
+    @Test
+    public void listDirtyIdsActiveConsumersFirst() {
+        Consumer idle = createConsumer(owner);
+        consumerCurator.create(idle);
+        Consumer active = createConsumer(owner);
+        active.setLastCheckin(new Date());
+        consumerCurator.create(active);
+
+        Entitlement idleEnt = createEntitlement(owner, idle, firstEntitlement.getPool(),
+            null);
+        idleEnt.setDirty(true);
+        entitlementCurator.create(idleEnt);
+        Entitlement activeEnt = createEntitlement(owner, active,
+            firstEntitlement.getPool(), null);
+        activeEnt.setDirty(true);
+        entitlementCurator.create(activeEnt);
+
+        Date activeSince = new Date(System.currentTimeMillis() - 3600000);
+        assertEquals(Arrays.asList(activeEnt.getId(), idleEnt.getId()),
+            entitlementCurator.listDirtyIds(activeSince, 10));
+        assertEquals(Arrays.asList(activeEnt.getId()),
+            entitlementCurator.listDirtyIds(activeSince, 1));
+    }
+
+    @Test
+    public void listIdsByProductMatchesPoolAndProvidedProducts() {
+        Entitlement ent = setupListProvidingEntitlement();
+        List<String> ids = Arrays.asList(ent.getId());
+
+        assertEquals(ids, entitlementCurator.listIdsByProduct(
+            parentProduct.getId(), overlappingDate, null, 10));
+        assertEquals(ids, entitlementCurator.listIdsByProduct(
+            providedProduct1.getId(), overlappingDate, null, 10));
+        assertTrue(entitlementCurator.listIdsByProduct(
+            providedProduct1.getId(), overlappingDate, ent.getId(), 10).isEmpty());
+        assertTrue(entitlementCurator.listIdsByProduct(
+            providedProduct1.getId(), futureDate, null, 10).isEmpty());
+    }
+
+    @Test
+    public void listSerialIdsForConsumer() {
+        List<Long> serials = entCertCurator.listSerialIdsForConsumer(consumer);
+        assertEquals(2, serials.size());
+        assertTrue(serials.contains(firstCertificate.getSerial().getId()));
+        assertTrue(serials.contains(secondCertificate.getSerial().getId()));
+    }
+
+    @Test
+    public void listForConsumerBySerials() {
+        Long serial = secondCertificate.getSerial().getId();
+        List<EntitlementCertificate> certs = entCertCurator.listForConsumer(consumer,
+            Arrays.asList(serial, serial + 1000));
+        assertEquals(1, certs.size());
+        assertEquals(serial, certs.get(0).getSerial().getId());
+
+        assertTrue(entCertCurator.listForConsumer(consumer,
+            new HashSet<Long>()).isEmpty());
+    }
+
+    @Test
+    public void listForConsumerByManySerials() {
+        Long serial = secondCertificate.getSerial().getId();
+        List<Long> serials = new ArrayList<Long>();
+        for (long i = 1; i <= 2500; i++) {
+            serials.add(serial + i);
+        }
+        serials.add(serial);
+
+        List<EntitlementCertificate> certs = entCertCurator.listForConsumer(consumer,
+            serials);
+        assertEquals(1, certs.size());
+        assertEquals(serial, certs.get(0).getSerial().getId());
+    }
+
+    @Test
+    public void certificateChangesBumpSerialsVersion() {
+        long version = entCertCurator.getSerialsVersion(consumer);
+
+        EntitlementCertificate cert = createEntitlementCertificate("key", "cert");
+        cert.setEntitlement(firstEntitlement);
+        firstEntitlement.getCertificates().add(cert);
+        entCertCurator.create(cert);
+        assertEquals(version + 1, entCertCurator.getSerialsVersion(consumer));
+
+        entCertCurator.delete(cert);
+        assertEquals(version + 2, entCertCurator.getSerialsVersion(consumer));
+
+        entitlementCurator.delete(secondEntitlement);
+        assertEquals(version + 3, entCertCurator.getSerialsVersion(consumer));
+    }
+
     @Test
     public void listProviding() {
         Entitlement ent = setupListProvidingEntitlement();
@@ -195,6 +436,27 @@ public class EntitlementCuratorTest extends DatabaseTestFixture {
         assertEquals(0, results.size());
     }
 
+    @Test
+    public void entitledProductsMatchListProviding() {
+        EntitledProducts before = entitlementCurator.getEntitledProducts(consumer);
+        assertFalse(before.providesAny(Arrays.asList(providedProduct1.getId()),
+            pastDate, futureDate));
+
+        Entitlement ent = setupListProvidingEntitlement();
+        EntitledProducts entitled = entitlementCurator.getEntitledProducts(consumer);
+        assertNotSame(before, entitled);
+        assertSame(entitled, entitlementCurator.getEntitledProducts(consumer));
+
+        assertTrue(entitled.providesAny(Arrays.asList(ent.getPool().getProductId()),
+            overlappingDate, futureDate));
+        assertTrue(entitled.providesAny(Arrays.asList("nosuchproductid",
+            providedProduct1.getId()), pastDate, overlappingDate));
+        assertFalse(entitled.providesAny(Arrays.asList("nosuchproductid"),
+            pastDate, futureDate));
+        assertFalse(entitled.providesAny(Arrays.asList(providedProduct2.getId()),
+            pastDate, pastDate));
+    }
+
     private Product createModifyingProduct(String modifiedProductId) {
         Product modifierProd = TestUtil.createProduct();
         String randomString = "" + TestUtil.randomInt();
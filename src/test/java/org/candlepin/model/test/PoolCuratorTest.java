@@ -37,6 +37,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -172,6 +173,30 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(1, results.size());
     }
 
+    @Test
+    public void testProductMatchingSkipsOtherPools() {
+        Product parent = TestUtil.createProduct();
+        productCurator.create(parent);
+        Product other = TestUtil.createProduct();
+        productCurator.create(other);
+
+        Set<ProvidedProduct> providedProducts = new HashSet<ProvidedProduct>();
+        ProvidedProduct providedProduct = new ProvidedProduct(
+            product.getId(), "Test Provided Product");
+        providedProducts.add(providedProduct);
+
+        Pool providing = TestUtil.createPool(owner, parent, providedProducts, 5);
+        providedProduct.setPool(providing);
+        poolCurator.create(providing);
+        Pool direct = poolCurator.create(TestUtil.createPool(owner, product));
+        poolCurator.create(TestUtil.createPool(owner, other));
+
+        List<Pool> results = poolCurator.listByOwnerAndProduct(owner, product.getId());
+        assertEquals(2, results.size());
+        assertTrue(results.contains(providing));
+        assertTrue(results.contains(direct));
+    }
+
     @Test
     public void testPoolProducts() {
         Product another = TestUtil.createProduct();
@@ -481,4 +506,56 @@ public class PoolCuratorTest extends DatabaseTestFixture {
         assertEquals(2, levels.size());
     }
 
+    @Test
+    public void filterProvidingMatchesPoolAndProvidedProducts() {
+        Product other = TestUtil.createProduct();
+        productCurator.create(other);
+        Pool pool1 = createPoolAndSub(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        Pool pool2 = createPoolAndSub(owner, other, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        pool2.addProvidedProduct(new ProvidedProduct("provided", "Provided"));
+        pool2 = poolCurator.merge(pool2);
+        List<Pool> pools = Arrays.asList(pool1, pool2);
+
+        assertEquals(Arrays.asList(pool1), poolCurator.filterProviding(owner, pools,
+            new String[] { product.getId() }));
+        assertEquals(Arrays.asList(pool2), poolCurator.filterProviding(owner, pools,
+            new String[] { "provided" }));
+        assertEquals(pools, poolCurator.filterProviding(owner, pools,
+            new String[] { "provided", product.getId() }));
+    }
+
+    @Test
+    public void filterProvidingFollowsPoolChanges() {
+        Pool pool = createPoolAndSub(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        String[] provided = new String[] { "provided" };
+        assertTrue(poolCurator.listIdsProviding(owner, provided).isEmpty());
+
+        pool.addProvidedProduct(new ProvidedProduct("provided", "Provided"));
+        pool = poolCurator.merge(pool);
+        assertEquals(Arrays.asList(pool), poolCurator.filterProviding(owner,
+            Arrays.asList(pool), provided));
+
+        poolCurator.delete(pool);
+        assertTrue(poolCurator.listIdsProviding(owner, provided).isEmpty());
+    }
+
+    @Test
+    public void filterProvidingSeesPoolsChangedWithoutMerge() {
+        Pool pool = createPoolAndSub(owner, product, 100L,
+            TestUtil.createDate(2000, 3, 2), TestUtil.createDate(2055, 3, 2));
+        List<Pool> pools = Arrays.asList(pool);
+        String[] changed = new String[] { "changed" };
+        assertTrue(poolCurator.filterProviding(owner, pools, changed).isEmpty());
+
+        // as another node or a bulk update would, bypassing PoolCurator.merge:
+        entityManager().createQuery("update Pool set productId = :product " +
+            "where id = :id")
+            .setParameter("product", "changed")
+            .setParameter("id", pool.getId())
+            .executeUpdate();
+        assertEquals(pools, poolCurator.filterProviding(owner, pools, changed));
+    }
 }
@@ -22,7 +22,9 @@ import static org.mockito.Mockito.verify;
 
 import org.candlepin.config.Config;
 import org.candlepin.config.ConfigProperties;
+import org.candlepin.controller.CrlCache;
 import org.candlepin.controller.CrlGenerator;
+import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.util.CrlFileUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,11 +46,13 @@ public class CertificateRevocationListTaskTest {
     @Mock private Config config;
     @Mock private CrlFileUtil crlFileUtil;
     @Mock private CrlGenerator generator;
+    @Mock private CertificateSerialCurator serialCurator;
     @Mock private X509CRL crl;
 
     @Before
     public void init() {
-        this.task = new CertificateRevocationListTask(config, crlFileUtil, generator);
+        this.task = new CertificateRevocationListTask(config,
+            new CrlCache(config, generator, crlFileUtil, serialCurator));
     }
 
     @Test(expected = JobExecutionException.class)
@@ -60,8 +64,12 @@ public class CertificateRevocationListTaskTest {
     @Test
     public void execute() throws Exception {
         when(config.getString(ConfigProperties.CRL_FILE_PATH)).thenReturn("/tmp/test.crl");
+        when(config.getString(ConfigProperties.CRL_DELTA_FILE_PATH))
+            .thenReturn("/tmp/test-delta.crl");
         when(crlFileUtil.readCRLFile(any(File.class))).thenReturn(crl);
-        when(generator.syncCRLWithDB(eq(crl))).thenReturn(crl);
+        when(generator.syncCRLWithDB(eq(crl), eq(crl))).thenReturn(crl);
+        when(crlFileUtil.writeCRLFile(any(File.class), eq(crl)))
+            .thenReturn("crl".getBytes());
 
         task.execute(null);
 
@@ -198,6 +198,7 @@ public class MigrateOwnerJobTest {
         verify(ownerCurator, atLeastOnce()).replicate(any(Owner.class));
         verify(poolCurator, atLeastOnce()).replicate(any(Pool.class));
         verify(consumerCurator, atLeastOnce()).replicate(any(Consumer.class));
+        verify(consumerCurator, atLeastOnce()).recountEntitlements(any(Consumer.class));
         verify(entCurator, atLeastOnce()).replicate(any(Entitlement.class));
         verify(entCurator, atLeastOnce()).merge(any(Entitlement.class));
         verify(oclient, atLeastOnce()).deleteOwner(eq("admin"), eq(false));
@@ -320,6 +321,7 @@ public class MigrateOwnerJobTest {
         verify(ownerCurator, atLeastOnce()).replicate(any(Owner.class));
         verify(poolCurator, atLeastOnce()).replicate(any(Pool.class));
         verify(consumerCurator, atLeastOnce()).replicate(any(Consumer.class));
+        verify(consumerCurator, atLeastOnce()).recountEntitlements(any(Consumer.class));
         verify(entCurator, atLeastOnce()).replicate(any(Entitlement.class));
         verify(entCurator, atLeastOnce()).merge(any(Entitlement.class));
         verify(oclient, atLeastOnce()).deleteOwner(eq("admin"), eq(false));
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pinsetter.tasks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.candlepin.controller.EntitlementCertRegenerator;
+
+import org.junit.Test;
+import org.quartz.JobExecutionContext;
+
+/**
+ * RegenDirtyEntitlementCertsTaskTest
+ */
+public class RegenDirtyEntitlementCertsTaskTest {
+
+    @Test
+    public void execute() throws Exception {
+        EntitlementCertRegenerator regenerator = mock(EntitlementCertRegenerator.class);
+        JobExecutionContext jec = mock(JobExecutionContext.class);
+        when(regenerator.regenerateDirty()).thenReturn(3);
+
+        new RegenDirtyEntitlementCertsTask(regenerator).execute(jec);
+
+        verify(regenerator).regenerateDirty();
+        verify(jec).setResult("Regenerated 3 dirty entitlement certificates");
+    }
+}
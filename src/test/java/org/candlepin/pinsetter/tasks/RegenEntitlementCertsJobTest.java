@@ -19,12 +19,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import org.candlepin.controller.CandlepinPoolManager;
+import org.candlepin.controller.EntitlementCertRegenerator;
 
 import org.junit.Test;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
 
 
 /**
@@ -35,7 +36,7 @@ public class RegenEntitlementCertsJobTest {
     @Test
     public void execute() throws Exception {
         // prep
-        CandlepinPoolManager pm = mock(CandlepinPoolManager.class);
+        EntitlementCertRegenerator regenerator = mock(EntitlementCertRegenerator.class);
         JobExecutionContext jec = mock(JobExecutionContext.class);
         JobDetail detail = mock(JobDetail.class);
         JobDataMap jdm = mock(JobDataMap.class);
@@ -43,13 +44,16 @@ public class RegenEntitlementCertsJobTest {
         when(jdm.getString(eq("product_id"))).thenReturn("foobarbaz");
         when(jdm.getBoolean(eq("lazy_regen"))).thenReturn(true);
         when(detail.getJobDataMap()).thenReturn(jdm);
+        when(detail.getKey()).thenReturn(new JobKey("regen_job"));
         when(jec.getJobDetail()).thenReturn(detail);
 
         // test
-        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(pm);
+        RegenProductEntitlementCertsJob recj = new RegenProductEntitlementCertsJob(
+            regenerator);
         recj.execute(jec);
 
         // verification
-        verify(pm).regenerateCertificatesOf(eq("foobarbaz"), eq(true));
+        verify(regenerator).regenerateProduct(eq("foobarbaz"), eq(true),
+            eq("regen_job"));
     }
 }
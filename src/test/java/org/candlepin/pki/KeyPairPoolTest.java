@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.pki;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.security.KeyPair;
+import java.util.concurrent.CountDownLatch;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * KeyPairPoolTest
+ */
+public class KeyPairPoolTest {
+
+    private CandlepinCommonTestConfig config;
+    private PKIUtility pki;
+    private KeyPair pooled;
+    private KeyPair inline;
+    private KeyPairPool pool;
+
+    @Before
+    public void setUp() {
+        config = new CandlepinCommonTestConfig();
+        pki = mock(PKIUtility.class);
+        pooled = new KeyPair(null, null);
+        inline = new KeyPair(null, null);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void disabledPoolGeneratesInline() throws Exception {
+        when(pki.generateNewKeyPair()).thenReturn(inline);
+        pool = new KeyPairPool(pki, config);
+
+        assertSame(inline, pool.take());
+        assertEquals(0, pool.getDepth());
+        assertEquals(0, pool.getMisses());
+    }
+
+    @Test
+    public void takesPregeneratedPairs() throws Exception {
+        when(pki.generateNewKeyPair()).thenReturn(pooled);
+        config.setProperty(ConfigProperties.KEYPAIR_POOL_SIZE, "2");
+        pool = new KeyPairPool(pki, config);
+
+        waitForDepth(2);
+        assertSame(pooled, pool.take());
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getMisses());
+    }
+
+    @Test
+    public void emptyPoolFallsBackToInline() throws Exception {
+        final CountDownLatch never = new CountDownLatch(1);
+        when(pki.generateNewKeyPair()).thenAnswer(new Answer<KeyPair>() {
+            @Override
+            public KeyPair answer(InvocationOnMock invocation) {
+                if (Thread.currentThread().getName().startsWith("keypair-pool-")) {
+                    // keep the refill thread from ever filling the pool
+                    try {
+                        never.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return pooled;
+                }
+                return inline;
+            }
+        });
+        config.setProperty(ConfigProperties.KEYPAIR_POOL_SIZE, "2");
+        pool = new KeyPairPool(pki, config);
+
+        assertSame(inline, pool.take());
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+    }
+
+    private void waitForDepth(int depth) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.getDepth() < depth; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, pool.getDepth());
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.candlepin.config.Config;
+import org.candlepin.model.Rules;
+import org.candlepin.model.RulesCurator;
+import org.candlepin.util.Util;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.inject.Provider;
+import com.google.inject.persist.UnitOfWork;
+
+/**
+ * JsRunnerProviderTest
+ */
+public class JsRunnerProviderTest {
+
+    @Mock
+    private RulesCurator rulesCurator;
+    @Mock
+    private Config config;
+    @Mock
+    private UnitOfWork unitOfWork;
+    @Mock
+    private Provider<EntityManager> entityManagerProvider;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private EntityTransaction entityTransaction;
+    @Mock
+    private Session session;
+    @Mock
+    private Transaction transaction;
+
+    private JsRunnerProvider provider;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        InputStream is = this.getClass().getResourceAsStream(
+            RulesCurator.DEFAULT_RULES_FILE);
+        Rules rules = new Rules(Util.readFile(is));
+        when(rulesCurator.getUpdated()).thenReturn(new Date(1000L));
+        when(rulesCurator.getRules()).thenReturn(rules);
+        provider = new JsRunnerProvider(rulesCurator);
+
+        when(entityManagerProvider.get()).thenReturn(entityManager);
+        when(entityManager.getTransaction()).thenReturn(entityTransaction);
+        when(entityManager.getDelegate()).thenReturn(session);
+        when(session.getTransaction()).thenReturn(transaction);
+    }
+
+    private JsRunnerProvider createInjectedProvider() {
+        return new JsRunnerProvider(rulesCurator, config, unitOfWork,
+            entityManagerProvider);
+    }
+
+    private Synchronization invalidateInTransaction(JsRunnerProvider jsProvider) {
+        when(entityTransaction.isActive()).thenReturn(true);
+        jsProvider.invalidate();
+        ArgumentCaptor<Synchronization> sync =
+            ArgumentCaptor.forClass(Synchronization.class);
+        verify(transaction).registerSynchronization(sync.capture());
+        return sync.getValue();
+    }
+
+    @Test
+    public void getDoesNotCheckDatabase() {
+        assertNotNull(provider.get());
+        assertNotNull(provider.get());
+        // only the initial compile
+        verify(rulesCurator, times(1)).getUpdated();
+        verify(rulesCurator, times(1)).getRules();
+    }
+
+    @Test
+    public void invalidateRechecksTimestamp() {
+        provider.invalidate();
+        provider.get();
+        verify(rulesCurator, times(2)).getUpdated();
+        // timestamp unchanged, nothing to recompile
+        verify(rulesCurator, times(1)).getRules();
+    }
+
+    @Test
+    public void invalidateRecompilesChangedRules() {
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+        provider.invalidate();
+        assertNotNull(provider.get());
+        verify(rulesCurator, times(2)).getRules();
+
+        // already compiled this timestamp
+        provider.get();
+        verify(rulesCurator, times(2)).getRules();
+    }
+
+    @Test
+    public void invalidateRechecksOnlyOnce() {
+        provider.invalidate();
+        provider.get();
+        provider.get();
+        verify(rulesCurator, times(2)).getUpdated();
+    }
+
+    @Test
+    public void invalidateInTransactionWaitsForCommit() {
+        JsRunnerProvider jsProvider = createInjectedProvider();
+        Synchronization sync = invalidateInTransaction(jsProvider);
+
+        // still uncommitted, must not look at the rules yet (both providers
+        // compiled once on creation)
+        jsProvider.get();
+        verify(rulesCurator, times(2)).getUpdated();
+
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+        sync.afterCompletion(Status.STATUS_COMMITTED);
+        jsProvider.get();
+        verify(rulesCurator, times(3)).getUpdated();
+        verify(rulesCurator, times(3)).getRules();
+    }
+
+    @Test
+    public void invalidateInRolledBackTransactionIsIgnored() {
+        JsRunnerProvider jsProvider = createInjectedProvider();
+        Synchronization sync = invalidateInTransaction(jsProvider);
+
+        sync.afterCompletion(Status.STATUS_ROLLEDBACK);
+        jsProvider.get();
+        verify(rulesCurator, times(2)).getUpdated();
+    }
+
+    @Test
+    public void failedRecheckIsRetried() {
+        provider.invalidate();
+        when(rulesCurator.getUpdated()).thenThrow(new RuntimeException("db down"));
+        try {
+            provider.get();
+            fail("Expected the re-check to fail");
+        }
+        catch (RuntimeException e) {
+            // expected
+        }
+
+        doReturn(new Date(2000L)).when(rulesCurator).getUpdated();
+        assertNotNull(provider.get());
+        verify(rulesCurator, times(2)).getRules();
+    }
+
+    @Test
+    public void pollRecompilesChangedRules() {
+        JsRunnerProvider jsProvider = createInjectedProvider();
+        when(rulesCurator.getUpdated()).thenReturn(new Date(2000L));
+
+        jsProvider.poll();
+
+        verify(unitOfWork).begin();
+        verify(unitOfWork).end();
+        verify(rulesCurator, times(3)).getRules();
+    }
+
+    @Test
+    public void pollSurvivesErrors() {
+        JsRunnerProvider jsProvider = createInjectedProvider();
+        when(rulesCurator.getUpdated()).thenThrow(new RuntimeException("db down"));
+
+        jsProvider.poll();
+
+        verify(unitOfWork).end();
+        // keeps serving the rules it has
+        assertNotNull(jsProvider.get());
+    }
+}
@@ -21,6 +21,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.InputStream;
@@ -33,6 +35,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 import java.util.Set;
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.ConsumerType;
@@ -90,7 +93,8 @@ public class ComplianceRulesTest {
         when(rulesCuratorMock.getRules()).thenReturn(rules);
         provider = new JsRunnerProvider(rulesCuratorMock);
         compliance = new ComplianceRules(provider.get(),
-            entCurator, new StatusReasonMessageGenerator(i18n));
+            entCurator, new StatusReasonMessageGenerator(i18n),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig()));
         owner = new Owner("test");
     }
 
@@ -102,7 +106,8 @@ public class ComplianceRulesTest {
     public void additivePropertiesCanStillDeserialize() {
         JsRunner mockRunner = mock(JsRunner.class);
         compliance = new ComplianceRules(mockRunner,
-            entCurator, new StatusReasonMessageGenerator(i18n));
+            entCurator, new StatusReasonMessageGenerator(i18n),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig()));
         when(mockRunner.runJsFunction(any(Class.class), eq("get_status"),
             any(JsContext.class))).thenReturn("{\"unknown\": \"thing\"}");
         Consumer c = mockConsumerWithTwoProductsAndNoEntitlements();
@@ -111,6 +116,57 @@ public class ComplianceRulesTest {
         compliance.getStatus(c, TestUtil.createDate(2011, 8, 30));
     }
 
+    @Test
+    public void cachedStatusSkipsRules() {
+        JsRunner mockRunner = mock(JsRunner.class);
+        compliance = new ComplianceRules(mockRunner,
+            entCurator, new StatusReasonMessageGenerator(i18n),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig()));
+        when(mockRunner.runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class))).thenReturn("{}");
+        Consumer c = mockConsumerWithTwoProductsAndNoEntitlements();
+        c.setId("consumer-id");
+        when(entCurator.getEntitlementVersion(c)).thenReturn("0:0:0");
+
+        Date date = TestUtil.createDate(2011, 8, 30);
+        compliance.getStatus(c, date);
+        ComplianceStatus status = compliance.getStatus(c, date);
+        assertEquals(date, status.getDate());
+        verify(mockRunner, times(1)).runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class));
+
+        compliance.invalidateStatus(c);
+        compliance.getStatus(c, date);
+        verify(mockRunner, times(2)).runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class));
+    }
+
+    @Test
+    public void cachedStatusNotUsedWithNewRules() {
+        ComplianceStatusCache cache =
+            new ComplianceStatusCache(new CandlepinCommonTestConfig());
+        JsRunner oldRunner = mock(JsRunner.class);
+        when(oldRunner.getRulesUpdated()).thenReturn(new Date(1000L));
+        when(oldRunner.runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class))).thenReturn("{}");
+        JsRunner newRunner = mock(JsRunner.class);
+        when(newRunner.getRulesUpdated()).thenReturn(new Date(2000L));
+        when(newRunner.runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class))).thenReturn("{}");
+        Consumer c = mockConsumerWithTwoProductsAndNoEntitlements();
+        c.setId("consumer-id");
+        when(entCurator.getEntitlementVersion(c)).thenReturn("0:0:0");
+        Date date = TestUtil.createDate(2011, 8, 30);
+
+        new ComplianceRules(oldRunner, entCurator,
+            new StatusReasonMessageGenerator(i18n), cache).getStatus(c, date);
+        new ComplianceRules(newRunner, entCurator,
+            new StatusReasonMessageGenerator(i18n), cache).getStatus(c, date);
+
+        verify(newRunner).runJsFunction(any(Class.class), eq("get_status"),
+            any(JsContext.class));
+    }
+
     private Consumer mockConsumer(String ... installedProducts) {
         Consumer c = new Consumer();
         c.setType(new ConsumerType(ConsumerType.ConsumerTypeEnum.SYSTEM));
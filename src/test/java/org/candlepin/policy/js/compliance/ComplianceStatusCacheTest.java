@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.policy.js.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.candlepin.model.Consumer;
+import org.candlepin.model.ConsumerInstalledProduct;
+import org.candlepin.model.Entitlement;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ComplianceStatusCacheTest
+ */
+public class ComplianceStatusCacheTest {
+
+    private ComplianceStatusCache cache;
+    private Consumer consumer;
+    private Date date;
+    private List<Entitlement> noEnts = Collections.emptyList();
+
+    @Before
+    public void setUp() {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.COMPLIANCE_CACHE_BUCKET, "600");
+        cache = new ComplianceStatusCache(config);
+
+        consumer = new Consumer();
+        consumer.setId("consumer-id");
+        consumer.setFact("cpu.cpu_socket(s)", "8");
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("product1",
+            "product1"));
+
+        // Start of a bucket:
+        date = new Date(600000L * 2000000);
+    }
+
+    @Test
+    public void hitForSameStateAndBucket() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        assertEquals("status", cache.get(consumer, "1:1:1",
+            new Date(date.getTime() + 60000)));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void missForNewEntitlementVersion() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        assertNull(cache.get(consumer, "2:1:1", date));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void missForNextBucket() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        assertNull(cache.get(consumer, "1:1:1", new Date(date.getTime() + 600000)));
+    }
+
+    @Test
+    public void missForChangedFacts() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        consumer.setFact("cpu.cpu_socket(s)", "16");
+        assertNull(cache.get(consumer, "1:1:1", date));
+    }
+
+    @Test
+    public void missForChangedInstalledProducts() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        consumer.addInstalledProduct(new ConsumerInstalledProduct("product2",
+            "product2"));
+        assertNull(cache.get(consumer, "1:1:1", date));
+    }
+
+    @Test
+    public void notCachedWhenEntitlementEndsInBucket() {
+        Entitlement ent = new Entitlement();
+        ent.setStartDate(new Date(0));
+        ent.setEndDate(new Date(date.getTime() + 300000));
+        cache.put(consumer, "1:1:1", date, Collections.singletonList(ent), "status");
+        assertNull(cache.get(consumer, "1:1:1", date));
+    }
+
+    @Test
+    public void missAfterInvalidate() {
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        cache.invalidate(consumer);
+        assertNull(cache.get(consumer, "1:1:1", date));
+    }
+
+    @Test
+    public void disabledWithoutBucket() {
+        CandlepinCommonTestConfig config = new CandlepinCommonTestConfig();
+        config.setProperty(ConfigProperties.COMPLIANCE_CACHE_BUCKET, "0");
+        cache = new ComplianceStatusCache(config);
+        cache.put(consumer, "1:1:1", date, noEnts, "status");
+        assertNull(cache.get(consumer, "1:1:1", date));
+    }
+}
@@ -21,6 +21,8 @@ import static org.mockito.Mockito.when;
 
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerType;
@@ -31,7 +33,9 @@ import org.candlepin.model.PoolAttribute;
 import org.candlepin.model.Product;
 import org.candlepin.model.ProductAttribute;
 import org.candlepin.policy.ValidationResult;
+import org.candlepin.policy.js.entitlement.Enforcer.CallerType;
 import org.candlepin.test.TestUtil;
+import org.candlepin.util.Util;
 import org.junit.Test;
 
 public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
@@ -544,6 +548,53 @@ public class PreEntitlementRulesTest extends EntitlementRulesTestFixture {
             result.getErrors().get(0).getResourceKey());
     }
 
+    @Test
+    public void batchMatchesSinglePoolResults() {
+        Product product = new Product(productId, "A product for testing");
+        when(this.prodAdapter.getProductById(productId)).thenReturn(product);
+
+        Pool alreadyEntitled = createPool(owner, product);
+        consumer.addEntitlement(new Entitlement(alreadyEntitled, consumer, new Date(),
+            new Date(), 1));
+        Pool virtOnly = createPool(owner, product);
+        virtOnly.addAttribute(new PoolAttribute("virt_only", "true"));
+        Pool exhausted = TestUtil.createPool(owner, product, 0);
+        exhausted.setId("fakeid" + TestUtil.randomInt());
+        Pool available = createPool(owner, product);
+
+        List<Pool> pools = Util.newList();
+        pools.add(alreadyEntitled);
+        pools.add(virtOnly);
+        pools.add(exhausted);
+        pools.add(available);
+
+        Map<Pool, ValidationResult> results = enforcer.preEntitlement(consumer, pools,
+            CallerType.LIST_POOLS);
+        assertEquals(4, results.size());
+        for (Pool pool : pools) {
+            ValidationResult single = enforcer.preEntitlement(consumer, pool, 1,
+                CallerType.LIST_POOLS);
+            assertEquals(single.getErrors().size(), results.get(pool).getErrors().size());
+            assertEquals(single.getWarnings().size(),
+                results.get(pool).getWarnings().size());
+        }
+
+        assertFalse(results.get(alreadyEntitled).isSuccessful());
+        assertEquals("rulefailed.virt.only",
+            results.get(virtOnly).getErrors().get(0).getResourceKey());
+        assertEquals("rulefailed.no.entitlements.available",
+            results.get(exhausted).getErrors().get(0).getResourceKey());
+        assertTrue(results.get(available).isSuccessful());
+        assertFalse(results.get(available).hasWarnings());
+    }
+
+    @Test
+    public void batchWithNoPools() {
+        List<Pool> pools = Util.newList();
+        assertTrue(enforcer.preEntitlement(consumer, pools,
+            CallerType.LIST_POOLS).isEmpty());
+    }
+
     private Pool setupUserRestrictedPool() {
         Product product = new Product(productId, "A user restricted product");
         Pool pool = TestUtil.createPool(owner, product);
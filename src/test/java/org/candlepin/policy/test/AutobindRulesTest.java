@@ -93,7 +93,7 @@ public class AutobindRulesTest {
             TestDateUtil.date(2010, 1, 1));
 
         JsRunner jsRules = new JsRunnerProvider(rulesCurator).get();
-        autobindRules = new AutobindRules(jsRules, productCache);
+        autobindRules = new AutobindRules(jsRules, productCache, config);
 
         owner = new Owner();
         consumer = new Consumer("test consumer", "test user", owner,
@@ -575,4 +575,156 @@ public class AutobindRulesTest {
         assertEquals(new Integer(1), q.getQuantity());
     }
 
+    private List<Pool> createCoveringPools(String... productIds) {
+        List<Pool> pools = new LinkedList<Pool>();
+        for (int i = 0; i < productIds.length; i++) {
+            Product product = new Product(productIds[i], "Product " + i);
+            when(this.prodAdapter.getProductById(productIds[i])).thenReturn(product);
+            Pool pool = TestUtil.createPool(owner, product);
+            pool.setId("POOL-" + productIds[i]);
+            pools.add(pool);
+        }
+
+        // One pool providing every product, which is the best selection:
+        Product all = new Product("all-products", "All products");
+        when(this.prodAdapter.getProductById(all.getId())).thenReturn(all);
+        Pool pool = TestUtil.createPool(owner, all);
+        pool.setId("POOL-ALL");
+        for (String id : productIds) {
+            pool.addProvidedProduct(new ProvidedProduct(id, id));
+        }
+        pools.add(pool);
+        return pools;
+    }
+
+    private AutobindRules createAutobindRules(String mode, int maxNodes) {
+        when(config.getString(eq(ConfigProperties.AUTOBIND_SOLVER))).thenReturn(mode);
+        when(config.getInt(eq(ConfigProperties.AUTOBIND_MAX_NODES))).thenReturn(maxNodes);
+        return new AutobindRules(new JsRunnerProvider(rulesCurator).get(), productCache,
+            config);
+    }
+
+    // Runs both solvers on the same input and checks they select the same pools:
+    private List<PoolQuantity> selectWithBothSolvers(String[] products, List<Pool> pools) {
+        List<PoolQuantity> bounded = createAutobindRules("bounded", 0).selectBestPools(
+            consumer, products, pools, compliance, null, new HashSet<String>());
+        List<PoolQuantity> exhaustive = createAutobindRules("exhaustive", 0)
+            .selectBestPools(consumer, products, pools, compliance, null,
+                new HashSet<String>());
+
+        assertEquals(exhaustive.size(), bounded.size());
+        assertEquals(new HashSet<PoolQuantity>(exhaustive),
+            new HashSet<PoolQuantity>(bounded));
+        return bounded;
+    }
+
+    private Pool createProvidingPool(String id, Product product, String... provided) {
+        when(this.prodAdapter.getProductById(product.getId())).thenReturn(product);
+        Pool pool = TestUtil.createPool(owner, product, 100);
+        pool.setId(id);
+        for (String pid : provided) {
+            pool.addProvidedProduct(new ProvidedProduct(pid, pid));
+        }
+        return pool;
+    }
+
+    @Test
+    public void boundedSolverMatchesExhaustiveSelection() {
+        String[] products = new String[]{ "prod1", "prod2", "prod3", "prod4" };
+        List<Pool> pools = createCoveringPools(products);
+
+        List<PoolQuantity> bestPools = selectWithBothSolvers(products, pools);
+
+        assertEquals(1, bestPools.size());
+        assertEquals("POOL-ALL", bestPools.get(0).getPool().getId());
+    }
+
+    @Test
+    public void boundedSolverMatchesExhaustiveTieBreaking() {
+        // The stacked pool needs 8 entitlements, the two plain pools only 2, but
+        // the exhaustive search settles on the stacked pool, seen last:
+        setupConsumer("8", false);
+        String[] products = new String[]{ "prod1", "prod2" };
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(createProvidingPool("POOL-STACK",
+            mockStackingProduct("stacked", "Stacked product", "1", "1"),
+            "prod1", "prod2"));
+        pools.add(createProvidingPool("POOL-1", new Product("prod1", "Product 1")));
+        pools.add(createProvidingPool("POOL-2", new Product("prod2", "Product 2")));
+
+        List<PoolQuantity> bestPools = selectWithBothSolvers(products, pools);
+
+        assertEquals(1, bestPools.size());
+        assertEquals("POOL-STACK", bestPools.get(0).getPool().getId());
+        assertEquals(new Integer(8), bestPools.get(0).getQuantity());
+    }
+
+    @Test
+    public void boundedSolverMatchesExhaustiveWithOverlappingPools() {
+        String[] products = new String[]{ "prod1", "prod2", "prod3" };
+        List<Pool> pools = new LinkedList<Pool>();
+        pools.add(createProvidingPool("POOL-12", new Product("mkt12", "Product 12"),
+            "prod1", "prod2"));
+        pools.add(createProvidingPool("POOL-23", new Product("mkt23", "Product 23"),
+            "prod2", "prod3"));
+        pools.add(createProvidingPool("POOL-3", new Product("prod3", "Product 3")));
+        pools.add(createProvidingPool("POOL-1", new Product("prod1", "Product 1")));
+
+        List<PoolQuantity> bestPools = selectWithBothSolvers(products, pools);
+
+        assertEquals(2, bestPools.size());
+    }
+
+    @Test
+    public void boundedSolverMatchesExhaustiveWithPartialCoverage() {
+        // Nothing provides prod4, and prod1 has two interchangeable pools:
+        String[] products = new String[]{ "prod1", "prod2", "prod3", "prod4" };
+        List<Pool> pools = new LinkedList<Pool>();
+        Product product1 = new Product("prod1", "Product 1");
+        pools.add(createProvidingPool("POOL-1A", product1));
+        pools.add(createProvidingPool("POOL-1B", product1));
+        pools.add(createProvidingPool("POOL-23", new Product("mkt23", "Product 23"),
+            "prod2", "prod3"));
+        pools.add(createProvidingPool("POOL-3", new Product("prod3", "Product 3")));
+
+        List<PoolQuantity> bestPools = selectWithBothSolvers(products, pools);
+
+        assertEquals(2, bestPools.size());
+    }
+
+    @Test
+    public void boundedSolverMatchesExhaustiveWithManyPools() {
+        setupConsumer("4", false);
+        String[] products = new String[8];
+        List<Pool> pools = new LinkedList<Pool>();
+        for (int i = 0; i < products.length; i++) {
+            products[i] = "prod" + i;
+            pools.add(createProvidingPool("POOL-" + i,
+                new Product(products[i], "Product " + i)));
+        }
+        for (int i = 0; i + 1 < products.length; i += 2) {
+            pools.add(createProvidingPool("POOL-STACK-" + i,
+                mockStackingProduct("stacked" + i, "Stacked " + i, "s" + i, "2"),
+                products[i], products[i + 1]));
+        }
+        pools.add(createProvidingPool("POOL-MOST", new Product("most", "Most products"),
+            products[0], products[2], products[4], products[6], products[7]));
+
+        List<PoolQuantity> bestPools = selectWithBothSolvers(products, pools);
+
+        assertEquals(4, bestPools.size());
+    }
+
+    @Test
+    public void boundedSolverKeepsGreedySelectionWhenBudgetRunsOut() {
+        String[] products = new String[]{ "prod1", "prod2", "prod3", "prod4" };
+        List<Pool> pools = createCoveringPools(products);
+
+        List<PoolQuantity> bestPools = createAutobindRules("bounded", 1).selectBestPools(
+            consumer, products, pools, compliance, null, new HashSet<String>());
+
+        assertEquals(1, bestPools.size());
+        assertEquals("POOL-ALL", bestPools.get(0).getPool().getId());
+    }
+
 }
@@ -23,6 +23,7 @@ import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +40,7 @@ import org.candlepin.exceptions.BadRequestException;
 import org.candlepin.exceptions.NotFoundException;
 import org.candlepin.model.ActivationKey;
 import org.candlepin.model.ActivationKeyCurator;
+import org.candlepin.model.CertificateDeltaDto;
 import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialDto;
 import org.candlepin.model.Consumer;
@@ -79,12 +81,17 @@ import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 /**
  * ConsumerResourceTest
  */
@@ -112,27 +119,154 @@ public class ConsumerResourceTest {
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     public void testGetCertSerials() {
         Consumer consumer = createConsumer();
-        List<EntitlementCertificate> certificates = createEntitlementCertificates();
+        Request request = mock(Request.class);
 
-        when(mockedEntitlementCertServiceAdapter.listForConsumer(consumer))
-            .thenReturn(certificates);
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-1");
         when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
             consumer);
-        when(mockedEntitlementCurator.listByConsumer(consumer)).thenReturn(
+        when(mockedEntitlementCurator.listDirtyByConsumer(consumer)).thenReturn(
             new ArrayList<Entitlement>());
 
-        ConsumerResource consumerResource = new ConsumerResource(
+        Response response = createSerialsResource()
+            .getEntitlementCertificateSerials(consumer.getUuid(), request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(new EntityTag("consumer-1"),
+            response.getMetadata().getFirst("ETag"));
+        verifyCertificateSerialNumbers(
+            (List<CertificateSerialDto>) response.getEntity());
+        verify(mockedPoolManager, never()).regenerateDirtyEntitlements(
+            any(List.class));
+        verify(mockedEntitlementCertServiceAdapter, never()).listForConsumer(
+            any(Consumer.class));
+    }
+
+    @Test
+    public void testGetCertSerialsNotModified() {
+        Consumer consumer = createConsumer();
+        Request request = mock(Request.class);
+
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-1");
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(mockedEntitlementCurator.listDirtyByConsumer(consumer)).thenReturn(
+            new ArrayList<Entitlement>());
+        when(request.evaluatePreconditions(new EntityTag("consumer-1")))
+            .thenReturn(Response.notModified());
+
+        Response response = createSerialsResource()
+            .getEntitlementCertificateSerials(consumer.getUuid(), request);
+
+        assertEquals(304, response.getStatus());
+        verify(mockedEntitlementCertServiceAdapter, never()).listSerialIdsForConsumer(
+            any(Consumer.class));
+    }
+
+    @Test
+    public void testGetCertSerialsRegeneratesDirtyEntitlements() {
+        Consumer consumer = createConsumer();
+        Request request = mock(Request.class);
+        List<Entitlement> dirty = Arrays.asList(new Entitlement());
+
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-2");
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(mockedEntitlementCurator.listDirtyByConsumer(consumer)).thenReturn(
+            dirty);
+
+        createSerialsResource().getEntitlementCertificateSerials(
+            consumer.getUuid(), request);
+
+        verify(mockedPoolManager).regenerateDirtyEntitlements(dirty);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetCertDelta() {
+        Consumer consumer = createConsumer();
+        Request request = mock(Request.class);
+        EntitlementCertificate cert = createEntitlementCertificate("key3", "cert3");
+
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(1L, 3L));
+        when(mockedEntitlementCertServiceAdapter.listForConsumer(eq(consumer),
+            eq(new HashSet<Long>(Arrays.asList(3L))))).thenReturn(Arrays.asList(cert));
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-3");
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+
+        Response response = createSerialsResource().getEntitlementCertificateDelta(
+            consumer.getUuid(), "1,2", request);
+
+        assertEquals(200, response.getStatus());
+        CertificateDeltaDto delta = (CertificateDeltaDto) response.getEntity();
+        assertEquals(Arrays.asList(cert), delta.getAdded());
+        assertEquals(Arrays.asList(2L), delta.getRemoved());
+        verify(mockedEntitlementCertServiceAdapter, never()).listForConsumer(
+            any(Consumer.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetCertDeltaWithoutKnownSerials() {
+        Consumer consumer = createConsumer();
+        Request request = mock(Request.class);
+        EntitlementCertificate cert = createEntitlementCertificate("key3", "cert3");
+
+        when(mockedEntitlementCertServiceAdapter.listSerialIdsForConsumer(consumer))
+            .thenReturn(Arrays.asList(3L));
+        when(mockedEntitlementCertServiceAdapter.listForConsumer(consumer))
+            .thenReturn(Arrays.asList(cert));
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-3");
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+
+        Response response = createSerialsResource().getEntitlementCertificateDelta(
+            consumer.getUuid(), null, request);
+
+        CertificateDeltaDto delta = (CertificateDeltaDto) response.getEntity();
+        assertEquals(Arrays.asList(cert), delta.getAdded());
+        assertTrue(delta.getRemoved().isEmpty());
+        verify(mockedEntitlementCertServiceAdapter, never()).listForConsumer(
+            any(Consumer.class), any(Collection.class));
+    }
+
+    @Test
+    public void testGetCertDeltaNotModified() {
+        Consumer consumer = createConsumer();
+        Request request = mock(Request.class);
+
+        when(mockedEntitlementCertServiceAdapter.getSerialsVersion(consumer))
+            .thenReturn("consumer-3");
+        when(mockedConsumerCurator.findByUuid(consumer.getUuid())).thenReturn(
+            consumer);
+        when(request.evaluatePreconditions(new EntityTag("consumer-3")))
+            .thenReturn(Response.notModified());
+
+        Response response = createSerialsResource().getEntitlementCertificateDelta(
+            consumer.getUuid(), "1,3", request);
+
+        assertEquals(304, response.getStatus());
+        verify(mockedEntitlementCertServiceAdapter, never()).listSerialIdsForConsumer(
+            any(Consumer.class));
+    }
+
+    private ConsumerResource createSerialsResource() {
+        return new ConsumerResource(
             mockedConsumerCurator, null, null, null, mockedEntitlementCurator, null,
             mockedEntitlementCertServiceAdapter, null, null, null, null, null,
             null, null, mockedPoolManager, null, null, null, null, null, null,
             null, null, new CandlepinCommonTestConfig());
-
-        List<CertificateSerialDto> serials = consumerResource
-            .getEntitlementCertificateSerials(consumer.getUuid());
-
-        verifyCertificateSerialNumbers(serials);
     }
 
     @Test (expected = RuntimeException.class)
@@ -175,13 +309,6 @@ public class ConsumerResourceTest {
         assertTrue(serials.get(0).getSerial() > 0);
     }
 
-    private List<EntitlementCertificate> createEntitlementCertificates() {
-        return Arrays.asList(new EntitlementCertificate[]{
-            createEntitlementCertificate("key1", "cert1"),
-            createEntitlementCertificate("key2", "cert2"),
-            createEntitlementCertificate("key3", "cert3") });
-    }
-
 
     /**
      * Test just verifies that entitler is called only once and it doesn't need
@@ -14,6 +14,8 @@
  */
 package org.candlepin.resource.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
@@ -21,50 +23,89 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import org.candlepin.config.Config;
-import org.candlepin.config.ConfigProperties;
-import org.candlepin.controller.CrlGenerator;
+import org.candlepin.controller.CrlCache;
+import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.resource.CrlResource;
-import org.candlepin.util.CrlFileUtil;
+import org.junit.Before;
 import org.junit.Test;
 
-import java.io.File;
 import java.security.cert.X509CRL;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
 /**
  * CrlResourceTest
  */
 public class CrlResourceTest {
 
-    @Test
-    @SuppressWarnings("unchecked")
-    public void unrevoke() throws Exception {
-        CrlGenerator crlgen = mock(CrlGenerator.class);
-        CrlFileUtil fileutil = mock(CrlFileUtil.class);
-        CertificateSerialCurator sercur = mock(CertificateSerialCurator.class);
-        Config config = new ConfigForTesting();
+    private CrlCache crlCache;
+    private CertificateSerialCurator sercur;
+    private Request request;
+    private Date updated;
+    private CrlCache.Entry entry;
+    private CrlResource res;
+
+    @Before
+    public void init() {
+        crlCache = mock(CrlCache.class);
+        sercur = mock(CertificateSerialCurator.class);
+        request = mock(Request.class);
+
+        updated = new Date();
         X509CRL crl = mock(X509CRL.class);
-        when(fileutil.readCRLFile(any(File.class))).thenReturn(crl);
-        when(crlgen.removeEntries(eq(crl), any(List.class))).thenReturn(crl);
+        when(crl.getThisUpdate()).thenReturn(updated);
+        entry = new CrlCache.Entry("crl".getBytes(), crl);
+
+        res = new CrlResource(crlCache, sercur);
+    }
 
-        CrlResource res = new CrlResource(crlgen, fileutil, config, sercur);
+    @Test
+    public void unrevoke() throws Exception {
+        List<CertificateSerial> serials = new ArrayList<CertificateSerial>();
+        serials.add(new CertificateSerial(10L, new Date()));
         String[] ids = {"10"};
+        when(sercur.listBySerialIds(ids)).thenReturn(serials);
+
         res.unrevoke(ids);
-        verify(crlgen, atLeastOnce()).removeEntries(eq(crl), any(List.class));
-        verify(fileutil, atLeastOnce()).writeCRLFile(any(File.class), eq(crl));
+        verify(crlCache, atLeastOnce()).removeEntries(eq(serials));
     }
 
-    private static class ConfigForTesting extends Config {
-        public ConfigForTesting() {
-            super(new HashMap<String, String>() {
-                private static final long serialVersionUID = 1L;
-                {
-                    this.put(ConfigProperties.CRL_FILE_PATH, "/tmp/test-crl.crl");
-                }
-            });
-        }
+    @Test
+    public void getCurrentCrlServesCachedCrl() throws Exception {
+        when(crlCache.get()).thenReturn(entry);
+
+        Response response = res.getCurrentCrl(null, request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("crl", response.getEntity());
+        verify(request).evaluatePreconditions(eq(updated), any(EntityTag.class));
+    }
+
+    @Test
+    public void getCurrentCrlNotModified() throws Exception {
+        when(crlCache.get()).thenReturn(entry);
+        when(request.evaluatePreconditions(eq(updated), any(EntityTag.class)))
+            .thenReturn(Response.notModified());
+
+        Response response = res.getCurrentCrl(null, request);
+
+        assertEquals(304, response.getStatus());
+        assertNull(response.getEntity());
+    }
+
+    @Test
+    public void getDeltaCrlServesCachedDelta() throws Exception {
+        when(crlCache.getDelta()).thenReturn(entry);
+
+        Response response = res.getDeltaCrl(null, request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("crl", response.getEntity());
     }
 }
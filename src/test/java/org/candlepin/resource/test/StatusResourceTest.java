@@ -23,10 +23,16 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.candlepin.audit.EventSinkStats;
+import org.candlepin.audit.ListenerMetrics;
+import org.candlepin.audit.ListenerStats;
 import org.candlepin.config.Config;
+import org.candlepin.model.CacheStats;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
 import org.candlepin.model.Status;
+import org.candlepin.pki.KeyPairPool;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.resource.StatusResource;
 
 import org.apache.log4j.Appender;
@@ -42,6 +48,7 @@ import org.mockito.MockitoAnnotations;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Map;
 
 
 /**
@@ -51,21 +58,32 @@ public class StatusResourceTest {
 
     @Mock private RulesCurator rulesCurator;
     @Mock private Config config;
+    @Mock private ComplianceStatusCache complianceCache;
+    @Mock private KeyPairPool keyPairPool;
+    private ListenerMetrics metrics;
+    private EventSinkStats eventSinkStats;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        metrics = new ListenerMetrics();
+        eventSinkStats = new EventSinkStats();
         when(rulesCurator.listAll()).thenReturn(new ArrayList<Rules>());
         when(rulesCurator.getRules()).thenReturn(new Rules("// Version: 2.0\nBLAH"));
     }
 
+    private StatusResource createResource(Config config) {
+        return new StatusResource(rulesCurator, config, metrics, eventSinkStats,
+            complianceCache, keyPairPool);
+    }
+
     @Test
     public void status() throws Exception {
         PrintStream ps = new PrintStream(new File(this.getClass()
             .getClassLoader().getResource("candlepin_info.properties").toURI()));
         ps.println("version=${version}");
         ps.println("release=${release}");
-        StatusResource sr = new StatusResource(rulesCurator, config);
+        StatusResource sr = createResource(config);
         Status s = sr.status();
         ps.close();
         assertNotNull(s);
@@ -79,7 +97,7 @@ public class StatusResourceTest {
         PrintStream ps = new PrintStream(new File(this.getClass()
             .getClassLoader().getResource("candlepin_info.properties").toURI()));
         ps.println("foo");
-        StatusResource sr = new StatusResource(rulesCurator, config);
+        StatusResource sr = createResource(config);
         Status s = sr.status();
         ps.close();
         assertNotNull(s);
@@ -95,7 +113,7 @@ public class StatusResourceTest {
         ps.println("version=${version}");
         ps.println("release=${release}");
         when(rulesCurator.listAll()).thenThrow(new RuntimeException());
-        StatusResource sr = new StatusResource(rulesCurator, config);
+        StatusResource sr = createResource(config);
         Status s = sr.status();
         ps.close();
         assertNotNull(s);
@@ -117,7 +135,7 @@ public class StatusResourceTest {
             .getClassLoader().getResource("candlepin_info.properties").toURI()));
         ps.println("version=${version}");
         ps.println("release=${release}");
-        StatusResource sr = new StatusResource(rulesCurator, null);
+        StatusResource sr = createResource(null);
         Status s = sr.status();
         ps.close();
 
@@ -129,4 +147,47 @@ public class StatusResourceTest {
         assertTrue(s.getResult());
         assertFalse(s.getStandalone());
     }
+
+    @Test
+    public void eventListeners() {
+        metrics.forListener("org.candlepin.audit.LoggingListener");
+        StatusResource sr = createResource(config);
+        Map<String, ListenerStats> listeners = sr.eventListeners();
+        assertEquals(1, listeners.size());
+        assertEquals(0, listeners.get("org.candlepin.audit.LoggingListener")
+            .getProcessed());
+    }
+
+    @Test
+    public void eventSink() {
+        StatusResource sr = createResource(config);
+        assertEquals(0, sr.eventSink().getPendingEvents());
+        assertEquals(0, sr.eventSink().getAverageFlushMillis());
+    }
+
+    @Test
+    public void complianceCache() {
+        when(complianceCache.getSize()).thenReturn(2);
+        when(complianceCache.getHits()).thenReturn(5L);
+        when(complianceCache.getMisses()).thenReturn(3L);
+
+        CacheStats stats = createResource(config).complianceCache();
+
+        assertEquals(2, stats.getSize());
+        assertEquals(5L, stats.getHits());
+        assertEquals(3L, stats.getMisses());
+    }
+
+    @Test
+    public void keyPairPool() {
+        when(keyPairPool.getDepth()).thenReturn(10);
+        when(keyPairPool.getHits()).thenReturn(7L);
+        when(keyPairPool.getMisses()).thenReturn(1L);
+
+        CacheStats stats = createResource(config).keyPairPool();
+
+        assertEquals(10, stats.getSize());
+        assertEquals(7L, stats.getHits());
+        assertEquals(1L, stats.getMisses());
+    }
 }
@@ -17,11 +17,20 @@ package org.candlepin.resource.util;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,6 +39,7 @@ import java.util.Locale;
 import java.util.Random;
 import java.util.Set;
 
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.ConsumerInstalledProduct;
 import org.candlepin.model.ConsumerType;
@@ -45,6 +55,7 @@ import org.candlepin.model.RulesCurator;
 import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.policy.js.compliance.ComplianceRules;
 import org.candlepin.policy.js.compliance.ComplianceStatus;
+import org.candlepin.policy.js.compliance.ComplianceStatusCache;
 import org.candlepin.policy.js.compliance.StatusReasonMessageGenerator;
 import org.candlepin.util.Util;
 import org.junit.Before;
@@ -65,6 +76,7 @@ public class InstalledProductStatusCalculatorTest {
     private ComplianceRules compliance;
 
     private static final String PRODUCT_1 = "product1";
+    private static final String PRODUCT_2 = "product2";
     private static final String STACK_ID_1 = "my-stack-1";
 
     @Mock private EntitlementCurator entCurator;
@@ -87,7 +99,8 @@ public class InstalledProductStatusCalculatorTest {
         i18n = I18nFactory.getI18n(getClass(), "org.candlepin.i18n.Messages", locale,
             I18nFactory.FALLBACK);
         compliance = new ComplianceRules(provider.get(),
-            entCurator, new StatusReasonMessageGenerator(i18n));
+            entCurator, new StatusReasonMessageGenerator(i18n),
+            new ComplianceStatusCache(new CandlepinCommonTestConfig()));
         owner = new Owner("test");
     }
 
@@ -440,6 +453,223 @@ public class InstalledProductStatusCalculatorTest {
         assertEquals(range2.getEndDate(), validRange.getEndDate());
     }
 
+    @Test
+    public void validRangeMatchesOldCalculationForMixedStacks() {
+        // Fixed seed, month offsets so start and end dates often coincide:
+        Random random = new Random(5);
+        Date now = new Date();
+        for (int run = 0; run < 100; run++) {
+            Consumer c = mockConsumer(PRODUCT_1);
+            int count = 1 + random.nextInt(6);
+            for (int i = 0; i < count; i++) {
+                int start = random.nextInt(13) - 8;
+                DateRange range = rangeRelativeToDate(now, start,
+                    start + 1 + random.nextInt(8));
+                switch (random.nextInt(4)) {
+                    case 0:
+                        c.addEntitlement(mockEntitlement(c, PRODUCT_1, range,
+                            PRODUCT_1));
+                        break;
+                    case 1:
+                        // not enough sockets for the consumer on its own:
+                        Entitlement ent = mockEntitlement(c, PRODUCT_1, range,
+                            PRODUCT_1);
+                        ent.getPool().setProductAttribute("sockets", "2", PRODUCT_1);
+                        c.addEntitlement(ent);
+                        break;
+                    case 2:
+                        // partial stack on its own:
+                        c.addEntitlement(mockStackedEntitlement(c, range, STACK_ID_1,
+                            PRODUCT_1, 1, PRODUCT_1));
+                        break;
+                    default:
+                        c.addEntitlement(mockStackedEntitlement(c, range, STACK_ID_1,
+                            PRODUCT_1, 2, PRODUCT_1));
+                }
+            }
+
+            List<Entitlement> ents = new LinkedList<Entitlement>(c.getEntitlements());
+            when(entCurator.listByConsumer(eq(c))).thenReturn(ents);
+            ComplianceStatus status = compliance.getStatus(c, now);
+            ConsumerInstalledProductEnricher calculator =
+                new ConsumerInstalledProductEnricher(c, status, compliance);
+            Product p = new Product(PRODUCT_1, "Awesome Product");
+
+            DateRange expected = oldValidDateRange(calculator, c, status, p);
+            DateRange validRange = calculator.getValidDateRange(p);
+            String message = "run " + run + ": " + ents;
+            if (expected == null) {
+                assertNull(message, validRange);
+            }
+            else {
+                assertEquals(message, expected.getStartDate(), validRange.getStartDate());
+                assertEquals(message, expected.getEndDate(), validRange.getEndDate());
+            }
+        }
+    }
+
+    @Test
+    public void validRangeChecksRulesOncePerActiveSet() {
+        Consumer c = mockConsumer(PRODUCT_1, PRODUCT_2);
+
+        Calendar cal = Calendar.getInstance();
+        Date now = cal.getTime();
+        DateRange range = rangeRelativeToDate(now, -5, 4);
+        DateRange stackRange = rangeRelativeToDate(now, -4, 4);
+        // covers the sockets only together, so the stack is checked:
+        c.addEntitlement(mockStackedEntitlement(c, stackRange, STACK_ID_1, PRODUCT_1,
+            1, PRODUCT_1, PRODUCT_2));
+        c.addEntitlement(mockStackedEntitlement(c, stackRange, STACK_ID_1, PRODUCT_1,
+            1, PRODUCT_1, PRODUCT_2));
+        // starts first, so it is the one checked a second after its end:
+        Entitlement nonStacked = mockEntitlement(c, PRODUCT_1, range, PRODUCT_1,
+            PRODUCT_2);
+        c.addEntitlement(nonStacked);
+
+        List<Entitlement> ents = new LinkedList<Entitlement>(c.getEntitlements());
+        when(entCurator.listByConsumer(eq(c))).thenReturn(ents);
+
+        ComplianceStatus status = compliance.getStatus(c, now);
+        ComplianceRules rules = spy(compliance);
+        ConsumerInstalledProductEnricher calculator =
+            new ConsumerInstalledProductEnricher(c, status, rules);
+        for (Product p : Arrays.asList(new Product(PRODUCT_1, "Awesome Product"),
+            new Product(PRODUCT_2, "Other Product"))) {
+            DateRange expected = oldValidDateRange(calculator, c, status, p);
+            DateRange validRange = calculator.getValidDateRange(p);
+            assertEquals(expected.getStartDate(), validRange.getStartDate());
+            assertEquals(expected.getEndDate(), validRange.getEndDate());
+        }
+
+        // All three are active on every date the stack is checked, for both
+        // products:
+        verify(rules, times(1)).isStackCompliant(any(Consumer.class), anyString(),
+            anyListOf(Entitlement.class));
+        verify(rules, times(1)).isEntitlementCompliant(any(Consumer.class),
+            eq(nonStacked));
+    }
+
+    /*
+     * The valid date range as it was calculated before the enricher swept the
+     * dates once and remembered rules results, to check the two agree.
+     */
+    private DateRange oldValidDateRange(ConsumerInstalledProductEnricher calculator,
+        Consumer c, ComplianceStatus status, Product product) {
+        if (!"green".equals(calculator.getStatus(product.getId()))) {
+            return null;
+        }
+        List<Entitlement> all = new ArrayList<Entitlement>();
+        for (Entitlement ent : c.getEntitlements()) {
+            if (ent.getPool().provides(product.getId())) {
+                all.add(ent);
+            }
+        }
+
+        // the group of entitlements without gaps spanning the status date:
+        List<Entitlement> possible = new ArrayList<Entitlement>();
+        List<Entitlement> sorted = sortByStartDate(all);
+        List<Entitlement> group = new ArrayList<Entitlement>();
+        boolean spansStatusDate = false;
+        for (int i = 0; i < sorted.size(); i++) {
+            Entitlement ent = sorted.get(i);
+            group.add(ent);
+            spansStatusDate |= rangeOf(ent).contains(status.getDate());
+            if (i == sorted.size() - 1 || oldGapExistsBetween(ent, sorted.get(i + 1))) {
+                if (spansStatusDate) {
+                    possible = group;
+                    break;
+                }
+                group = new ArrayList<Entitlement>();
+            }
+        }
+        if (possible.isEmpty()) {
+            return null;
+        }
+
+        Date startDate = null;
+        Date endDate = null;
+        Entitlement lastProcessed = null;
+        possible = sortByStartDate(possible);
+        for (int i = 0; i < possible.size(); i++) {
+            boolean last = i == possible.size() - 1;
+            Entitlement next = possible.get(i);
+            boolean validOnStart = oldValidOnDate(c, next, possible, next.getStartDate());
+            boolean validOnEnd = oldValidOnDate(c, next, possible, next.getEndDate());
+
+            boolean validAfterLast = true;
+            if (lastProcessed != null && !last) {
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(lastProcessed.getEndDate());
+                cal.add(Calendar.SECOND, 1);
+                validAfterLast = oldValidOnDate(c, lastProcessed, possible,
+                    cal.getTime());
+                if (!validAfterLast) {
+                    startDate = null;
+                }
+            }
+            if (validOnStart && validAfterLast &&
+                (startDate == null || startDate.after(next.getStartDate()))) {
+                startDate = next.getStartDate();
+            }
+            if (validOnEnd && (endDate == null || endDate.before(next.getEndDate()))) {
+                endDate = next.getEndDate();
+            }
+            lastProcessed = next;
+        }
+        if (startDate == null || endDate == null) {
+            return null;
+        }
+        return new DateRange(startDate, endDate);
+    }
+
+    private boolean oldValidOnDate(Consumer c, Entitlement ent,
+        List<Entitlement> possible, Date date) {
+        boolean activeOnDate = rangeOf(ent).contains(date);
+        if (ent.getPool().hasProductAttribute("stacking_id")) {
+            List<Entitlement> active = new ArrayList<Entitlement>();
+            for (Entitlement next : possible) {
+                if (rangeOf(next).contains(date)) {
+                    active.add(next);
+                }
+            }
+            String stackId = ent.getPool().getProductAttribute("stacking_id").getValue();
+            if (compliance.isStackCompliant(c, stackId, active)) {
+                return true;
+            }
+            for (Entitlement next : active) {
+                if (!next.getPool().hasProductAttribute("stacking_id") && activeOnDate) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return compliance.isEntitlementCompliant(c, ent) && activeOnDate;
+    }
+
+    private boolean oldGapExistsBetween(Entitlement ent1, Entitlement ent2) {
+        DateRange range1 = rangeOf(ent1);
+        DateRange range2 = rangeOf(ent2);
+        return !range1.contains(ent2.getStartDate()) &&
+            !range1.contains(ent2.getEndDate()) &&
+            !range2.contains(ent1.getStartDate()) &&
+            !range2.contains(ent1.getEndDate());
+    }
+
+    private DateRange rangeOf(Entitlement ent) {
+        return new DateRange(ent.getStartDate(), ent.getEndDate());
+    }
+
+    private List<Entitlement> sortByStartDate(List<Entitlement> toSort) {
+        List<Entitlement> sorted = new ArrayList<Entitlement>(toSort);
+        Collections.sort(sorted, new Comparator<Entitlement>() {
+            @Override
+            public int compare(Entitlement ent1, Entitlement ent2) {
+                return ent1.getStartDate().compareTo(ent2.getStartDate());
+            }
+        });
+        return sorted;
+    }
+
     private Entitlement mockEntitlement(Consumer consumer, String productId,
         DateRange range, String ... providedProductIds) {
 
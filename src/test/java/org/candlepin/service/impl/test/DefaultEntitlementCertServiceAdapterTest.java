@@ -57,6 +57,7 @@ import org.candlepin.model.CertificateSerial;
 import org.candlepin.model.CertificateSerialCurator;
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Content;
+import org.candlepin.model.EntitledProducts;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.EntitlementCertificate;
 import org.candlepin.model.EntitlementCertificateCurator;
@@ -78,6 +79,7 @@ import org.candlepin.pki.impl.BouncyCastlePKIUtility;
 import org.candlepin.service.ProductServiceAdapter;
 import org.candlepin.service.impl.DefaultEntitlementCertServiceAdapter;
 import org.candlepin.util.CertificateSizeException;
+import org.candlepin.util.ContentPayloadCache;
 import org.candlepin.util.Util;
 import org.candlepin.util.X509ExtensionUtil;
 import org.candlepin.util.X509V3ExtensionUtil;
@@ -153,7 +155,8 @@ public class DefaultEntitlementCertServiceAdapterTest {
     public void setUp() {
         Config config = new CandlepinCommonTestConfig();
         extensionUtil = new X509ExtensionUtil(config);
-        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator);
+        v3extensionUtil = new X509V3ExtensionUtil(config, entCurator,
+            new ContentPayloadCache(config));
 
         certServiceAdapter = new DefaultEntitlementCertServiceAdapter(
             mockedPKI, extensionUtil, v3extensionUtil,
@@ -451,10 +454,6 @@ public class DefaultEntitlementCertServiceAdapterTest {
         Product modProduct = new Product("12345", "a product", "variant",
             "version", "arch", "SVC");
 
-        // Use this set for successful providing queries:
-        Set<Entitlement> successResult = new HashSet<Entitlement>();
-        successResult.add(new Entitlement()); // just need something in there
-
         Content normalContent = createContent(CONTENT_NAME, CONTENT_ID,
             CONTENT_LABEL, CONTENT_TYPE, CONTENT_VENDOR, CONTENT_URL,
             CONTENT_GPG_URL);
@@ -473,10 +472,9 @@ public class DefaultEntitlementCertServiceAdapterTest {
         // First check that if we have no entitlements providing the modified
         // products,
         // the content set is filtered out:
-        when(
-            this.entCurator.listProviding(any(Consumer.class), eq("product1"),
-                any(Date.class), any(Date.class))).thenReturn(
-                    new HashSet<Entitlement>());
+        EntitledProducts entitled = new EntitledProducts("1");
+        when(this.entCurator.getEntitledProducts(any(Consumer.class)))
+            .thenReturn(entitled);
         // Mod content should get filtered out because we have no ents providing
         // the product it modifies:
         assertEquals(1,
@@ -487,9 +485,7 @@ public class DefaultEntitlementCertServiceAdapterTest {
         // Now mock that we have an entitlement providing one of the modified
         // products,
         // and we should see both content sets included in the cert:
-        when(
-            this.entCurator.listProviding(any(Consumer.class), eq("product2"),
-                any(Date.class), any(Date.class))).thenReturn(successResult);
+        entitled.add("product2", entitlement.getStartDate(), entitlement.getEndDate());
         assertEquals(2,
             extensionUtil.filterProductContent(modProduct, entitlement, entCurator,
                 new HashMap<String, EnvironmentContent>(), false)
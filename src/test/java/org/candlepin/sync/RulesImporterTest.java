@@ -25,6 +25,7 @@ import java.io.StringReader;
 import org.candlepin.audit.EventSink;
 import org.candlepin.model.Rules;
 import org.candlepin.model.RulesCurator;
+import org.candlepin.policy.js.JsRunnerProvider;
 import org.candlepin.test.DatabaseTestFixture;
 import org.junit.Before;
 import org.junit.Test;
@@ -40,11 +41,13 @@ import org.mockito.runners.MockitoJUnitRunner;
 public class RulesImporterTest extends DatabaseTestFixture {
 
     @Mock private RulesCurator curator;
+    @Mock private JsRunnerProvider jsProvider;
     private RulesImporter importer;
 
     @Before
     public void setUp() {
-        importer = new RulesImporter(curator, injector.getInstance(EventSink.class));
+        importer = new RulesImporter(curator, injector.getInstance(EventSink.class),
+            jsProvider);
     }
 
     @Test
@@ -54,6 +57,7 @@ public class RulesImporterTest extends DatabaseTestFixture {
 
         importer.importObject(new StringReader("//Version: 2.1"));
         verify(curator).update(any(Rules.class));
+        verify(jsProvider).invalidate();
     }
 
     @Test
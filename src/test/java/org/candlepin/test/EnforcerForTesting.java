@@ -14,6 +14,10 @@
  */
 package org.candlepin.test;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.candlepin.model.Consumer;
 import org.candlepin.model.Entitlement;
 import org.candlepin.model.Pool;
@@ -46,6 +50,16 @@ public class EnforcerForTesting implements Enforcer {
         return new ValidationResult();
     }
 
+    @Override
+    public Map<Pool, ValidationResult> preEntitlement(Consumer consumer,
+            List<Pool> pools, CallerType caller) {
+        Map<Pool, ValidationResult> results = new HashMap<Pool, ValidationResult>();
+        for (Pool pool : pools) {
+            results.put(pool, new ValidationResult());
+        }
+        return results;
+    }
+
     public PreUnbindHelper preUnbind(Consumer consumer, Pool entitlementPool) {
         return new PreUnbindHelper(null);
     }
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2009 - 2012 Red Hat, Inc.
+ *
+ * This software is licensed to you under the GNU General Public License,
+ * version 2 (GPLv2). There is NO WARRANTY for this software, express or
+ * implied, including the implied warranties of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. You should have received a copy of GPLv2
+ * along with this software; if not, see
+ * http://www.gnu.org/licenses/old-licenses/gpl-2.0.txt.
+ *
+ * Red Hat trademarks are not licensed under GPLv2. No permission is
+ * granted to use or replicate Red Hat trademarks that are incorporated
+ * in this software or its documentation.
+ */
+package org.candlepin.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
+import org.candlepin.config.ConfigProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * ContentPayloadCacheTest
+ */
+public class ContentPayloadCacheTest {
+
+    private CandlepinCommonTestConfig config;
+    private List<String> paths = Arrays.asList("/content/dist/rhel/os",
+        "/content/dist/rhel/debug");
+
+    @Before
+    public void setUp() {
+        config = new CandlepinCommonTestConfig();
+    }
+
+    @Test
+    public void hitForSamePaths() {
+        ContentPayloadCache cache = new ContentPayloadCache(config);
+        cache.put(paths, new byte[] {1, 2, 3});
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get(Arrays.asList(
+            "/content/dist/rhel/os", "/content/dist/rhel/debug")));
+    }
+
+    @Test
+    public void missForDifferentPaths() {
+        ContentPayloadCache cache = new ContentPayloadCache(config);
+        cache.put(paths, new byte[] {1, 2, 3});
+        assertNull(cache.get(Arrays.asList("/content/dist/rhel/os")));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverLimit() {
+        // Each entry is 100 bytes of payload plus 4 bytes for its path.
+        config.setProperty(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX_BYTES, "250");
+        ContentPayloadCache cache = new ContentPayloadCache(config);
+        cache.put(Arrays.asList("/a"), new byte[100]);
+        cache.put(Arrays.asList("/b"), new byte[100]);
+        cache.get(Arrays.asList("/a"));
+        cache.put(Arrays.asList("/c"), new byte[100]);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(Arrays.asList("/b")));
+        assertArrayEquals(new byte[100], cache.get(Arrays.asList("/a")));
+    }
+
+    @Test
+    public void disabledWithNoLimit() {
+        config.setProperty(ConfigProperties.CONTENT_PAYLOAD_CACHE_MAX_BYTES, "0");
+        ContentPayloadCache cache = new ContentPayloadCache(config);
+        cache.put(paths, new byte[] {1, 2, 3});
+        assertNull(cache.get(paths));
+        assertEquals(0, cache.size());
+    }
+}
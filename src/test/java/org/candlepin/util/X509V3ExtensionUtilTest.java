@@ -16,14 +16,22 @@ package org.candlepin.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.candlepin.config.CandlepinCommonTestConfig;
 import org.candlepin.config.Config;
 import org.candlepin.model.EntitlementCurator;
 import org.candlepin.model.Product;
 import org.candlepin.model.Content;
 import org.candlepin.model.ProductContent;
+import org.candlepin.pki.X509ByteExtensionWrapper;
+import org.candlepin.util.X509V3ExtensionUtil.HuffNode;
 import org.candlepin.util.X509V3ExtensionUtil.NodePair;
 import org.candlepin.util.X509V3ExtensionUtil.PathNode;
 import org.junit.Test;
@@ -38,7 +46,8 @@ public class X509V3ExtensionUtilTest {
     public void compareToEquals() {
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
         PathNode pn = util.new PathNode();
         NodePair np = new NodePair("name", pn);
         NodePair np1 = new NodePair("name", pn);
@@ -50,7 +59,8 @@ public class X509V3ExtensionUtilTest {
     public void nullCompareTo() {
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
         PathNode pn = util.new PathNode();
         NodePair np = new NodePair("name", pn);
         assertEquals(1, np.compareTo(null));
@@ -60,7 +70,8 @@ public class X509V3ExtensionUtilTest {
     public void nullEquals() {
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
         PathNode pn = util.new PathNode();
         NodePair np = new NodePair("name", pn);
         assertFalse(np.equals(null));
@@ -70,7 +81,8 @@ public class X509V3ExtensionUtilTest {
     public void otherObjectEquals() {
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
         PathNode pn = util.new PathNode();
         NodePair np = new NodePair("name", pn);
         assertFalse(np.equals(pn));
@@ -80,7 +92,8 @@ public class X509V3ExtensionUtilTest {
     public void notEqualNodes() {
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
         PathNode pn = util.new PathNode();
         NodePair np = new NodePair("name", pn);
         NodePair np1 = new NodePair("diff", pn);
@@ -96,7 +109,8 @@ public class X509V3ExtensionUtilTest {
         ProductContent pc = new ProductContent(p, c, true);
         Config config = mock(Config.class);
         EntitlementCurator ec = mock(EntitlementCurator.class);
-        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
 
         assertEquals("/this/is/some/path", util.createFullContentPath("/this/is", pc));
         assertEquals("/this/is/some/path", util.createFullContentPath("/this/is/", pc));
@@ -122,4 +136,64 @@ public class X509V3ExtensionUtilTest {
         c.setContentUrl("file://some/path");
         assertEquals("file://some/path", util.createFullContentPath("/this/is", pc));
     }
+
+    @Test
+    public void trieTiesFavourListOrderThenMergedNodes() {
+        Config config = mock(Config.class);
+        EntitlementCurator ec = mock(EntitlementCurator.class);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
+
+        List<HuffNode> nodes = new ArrayList<HuffNode>();
+        for (String name : new String[] {"a", "b", "c", "d"}) {
+            nodes.add(util.new HuffNode(name, 1));
+        }
+        HuffNode trie = util.makeTrie(nodes);
+        assertEquals("00", util.findHuffPath(trie, "a"));
+        assertEquals("01", util.findHuffPath(trie, "b"));
+        assertEquals("10", util.findHuffPath(trie, "c"));
+        assertEquals("11", util.findHuffPath(trie, "d"));
+
+        // an original node goes before a merged node of the same weight
+        nodes = new ArrayList<HuffNode>();
+        nodes.add(util.new HuffNode("a", 1));
+        nodes.add(util.new HuffNode("b", 1));
+        nodes.add(util.new HuffNode("c", 2));
+        trie = util.makeTrie(nodes);
+        assertEquals("0", util.findHuffPath(trie, "c"));
+        assertEquals("10", util.findHuffPath(trie, "a"));
+        assertEquals("11", util.findHuffPath(trie, "b"));
+    }
+
+    @Test
+    public void contentPayloadSharedAcrossEntitlements() throws Exception {
+        Config config = new CandlepinCommonTestConfig();
+        EntitlementCurator ec = mock(EntitlementCurator.class);
+        X509V3ExtensionUtil util = new X509V3ExtensionUtil(config, ec,
+            new ContentPayloadCache(config));
+
+        X509ByteExtensionWrapper first = util.getByteExtensions(productModels(
+            "/content/dist/rhel/os", "/content/dist/rhel/debug")).iterator().next();
+        X509ByteExtensionWrapper second = util.getByteExtensions(productModels(
+            "/content/dist/rhel/os", "/content/dist/rhel/debug")).iterator().next();
+        X509ByteExtensionWrapper other = util.getByteExtensions(productModels(
+            "/content/beta/rhel/os")).iterator().next();
+
+        assertSame(first.getValue(), second.getValue());
+        assertFalse(Arrays.equals(first.getValue(), other.getValue()));
+    }
+
+    private List<org.candlepin.json.model.Product> productModels(String... paths) {
+        List<org.candlepin.json.model.Content> contents =
+            new ArrayList<org.candlepin.json.model.Content>();
+        for (String path : paths) {
+            org.candlepin.json.model.Content content =
+                new org.candlepin.json.model.Content();
+            content.setPath(path);
+            contents.add(content);
+        }
+        org.candlepin.json.model.Product product = new org.candlepin.json.model.Product();
+        product.setContent(contents);
+        return Arrays.asList(product);
+    }
 }